@@ -45,6 +45,19 @@ public abstract class AbstractJpaGroupDao<U extends GroupEntity> extends Generic
         super(cls, inEMProvider);
     }
 
+    /**
+     * Create an object that sends read-only calls to a replica database.
+     *
+     * @param cls the entity class.
+     * @param inEMProvider provides entity managers for the primary database.
+     * @param inReplicaEMProvider provides entity managers for a replica, or
+     * <code>null</code> to read from the primary.
+     */
+    public AbstractJpaGroupDao(Class<U> cls, final Provider<EntityManager> inEMProvider,
+            final Provider<EntityManager> inReplicaEMProvider) {
+        super(cls, inEMProvider, inReplicaEMProvider);
+    }
+
     @Override
     public U getByName(String name) {
         return getUniqueByAttribute("name", name);
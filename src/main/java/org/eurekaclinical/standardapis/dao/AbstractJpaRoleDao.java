@@ -42,6 +42,12 @@ public abstract class AbstractJpaRoleDao<U extends RoleEntity> extends GenericDa
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractJpaRoleDao.class);
 
+    /**
+     * Publishes role invalidations when roles are updated or removed, or
+     * <code>null</code>.
+     */
+    private volatile RoleInvalidationBus roleInvalidationBus;
+
     /**
      * Create an object with the give entity manager.
      *
@@ -53,6 +59,72 @@ public abstract class AbstractJpaRoleDao<U extends RoleEntity> extends GenericDa
         super(cls, inEMProvider);
     }
 
+    /**
+     * Create an object that sends read-only calls to a replica database.
+     *
+     * @param cls the entity class.
+     * @param inEMProvider provides entity managers for the primary database.
+     * @param inReplicaEMProvider provides entity managers for a replica, or
+     * <code>null</code> to read from the primary.
+     */
+    public AbstractJpaRoleDao(Class<U> cls, final Provider<EntityManager> inEMProvider,
+            final Provider<EntityManager> inReplicaEMProvider) {
+        super(cls, inEMProvider, inReplicaEMProvider);
+    }
+
+    /**
+     * Gets the bus on which this DAO publishes that users' roles may have
+     * changed.
+     *
+     * @return the bus, or <code>null</code> if none is set.
+     */
+    public RoleInvalidationBus getRoleInvalidationBus() {
+        return this.roleInvalidationBus;
+    }
+
+    /**
+     * Sets a bus on which this DAO publishes that every user's roles may have
+     * changed whenever it updates or removes a role. Unless the bus is
+     * {@link RoleInvalidationBus#isTransactional() transactional}, it is
+     * called after the transaction commits, as described in
+     * {@link #runAfterCommit(javax.persistence.EntityManager, java.lang.Runnable) }.
+     * The default is <code>null</code>.
+     *
+     * @param roleInvalidationBus the bus, or <code>null</code>.
+     */
+    public void setRoleInvalidationBus(RoleInvalidationBus roleInvalidationBus) {
+        this.roleInvalidationBus = roleInvalidationBus;
+    }
+
+    @Override
+    public U update(U entity) {
+        U result = super.update(entity);
+        invalidateRoles();
+        return result;
+    }
+
+    @Override
+    public U remove(U entity) {
+        U result = super.remove(entity);
+        invalidateRoles();
+        return result;
+    }
+
+    /**
+     * Publishes that every user's roles may have changed, if a
+     * {@link RoleInvalidationBus} is set.
+     */
+    protected void invalidateRoles() {
+        RoleInvalidationBus bus = this.roleInvalidationBus;
+        if (bus != null) {
+            if (bus.isTransactional()) {
+                bus.invalidateAll();
+            } else {
+                runAfterCommit(getEntityManager(), bus::invalidateAll);
+            }
+        }
+    }
+
     @Override
     public U getByName(String name) {
         return getUniqueByAttribute("name", name);
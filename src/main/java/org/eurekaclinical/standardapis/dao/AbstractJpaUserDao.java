@@ -23,9 +23,24 @@ package org.eurekaclinical.standardapis.dao;
 import javax.persistence.EntityManager;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import javax.inject.Provider;
+import javax.persistence.Cache;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 import javax.servlet.http.HttpServletRequest;
+import org.eurekaclinical.standardapis.entity.CanonicalUsernameEntity;
+import org.eurekaclinical.standardapis.entity.RoleEntity;
 import org.eurekaclinical.standardapis.entity.UserEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +49,16 @@ import org.slf4j.LoggerFactory;
  * An implementation of the {@link UserDao} interface, backed by JPA entities
  * and queries.
  *
+ * Bulk role grants and revocations run as set-based SQL against the join
+ * table if {@link #getUserRoleJoinTable() } describes it. Otherwise, they
+ * load the affected users in batches and change their role collections.
+ *
+ * Usernames are matched exactly by default. For case-insensitive logins, set
+ * a {@link UsernameLookup} that compares canonical usernames, either stored in
+ * their own indexed attribute or computed with <code>LOWER</code>, which a
+ * functional index such as
+ * <code>CREATE INDEX ... ON users (LOWER(username))</code> can serve.
+ *
  * @author Andrew Post
  * @param <U> the user entity class.
  */
@@ -44,6 +69,63 @@ public abstract class AbstractJpaUserDao<U extends UserEntity<?>> extends Generi
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractJpaUserDao.class);
 
+    /**
+     * The maximum number of usernames in one bulk role statement or query.
+     */
+    private static final int BULK_BATCH_SIZE = 500;
+
+    /**
+     * Bulk role changes affecting more users than this publish one
+     * invalidation of every user's roles rather than one per user.
+     */
+    private static final int BULK_INVALIDATION_THRESHOLD = 100;
+
+    /**
+     * Names of the methods of <code>org.hibernate.Cache</code> that evict a
+     * collection cache region, in Hibernate 5.3 and later, and before.
+     */
+    private static final String[] HIBERNATE_EVICT_COLLECTION_METHODS
+            = {"evictCollectionData", "evictCollectionRegion"};
+
+    /**
+     * How {@link #getByName(java.lang.String) } matches usernames.
+     */
+    public static enum UsernameLookup {
+        /**
+         * Compare the username attribute with the given name as is.
+         */
+        EXACT,
+        /**
+         * Compare a separate attribute, which holds the canonical form of the
+         * user's username, with the canonical form of the given name. The
+         * data access object sets the attribute on create and update if the
+         * user entity implements {@link CanonicalUsernameEntity}.
+         */
+        CANONICAL_ATTRIBUTE,
+        /**
+         * Compare the lower-cased username attribute with the canonical form
+         * of the given name.
+         */
+        LOWER_FUNCTION
+    }
+
+    /**
+     * The default name of the attribute containing canonical usernames.
+     */
+    public static final String DEFAULT_CANONICAL_USERNAME_ATTRIBUTE
+            = "canonicalUsername";
+
+    private volatile UsernameLookup usernameLookup = UsernameLookup.EXACT;
+
+    private volatile String canonicalUsernameAttribute
+            = DEFAULT_CANONICAL_USERNAME_ATTRIBUTE;
+
+    /**
+     * Publishes role invalidations when users are created, updated or
+     * removed, or <code>null</code>.
+     */
+    private volatile RoleInvalidationBus roleInvalidationBus;
+
     /**
      * Create an object with the give entity manager.
      *
@@ -55,19 +137,555 @@ public abstract class AbstractJpaUserDao<U extends UserEntity<?>> extends Generi
         super(cls, inEMProvider);
     }
 
+    /**
+     * Create an object that sends read-only calls to a replica database.
+     *
+     * @param cls the entity class.
+     * @param inEMProvider provides entity managers for the primary database.
+     * @param inReplicaEMProvider provides entity managers for a replica, or
+     * <code>null</code> to read from the primary.
+     */
+    public AbstractJpaUserDao(Class<U> cls, final Provider<EntityManager> inEMProvider,
+            final Provider<EntityManager> inReplicaEMProvider) {
+        super(cls, inEMProvider, inReplicaEMProvider);
+    }
+
+    /**
+     * Gets the bus on which this DAO publishes that a user's roles may have
+     * changed.
+     *
+     * @return the bus, or <code>null</code> if none is set.
+     */
+    public RoleInvalidationBus getRoleInvalidationBus() {
+        return this.roleInvalidationBus;
+    }
+
+    /**
+     * Sets a bus on which this DAO publishes that a user's roles may have
+     * changed whenever it creates, updates or removes a user. Unless the bus
+     * is {@link RoleInvalidationBus#isTransactional() transactional}, it is
+     * called after the transaction commits, as described in
+     * {@link #runAfterCommit(javax.persistence.EntityManager, java.lang.Runnable) }.
+     * The default is <code>null</code>.
+     *
+     * @param roleInvalidationBus the bus, or <code>null</code>.
+     */
+    public void setRoleInvalidationBus(RoleInvalidationBus roleInvalidationBus) {
+        this.roleInvalidationBus = roleInvalidationBus;
+    }
+
+    @Override
+    public U create(U entity) {
+        setCanonicalUsername(entity);
+        U result = super.create(entity);
+        invalidateRoles(result);
+        return result;
+    }
+
+    /**
+     * Updates a user and, if a {@link RoleInvalidationBus} is set, publishes
+     * that the user's roles may have changed. JPA cannot tell portably
+     * whether the roles collection changed, since changes may already have
+     * been flushed, so every update is published: subscribers reload the
+     * user's roles, and a {@link PollingRoleInvalidationBus} appends a row to
+     * its store. Attributes that are written often and do not affect roles,
+     * such as a last login time, are cheaper to set on the managed user and
+     * leave for the transaction to commit than to pass to this method.
+     *
+     * @param entity the user.
+     * @return the updated user.
+     */
+    @Override
+    public U update(U entity) {
+        setCanonicalUsername(entity);
+        U result = super.update(entity);
+        invalidateRoles(result);
+        return result;
+    }
+
+    @Override
+    public U remove(U entity) {
+        U result = super.remove(entity);
+        invalidateRoles(result);
+        return result;
+    }
+
+    /**
+     * Sets the canonical username of users that store it, when usernames are
+     * looked up by canonical attribute.
+     *
+     * @param user the user.
+     */
+    private void setCanonicalUsername(U user) {
+        if (this.usernameLookup == UsernameLookup.CANONICAL_ATTRIBUTE
+                && user instanceof CanonicalUsernameEntity
+                && user.getUsername() != null) {
+            ((CanonicalUsernameEntity) user).setCanonicalUsername(
+                    canonicalizeUsername(user.getUsername()));
+        }
+    }
+
+    /**
+     * Publishes that the given user's roles may have changed, if a
+     * {@link RoleInvalidationBus} is set. The user's
+     * {@link #canonicalizeUsername(java.lang.String) canonical username} is
+     * published regardless of the lookup mode, so that subscribers can key
+     * their caches by canonical principal name.
+     *
+     * @param user the user.
+     */
+    protected void invalidateRoles(U user) {
+        RoleInvalidationBus bus = this.roleInvalidationBus;
+        if (bus != null && user != null && user.getUsername() != null) {
+            String username = canonicalizeUsername(user.getUsername());
+            publishInvalidation(bus, () -> bus.invalidateUser(username));
+        }
+    }
+
+    /**
+     * Publishes a role invalidation within the current transaction if the
+     * bus is transactional, and otherwise after it commits.
+     *
+     * @param bus the bus.
+     * @param invalidation calls the bus.
+     */
+    private void publishInvalidation(RoleInvalidationBus bus,
+            Runnable invalidation) {
+        if (bus.isTransactional()) {
+            invalidation.run();
+        } else {
+            runAfterCommit(getEntityManager(), invalidation);
+        }
+    }
+
+    /**
+     * Gets how usernames are matched.
+     *
+     * @return the lookup mode. Guaranteed not <code>null</code>.
+     */
+    public UsernameLookup getUsernameLookup() {
+        return this.usernameLookup;
+    }
+
+    /**
+     * Sets how usernames are matched. The default is
+     * {@link UsernameLookup#EXACT}.
+     *
+     * @param usernameLookup the lookup mode. Cannot be <code>null</code>.
+     */
+    public void setUsernameLookup(UsernameLookup usernameLookup) {
+        if (usernameLookup == null) {
+            throw new IllegalArgumentException(
+                    "usernameLookup cannot be null");
+        }
+        this.usernameLookup = usernameLookup;
+    }
+
+    /**
+     * Gets the name of the attribute containing canonical usernames, which is
+     * used in {@link UsernameLookup#CANONICAL_ATTRIBUTE} mode.
+     *
+     * @return the attribute name.
+     */
+    public String getCanonicalUsernameAttribute() {
+        return this.canonicalUsernameAttribute;
+    }
+
+    /**
+     * Sets the name of the attribute containing canonical usernames. The
+     * default is {@link #DEFAULT_CANONICAL_USERNAME_ATTRIBUTE}.
+     *
+     * @param canonicalUsernameAttribute the attribute name. Cannot be
+     * <code>null</code>.
+     */
+    public void setCanonicalUsernameAttribute(
+            String canonicalUsernameAttribute) {
+        if (canonicalUsernameAttribute == null) {
+            throw new IllegalArgumentException(
+                    "canonicalUsernameAttribute cannot be null");
+        }
+        this.canonicalUsernameAttribute = canonicalUsernameAttribute;
+    }
+
+    /**
+     * Gets the canonical form of a username. The default trims whitespace and
+     * lower-cases it. User entities that store canonical usernames must use
+     * the same rules, and if this is overridden, the
+     * {@link UsernameLookup#LOWER_FUNCTION} mode should not be used. Role
+     * invalidations are published with canonical usernames, so subscribers
+     * that key roles by principal name must canonicalize it the same way.
+     *
+     * @param username the username. Cannot be <code>null</code>.
+     * @return the canonical username.
+     */
+    public String canonicalizeUsername(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Describes the user-role join table for set-based bulk role changes.
+     * The default returns <code>null</code>, which makes bulk role changes
+     * load and update each affected user. Override to return the join table
+     * of the user entity's role collection.
+     *
+     * @return the join table description, or <code>null</code>.
+     */
+    protected UserRoleJoinTable getUserRoleJoinTable() {
+        return null;
+    }
+
+    /**
+     * Grants a role to many users. Usernames are matched according to the
+     * {@link #getUsernameLookup() lookup mode}. With a
+     * {@link UserRoleJoinTable}, this runs one insert per batch of usernames,
+     * and users already loaded into the current persistence context keep
+     * their old role collections until they are refreshed.
+     *
+     * @param role the role to grant. Cannot be <code>null</code>.
+     * @param usernames the users' usernames. Cannot be <code>null</code>.
+     * @return the number of users who were granted the role.
+     */
+    @Override
+    public int grantRoleToUsers(RoleEntity role,
+            Collection<String> usernames) {
+        UsernameLookup lookup = this.usernameLookup;
+        List<String> names = distinctUsernames(role, usernames, lookup);
+        UserRoleJoinTable joinTable = getUserRoleJoinTable();
+        EntityManager entityManager = getEntityManager();
+        markWritten();
+        int count = getDatabaseSupport().instrument(getEntityClass(),
+                "grantRoleToUsers", () -> {
+                    int result = 0;
+                    if (joinTable != null) {
+                        entityManager.flush();
+                    }
+                    for (List<String> batch : batches(names)) {
+                        if (joinTable != null) {
+                            Query query = entityManager.createNativeQuery(
+                                    joinTable.grantSql(batch.size(), lookup));
+                            int position = 1;
+                            query.setParameter(position++, role.getId());
+                            for (String name : batch) {
+                                query.setParameter(position++, name);
+                            }
+                            query.setParameter(position, role.getId());
+                            result += query.executeUpdate();
+                        } else {
+                            for (U user : getUsersByName(batch, lookup)) {
+                                if (!hasRole(user, role)) {
+                                    asRoleHolder(user).addRole(role);
+                                    result++;
+                                }
+                            }
+                            entityManager.flush();
+                        }
+                    }
+                    return result;
+                });
+        bulkRolesChanged(joinTable, names);
+        return count;
+    }
+
+    /**
+     * Revokes a role from many users. Usernames are matched according to the
+     * {@link #getUsernameLookup() lookup mode}. With a
+     * {@link UserRoleJoinTable}, this runs one delete per batch of usernames,
+     * and users already loaded into the current persistence context keep
+     * their old role collections until they are refreshed.
+     *
+     * @param role the role to revoke. Cannot be <code>null</code>.
+     * @param usernames the users' usernames. Cannot be <code>null</code>.
+     * @return the number of users from whom the role was revoked.
+     */
+    @Override
+    public int revokeRoleFromUsers(RoleEntity role,
+            Collection<String> usernames) {
+        UsernameLookup lookup = this.usernameLookup;
+        List<String> names = distinctUsernames(role, usernames, lookup);
+        UserRoleJoinTable joinTable = getUserRoleJoinTable();
+        EntityManager entityManager = getEntityManager();
+        markWritten();
+        int count = getDatabaseSupport().instrument(getEntityClass(),
+                "revokeRoleFromUsers", () -> {
+                    int result = 0;
+                    if (joinTable != null) {
+                        entityManager.flush();
+                    }
+                    for (List<String> batch : batches(names)) {
+                        if (joinTable != null) {
+                            Query query = entityManager.createNativeQuery(
+                                    joinTable.revokeSql(batch.size(), lookup));
+                            int position = 1;
+                            query.setParameter(position++, role.getId());
+                            for (String name : batch) {
+                                query.setParameter(position++, name);
+                            }
+                            result += query.executeUpdate();
+                        } else {
+                            for (U user : getUsersByName(batch, lookup)) {
+                                if (removeRole(user, role)) {
+                                    result++;
+                                }
+                            }
+                            entityManager.flush();
+                        }
+                    }
+                    return result;
+                });
+        bulkRolesChanged(joinTable, names);
+        return count;
+    }
+
+    /**
+     * Revokes a role from every user who has it. With a
+     * {@link UserRoleJoinTable}, this runs a single delete, and users already
+     * loaded into the current persistence context keep their old role
+     * collections until they are refreshed.
+     *
+     * @param role the role to revoke. Cannot be <code>null</code>.
+     * @return the number of users from whom the role was revoked.
+     */
+    @Override
+    public int revokeRoleFromAll(RoleEntity role) {
+        if (role == null) {
+            throw new IllegalArgumentException("role cannot be null");
+        }
+        UserRoleJoinTable joinTable = getUserRoleJoinTable();
+        EntityManager entityManager = getEntityManager();
+        markWritten();
+        int count = getDatabaseSupport().instrument(getEntityClass(),
+                "revokeRoleFromAll", () -> {
+                    if (joinTable != null) {
+                        entityManager.flush();
+                        return entityManager.createNativeQuery(
+                                joinTable.revokeAllSql())
+                                .setParameter(1, role.getId())
+                                .executeUpdate();
+                    }
+                    String entityName = entityManager.getMetamodel()
+                            .entity(getEntityClass()).getName();
+                    List<U> users = entityManager.createQuery(
+                            "SELECT u FROM " + entityName
+                            + " u JOIN u.roles r WHERE r.id = :roleId",
+                            getEntityClass())
+                            .setParameter("roleId", role.getId())
+                            .getResultList();
+                    int result = 0;
+                    for (U user : users) {
+                        if (removeRole(user, role)) {
+                            result++;
+                        }
+                    }
+                    entityManager.flush();
+                    return result;
+                });
+        bulkRolesChanged(joinTable, null);
+        return count;
+    }
+
     @Override
     public U getByHttpServletRequest(HttpServletRequest request) {
         return getByPrincipal(request.getUserPrincipal());
     }
 
+    /**
+     * Gets the user with the principal's name. Unless usernames are matched
+     * exactly, the principal's name is canonicalized first.
+     *
+     * @param principal the principal.
+     * @return the user, or <code>null</code> if there is none.
+     */
     @Override
     public U getByPrincipal(Principal principal) {
         return getByName(principal.getName());
     }
 
+    /**
+     * Gets the user with the given username, matched according to the
+     * {@link #getUsernameLookup() lookup mode}. If more than one user matches,
+     * the first is returned and a warning is logged.
+     *
+     * @param username the username.
+     * @return the user, or <code>null</code> if there is none.
+     */
     @Override
     public U getByName(String username) {
-        return getUniqueByAttribute("username", username);
+        UsernameLookup lookup = this.usernameLookup;
+        if (lookup == UsernameLookup.EXACT || username == null) {
+            return getUniqueByAttribute("username", username);
+        }
+        String canonical = canonicalizeUsername(username);
+        if (lookup == UsernameLookup.CANONICAL_ATTRIBUTE) {
+            return getUniqueByAttribute(this.canonicalUsernameAttribute,
+                    canonical);
+        }
+        EntityManager entityManager = getReadEntityManager();
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<U> criteriaQuery = builder.createQuery(getEntityClass());
+        Root<U> root = criteriaQuery.from(getEntityClass());
+        criteriaQuery.where(builder.equal(
+                builder.lower(root.<String>get("username")), canonical));
+        TypedQuery<U> query = entityManager.createQuery(criteriaQuery)
+                .setMaxResults(2);
+        return getDatabaseSupport().instrument(getEntityClass(), "getByName",
+                "lower(username)",
+                DatabaseSupport.SqlComparator.EQUAL_TO.name(), -1, () -> {
+                    List<U> users = query.getResultList();
+                    if (users.size() > 1) {
+                        LOGGER.warn("More than one {} has username {} ignoring case",
+                                getEntityClass().getName(), canonical);
+                    }
+                    return users.isEmpty() ? null : users.get(0);
+                });
+    }
+
+    /**
+     * Evicts users and their cached role collections from the second-level
+     * cache after set-based SQL changed their roles. JPA's {@link Cache} only
+     * evicts entities, so the collection region of the users'
+     * <code>roles</code> attribute is evicted through the persistence
+     * provider's own cache API where it is known, currently Hibernate's.
+     * Override to evict it for other providers.
+     */
+    protected void evictRoleCollections() {
+        Cache cache = getEntityManager().getEntityManagerFactory().getCache();
+        cache.evict(getEntityClass());
+        String collectionRole = getEntityClass().getName() + ".roles";
+        try {
+            Object providerCache = cache.unwrap(Class.forName(
+                    "org.hibernate.Cache", false,
+                    cache.getClass().getClassLoader()));
+            for (String methodName : HIBERNATE_EVICT_COLLECTION_METHODS) {
+                try {
+                    providerCache.getClass().getMethod(methodName,
+                            String.class).invoke(providerCache, collectionRole);
+                    return;
+                } catch (NoSuchMethodException ex) {
+                    // try the next method name
+                }
+            }
+        } catch (ClassNotFoundException | PersistenceException ex) {
+            LOGGER.debug("Cannot evict collection cache region {}",
+                    collectionRole, ex);
+        } catch (ReflectiveOperationException ex) {
+            LOGGER.warn("Error evicting collection cache region {}",
+                    collectionRole, ex);
+        }
+    }
+
+    /**
+     * Evicts users from the second-level cache after set-based SQL changed
+     * their roles, and publishes role invalidations, after the transaction
+     * commits unless the bus is transactional.
+     *
+     * @param joinTable the join table, or <code>null</code> if users' role
+     * collections were changed through the entity manager.
+     * @param usernames the affected usernames, canonical unless they are
+     * matched exactly, or <code>null</code> if any user may have been
+     * affected.
+     */
+    private void bulkRolesChanged(UserRoleJoinTable joinTable,
+            Collection<String> usernames) {
+        if (joinTable != null) {
+            evictRoleCollections();
+        }
+        RoleInvalidationBus bus = this.roleInvalidationBus;
+        if (bus != null) {
+            if (usernames == null
+                    || usernames.size() > BULK_INVALIDATION_THRESHOLD) {
+                publishInvalidation(bus, bus::invalidateAll);
+            } else {
+                for (String username : usernames) {
+                    String canonical = canonicalizeUsername(username);
+                    publishInvalidation(bus,
+                            () -> bus.invalidateUser(canonical));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the users with the given usernames, which are canonical unless
+     * they are matched exactly.
+     */
+    private List<U> getUsersByName(List<String> usernames,
+            UsernameLookup lookup) {
+        EntityManager entityManager = getEntityManager();
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<U> criteriaQuery = builder.createQuery(getEntityClass());
+        Root<U> root = criteriaQuery.from(getEntityClass());
+        switch (lookup) {
+            case CANONICAL_ATTRIBUTE:
+                criteriaQuery.where(root.get(this.canonicalUsernameAttribute)
+                        .in(usernames));
+                break;
+            case LOWER_FUNCTION:
+                criteriaQuery.where(builder.lower(
+                        root.<String>get("username")).in(usernames));
+                break;
+            default:
+                criteriaQuery.where(root.get("username").in(usernames));
+        }
+        return entityManager.createQuery(criteriaQuery).getResultList();
+    }
+
+    /**
+     * Removes nulls and duplicates from the given usernames, canonicalizing
+     * them first unless they are matched exactly.
+     */
+    private List<String> distinctUsernames(RoleEntity role,
+            Collection<String> usernames, UsernameLookup lookup) {
+        if (role == null) {
+            throw new IllegalArgumentException("role cannot be null");
+        }
+        if (usernames == null) {
+            throw new IllegalArgumentException("usernames cannot be null");
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String username : usernames) {
+            if (username != null) {
+                result.add(lookup == UsernameLookup.EXACT
+                        ? username : canonicalizeUsername(username));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static List<List<String>> batches(List<String> usernames) {
+        List<List<String>> result = new ArrayList<>();
+        for (int i = 0; i < usernames.size(); i += BULK_BATCH_SIZE) {
+            result.add(usernames.subList(i,
+                    Math.min(i + BULK_BATCH_SIZE, usernames.size())));
+        }
+        return result;
+    }
+
+    private static boolean hasRole(UserEntity<?> user, RoleEntity role) {
+        for (RoleEntity r : user.getRoles()) {
+            if (r.getId().equals(role.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean removeRole(UserEntity<?> user, RoleEntity role) {
+        for (RoleEntity r : user.getRoles()) {
+            if (r.getId().equals(role.getId())) {
+                asRoleHolder(user).removeRole(r);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Views a user as accepting any role. The role passed in must be of the
+     * user's role type.
+     */
+    @SuppressWarnings("unchecked")
+    private static UserEntity<RoleEntity> asRoleHolder(UserEntity<?> user) {
+        return (UserEntity<RoleEntity>) user;
     }
 
 }
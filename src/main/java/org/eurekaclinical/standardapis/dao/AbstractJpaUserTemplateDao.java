@@ -22,23 +22,62 @@ package org.eurekaclinical.standardapis.dao;
 
 import javax.persistence.EntityManager;
 
-import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Provider;
 
-import javax.servlet.http.HttpServletRequest;
 import org.eurekaclinical.standardapis.entity.UserTemplateEntity;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
- * An implementation of the {@link UserDao} interface, backed by JPA entities
- * and queries.
+ * An implementation of the {@link UserTemplateDao} interface, backed by JPA
+ * entities and queries.
+ *
+ * The auto-authorization template is memoized, with its roles loaded, so that
+ * first logins do not query for it. The memoized template is dropped when
+ * this DAO creates, updates or removes a template, and after a time-to-live
+ * that bounds how long changes made elsewhere, such as on another node, go
+ * unnoticed. A change made in a transaction is not visible to other threads
+ * until the transaction commits, and they may memoize the old template in
+ * the meantime, so if a {@link ChangeEventPublisher} is set, the memoized
+ * template is dropped again when the change's event is published after the
+ * commit. Without one, such a template is kept until the time-to-live
+ * passes.
+ *
+ * Subclasses implement {@link #loadAutoAuthorizationTemplate() }, which
+ * {@link #getAutoAuthorizationTemplate() } calls on a miss. The latter is
+ * final, so a subclass written against earlier versions, which overrode
+ * {@link #getAutoAuthorizationTemplate() } to run its query, no longer
+ * compiles; rename that override to
+ * {@link #loadAutoAuthorizationTemplate() } and make it protected.
  *
  * @author Andrew Post
  * @param <U> the user entity class.
  */
 public abstract class AbstractJpaUserTemplateDao<U extends UserTemplateEntity<?>> extends GenericDao<U, Long> implements UserTemplateDao<U> {
 
+    private static final long DEFAULT_TEMPLATE_CACHE_TTL_MILLIS
+            = TimeUnit.MINUTES.toMillis(5);
+
+    private volatile long templateCacheTtlMillis
+            = DEFAULT_TEMPLATE_CACHE_TTL_MILLIS;
+
+    private volatile CachedTemplate<U> cachedTemplate;
+
+    /**
+     * Incremented on every invalidation so that a template loaded
+     * concurrently with an invalidation is not memoized.
+     */
+    private final AtomicLong templateGeneration = new AtomicLong();
+
+    private final ChangeEventSink templateChangeSink = events -> {
+        for (ChangeEvent event : events) {
+            if (event.getEntityClass() == getEntityClass()) {
+                invalidateAutoAuthorizationTemplate();
+                return;
+            }
+        }
+    };
+
     /**
      * Create an object with the give entity manager.
      *
@@ -50,9 +89,154 @@ public abstract class AbstractJpaUserTemplateDao<U extends UserTemplateEntity<?>
         super(cls, inEMProvider);
     }
 
+    /**
+     * Create an object that sends read-only calls to a replica database.
+     *
+     * @param cls the entity class.
+     * @param inEMProvider provides entity managers for the primary database.
+     * @param inReplicaEMProvider provides entity managers for a replica, or
+     * <code>null</code> to read from the primary.
+     */
+    public AbstractJpaUserTemplateDao(Class<U> cls, final Provider<EntityManager> inEMProvider,
+            final Provider<EntityManager> inReplicaEMProvider) {
+        super(cls, inEMProvider, inReplicaEMProvider);
+    }
+
     @Override
     public U getByName(String name) {
         return getUniqueByAttribute("name", name);
     }
 
+    /**
+     * Gets the template used to auto-authorize new users, from memory if it
+     * was loaded within the time-to-live. The returned template is shared
+     * between callers and may be detached, so callers must not modify it.
+     *
+     * @return the template, or <code>null</code> if there is none.
+     */
+    @Override
+    public final U getAutoAuthorizationTemplate() {
+        CachedTemplate<U> cached = this.cachedTemplate;
+        if (cached != null && !cached.isExpired()) {
+            getMetrics().recordCacheHit(getEntityClass(),
+                    "getAutoAuthorizationTemplate");
+            return cached.template;
+        }
+        long generation = this.templateGeneration.get();
+        U template = loadAutoAuthorizationTemplate();
+        if (template != null) {
+            template.getRoles().size();
+        }
+        long ttl = this.templateCacheTtlMillis;
+        if (ttl > 0 && generation == this.templateGeneration.get()) {
+            this.cachedTemplate = new CachedTemplate<>(template,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+        }
+        return template;
+    }
+
+    /**
+     * Queries the data store for the template used to auto-authorize new
+     * users. It is called by {@link #getAutoAuthorizationTemplate() } when no
+     * memoized template is available.
+     *
+     * @return the template, or <code>null</code> if there is none.
+     */
+    protected abstract U loadAutoAuthorizationTemplate();
+
+    /**
+     * Drops the memoized auto-authorization template so that the next call to
+     * {@link #getAutoAuthorizationTemplate() } queries for it.
+     */
+    public void invalidateAutoAuthorizationTemplate() {
+        this.templateGeneration.incrementAndGet();
+        this.cachedTemplate = null;
+    }
+
+    /**
+     * Gets how long the auto-authorization template is memoized.
+     *
+     * @param unit the unit of the returned value. Cannot be
+     * <code>null</code>.
+     * @return the time-to-live.
+     */
+    public long getTemplateCacheTtl(TimeUnit unit) {
+        return unit.convert(this.templateCacheTtlMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets how long the auto-authorization template is memoized. The default
+     * is five minutes.
+     *
+     * @param ttl the time-to-live. Zero or less turns off memoization.
+     * @param unit the unit of the time-to-live. Cannot be <code>null</code>.
+     */
+    public void setTemplateCacheTtl(long ttl, TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.templateCacheTtlMillis = unit.toMillis(ttl);
+        invalidateAutoAuthorizationTemplate();
+    }
+
+    /**
+     * Sets a publisher of change events, and subscribes to it so that the
+     * memoized auto-authorization template is dropped after changes to
+     * templates commit.
+     *
+     * @param changeEventPublisher the publisher, or <code>null</code>.
+     */
+    @Override
+    public synchronized void setChangeEventPublisher(
+            ChangeEventPublisher changeEventPublisher) {
+        ChangeEventPublisher previous = getChangeEventPublisher();
+        if (previous != null) {
+            previous.removeSink(this.templateChangeSink);
+        }
+        super.setChangeEventPublisher(changeEventPublisher);
+        if (changeEventPublisher != null) {
+            changeEventPublisher.addSink(this.templateChangeSink);
+        }
+    }
+
+    @Override
+    public U create(U entity) {
+        U result = super.create(entity);
+        invalidateAutoAuthorizationTemplate();
+        return result;
+    }
+
+    @Override
+    public U update(U entity) {
+        U result = super.update(entity);
+        invalidateAutoAuthorizationTemplate();
+        return result;
+    }
+
+    @Override
+    public U remove(U entity) {
+        U result = super.remove(entity);
+        invalidateAutoAuthorizationTemplate();
+        return result;
+    }
+
+    /**
+     * A memoized template and when it expires.
+     */
+    private static final class CachedTemplate<U> {
+
+        private final U template;
+        private final long expiresAtNanos;
+
+        CachedTemplate(U template, long expiresAtNanos) {
+            this.template = template;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - this.expiresAtNanos >= 0;
+        }
+    }
+
 }
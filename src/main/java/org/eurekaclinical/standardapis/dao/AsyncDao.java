@@ -0,0 +1,307 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+/**
+ * Runs the operations of a {@link Dao} asynchronously so that callers can
+ * overlap independent lookups, for example, a user, its templates and its
+ * groups. Each operation gets its own {@link EntityManager} from the given
+ * factory, which is closed when the operation completes. As a result, the
+ * returned entities are detached, and any lazily loaded relationships that
+ * the caller needs must be loaded inside the operation.
+ *
+ * The number of operations that may be in progress at once is bounded by a
+ * permit count that should be no larger than the size of the connection pool.
+ * Submitters block for up to a configurable timeout when no permit is
+ * available, after which the returned future completes exceptionally with a
+ * {@link RejectedExecutionException}.
+ *
+ * Mutating operations run in a resource-local transaction that is committed
+ * when the operation returns and rolled back if it throws. The entity manager
+ * factory therefore must be configured for resource-local transactions. If
+ * the data access object is a {@link GenericDao} with a
+ * {@link ChangeEventPublisher}, the transaction runs in a
+ * {@link ChangeEventPublisher#openScope() scope} whose change events are
+ * published after the commit and discarded on rollback. Each operation's
+ * {@link ReadYourWrites} state is cleared when it completes, so that a write
+ * does not leave the worker thread reading from the primary.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the entity.
+ * @param <PK> the type of the primary key of the entity.
+ */
+public class AsyncDao<T, PK> implements AutoCloseable {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Function<Provider<EntityManager>, ? extends Dao<T, PK>> daoFactory;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final long acquireTimeout;
+    private final TimeUnit acquireTimeoutUnit;
+
+    /**
+     * Creates an asynchronous data access object.
+     *
+     * @param inEntityManagerFactory creates an entity manager for each
+     * operation. Cannot be <code>null</code>.
+     * @param inDaoFactory creates the data access object that each operation
+     * runs against from a provider of that operation's entity manager, for
+     * example, the constructor of a {@link GenericDao} subclass. Cannot be
+     * <code>null</code>.
+     * @param inExecutor runs the operations. See {@link DaoExecutors} for
+     * bounded and virtual thread executors. Cannot be <code>null</code>.
+     * @param maxConcurrency the maximum number of operations that may be in
+     * progress at once. Must be positive.
+     * @param inAcquireTimeout how long a submitter waits for a permit.
+     * @param inAcquireTimeoutUnit the unit of the timeout. Cannot be
+     * <code>null</code>.
+     */
+    public AsyncDao(EntityManagerFactory inEntityManagerFactory,
+            Function<Provider<EntityManager>, ? extends Dao<T, PK>> inDaoFactory,
+            ExecutorService inExecutor, int maxConcurrency,
+            long inAcquireTimeout, TimeUnit inAcquireTimeoutUnit) {
+        if (inEntityManagerFactory == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerFactory cannot be null");
+        }
+        if (inDaoFactory == null) {
+            throw new IllegalArgumentException("inDaoFactory cannot be null");
+        }
+        if (inExecutor == null) {
+            throw new IllegalArgumentException("inExecutor cannot be null");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException(
+                    "maxConcurrency must be positive");
+        }
+        if (inAcquireTimeoutUnit == null) {
+            throw new IllegalArgumentException(
+                    "inAcquireTimeoutUnit cannot be null");
+        }
+        this.entityManagerFactory = inEntityManagerFactory;
+        this.daoFactory = inDaoFactory;
+        this.executor = inExecutor;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.acquireTimeout = inAcquireTimeout;
+        this.acquireTimeoutUnit = inAcquireTimeoutUnit;
+    }
+
+    /**
+     * Asynchronously selects an entity by its primary key.
+     *
+     * @param uniqueId the primary key.
+     * @return a future containing the entity, or <code>null</code> if there is
+     * none.
+     */
+    public CompletableFuture<T> retrieve(final PK uniqueId) {
+        return read(dao -> dao.retrieve(uniqueId));
+    }
+
+    /**
+     * Asynchronously gets all of the entities.
+     *
+     * @return a future containing the entities.
+     */
+    public CompletableFuture<List<T>> getAll() {
+        return read(dao -> dao.getAll());
+    }
+
+    /**
+     * Asynchronously gets a page of the entities.
+     *
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved.
+     * @return a future containing the entities.
+     */
+    public CompletableFuture<List<T>> getAll(final int firstResult,
+            final int maxResults) {
+        return read(dao -> dao.getAll(firstResult, maxResults));
+    }
+
+    /**
+     * Asynchronously creates an entity in its own transaction.
+     *
+     * @param entity the entity to create.
+     * @return a future containing the created entity.
+     */
+    public CompletableFuture<T> create(final T entity) {
+        return write(dao -> dao.create(entity));
+    }
+
+    /**
+     * Asynchronously updates an entity in its own transaction.
+     *
+     * @param entity the entity to update.
+     * @return a future containing the updated entity.
+     */
+    public CompletableFuture<T> update(final T entity) {
+        return write(dao -> dao.update(entity));
+    }
+
+    /**
+     * Asynchronously removes an entity in its own transaction.
+     *
+     * @param entity the entity to remove.
+     * @return a future containing the removed entity.
+     */
+    public CompletableFuture<T> remove(final T entity) {
+        return write(dao -> dao.remove(entity));
+    }
+
+    /**
+     * Asynchronously runs an arbitrary read-only operation against a data
+     * access object. Cast the data access object to its concrete type to call
+     * methods that {@link Dao} does not declare.
+     *
+     * @param <R> the type of the result.
+     * @param operation the operation. Cannot be <code>null</code>.
+     * @return a future containing the operation's result.
+     */
+    public <R> CompletableFuture<R> read(
+            Function<? super Dao<T, PK>, R> operation) {
+        return submit(operation, false);
+    }
+
+    /**
+     * Asynchronously runs an arbitrary operation against a data access object
+     * in its own transaction.
+     *
+     * @param <R> the type of the result.
+     * @param operation the operation. Cannot be <code>null</code>.
+     * @return a future containing the operation's result.
+     */
+    public <R> CompletableFuture<R> write(
+            Function<? super Dao<T, PK>, R> operation) {
+        return submit(operation, true);
+    }
+
+    /**
+     * Gets the number of operations that could be submitted right now without
+     * waiting for a permit.
+     *
+     * @return the number of available permits.
+     */
+    public int getAvailablePermits() {
+        return this.permits.availablePermits();
+    }
+
+    /**
+     * Shuts down the executor. Operations that already were submitted will
+     * complete.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    private <R> CompletableFuture<R> submit(
+            final Function<? super Dao<T, PK>, R> operation,
+            final boolean transactional) {
+        if (operation == null) {
+            throw new IllegalArgumentException("operation cannot be null");
+        }
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            if (!this.permits.tryAcquire(this.acquireTimeout,
+                    this.acquireTimeoutUnit)) {
+                future.completeExceptionally(new RejectedExecutionException(
+                        "Timed out waiting for a free database permit"));
+                return future;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(ex);
+            return future;
+        }
+        try {
+            this.executor.execute(() -> {
+                R result = null;
+                Throwable failure = null;
+                try {
+                    result = execute(operation, transactional);
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    ReadYourWrites.clear();
+                    this.permits.release();
+                }
+                // Complete only after releasing the permit, since dependent
+                // stages may run here and submit operations of their own.
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(result);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.permits.release();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    private <R> R execute(Function<? super Dao<T, PK>, R> operation,
+            boolean transactional) {
+        final EntityManager entityManager
+                = this.entityManagerFactory.createEntityManager();
+        try {
+            Dao<T, PK> dao = this.daoFactory.apply(() -> entityManager);
+            if (!transactional) {
+                return operation.apply(dao);
+            }
+            ChangeEventPublisher publisher = dao instanceof GenericDao
+                    ? ((GenericDao<?, ?>) dao).getChangeEventPublisher()
+                    : null;
+            ChangeEventPublisher.Scope scope = publisher != null
+                    ? publisher.openScope() : null;
+            EntityTransaction transaction = entityManager.getTransaction();
+            try {
+                transaction.begin();
+                R result = operation.apply(dao);
+                transaction.commit();
+                if (scope != null) {
+                    scope.commit();
+                }
+                return result;
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                if (scope != null) {
+                    scope.close();
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+}
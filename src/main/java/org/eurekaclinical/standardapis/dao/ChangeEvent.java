@@ -0,0 +1,138 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * A change to an entity made through a data access object, as published by
+ * a {@link ChangeEventPublisher}. Events carry identifiers rather than
+ * entities, so consumers load what they need and events stay small.
+ *
+ * @author Andrew Post
+ */
+public final class ChangeEvent {
+
+    /**
+     * What happened to the entity.
+     */
+    public enum Operation {
+        /**
+         * The entity was created.
+         */
+        CREATED,
+        /**
+         * The entity was updated in place.
+         */
+        UPDATED,
+        /**
+         * The entity was deleted.
+         */
+        REMOVED,
+        /**
+         * A new version of a historical entity replaced the current one,
+         * which was expired. The previous id is the expired version's.
+         */
+        SUPERSEDED
+    }
+
+    private final Class<?> entityClass;
+    private final Object id;
+    private final Object previousId;
+    private final Operation operation;
+    private final long timestamp;
+
+    /**
+     * Creates an event.
+     *
+     * @param entityClass the entity class. Cannot be <code>null</code>.
+     * @param id the primary key of the entity.
+     * @param previousId the primary key of the version that was superseded,
+     * or <code>null</code>.
+     * @param operation what happened. Cannot be <code>null</code>.
+     * @param timestamp when it happened, in milliseconds since the epoch.
+     */
+    public ChangeEvent(Class<?> entityClass, Object id, Object previousId,
+            Operation operation, long timestamp) {
+        if (entityClass == null) {
+            throw new IllegalArgumentException("entityClass cannot be null");
+        }
+        if (operation == null) {
+            throw new IllegalArgumentException("operation cannot be null");
+        }
+        this.entityClass = entityClass;
+        this.id = id;
+        this.previousId = previousId;
+        this.operation = operation;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Gets the entity class.
+     *
+     * @return the entity class.
+     */
+    public Class<?> getEntityClass() {
+        return this.entityClass;
+    }
+
+    /**
+     * Gets the primary key of the entity.
+     *
+     * @return the primary key.
+     */
+    public Object getId() {
+        return this.id;
+    }
+
+    /**
+     * Gets the primary key of the version that this one superseded.
+     *
+     * @return the primary key, or <code>null</code> unless the operation is
+     * {@link Operation#SUPERSEDED}.
+     */
+    public Object getPreviousId() {
+        return this.previousId;
+    }
+
+    /**
+     * Gets what happened to the entity.
+     *
+     * @return the operation.
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Gets when the change was made.
+     *
+     * @return milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" + "entityClass=" + this.entityClass.getName()
+                + ", id=" + this.id + ", previousId=" + this.previousId
+                + ", operation=" + this.operation + ", timestamp="
+                + this.timestamp + '}';
+    }
+}
@@ -0,0 +1,348 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers {@link ChangeEvent change events} from data access objects to
+ * in-process {@link ChangeEventSink sinks} in batches. Publishing appends to
+ * a lock-free queue and never blocks on sinks; a background thread drains
+ * the queue at a fixed interval and hands each sink batches of up to a
+ * maximum size. If the queue is full, new events are dropped and counted.
+ *
+ * Events of changes made in a transaction must not be seen before the
+ * transaction commits. Data access objects therefore
+ * {@link #stage(ChangeEvent, boolean) stage} such events on the current
+ * thread, and whatever demarcates transactions publishes or discards them
+ * once the transaction ends. Code that begins and commits a transaction
+ * itself, like {@link AsyncDao}, does so in a {@link #openScope() scope},
+ * which holds only the events staged while it is open, publishes them when
+ * {@link Scope#commit() committed} and discards the rest when closed. For
+ * transactions that are demarcated elsewhere, such as by the container or a
+ * transactional method interceptor, map
+ * {@link org.eurekaclinical.standardapis.filter.ChangeEventFilter} so that
+ * each request runs in a scope. {@link #afterCommit() } and
+ * {@link #afterRollback() } publish or discard the events staged on the
+ * current thread directly. Events of changes made outside a transaction are
+ * published immediately. Other work that must not happen before the
+ * transaction commits, such as notifying in-process role caches that a
+ * user's roles changed, can be staged the same way with
+ * {@link #runAfterCommit(Runnable, boolean) }.
+ *
+ * @author Andrew Post
+ */
+public class ChangeEventPublisher implements AutoCloseable {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(ChangeEventPublisher.class);
+
+    private final Queue<ChangeEvent> queue;
+    private final AtomicInteger queued;
+    private final AtomicLong dropped;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final List<ChangeEventSink> sinks;
+    private final ThreadLocal<List<Runnable>> pending;
+    private final ScheduledExecutorService drainer;
+    private final Object drainLock;
+
+    /**
+     * Creates a publisher and starts its delivery thread.
+     *
+     * @param inMaxBatchSize the maximum number of events per batch. Must be
+     * positive.
+     * @param inCapacity the maximum number of undelivered events. Must be
+     * positive.
+     * @param flushInterval how often to deliver queued events. Must be
+     * positive.
+     * @param unit the unit of the interval. Cannot be <code>null</code>.
+     */
+    public ChangeEventPublisher(int inMaxBatchSize, int inCapacity,
+            long flushInterval, TimeUnit unit) {
+        if (inMaxBatchSize < 1) {
+            throw new IllegalArgumentException(
+                    "inMaxBatchSize must be positive");
+        }
+        if (inCapacity < 1) {
+            throw new IllegalArgumentException("inCapacity must be positive");
+        }
+        if (flushInterval < 1) {
+            throw new IllegalArgumentException(
+                    "flushInterval must be positive");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.dropped = new AtomicLong();
+        this.capacity = inCapacity;
+        this.maxBatchSize = inMaxBatchSize;
+        this.sinks = new CopyOnWriteArrayList<>();
+        this.pending = ThreadLocal.withInitial(ArrayList::new);
+        this.drainLock = new Object();
+        this.drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "eurekaclinical-change-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.drainer.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval, flushInterval, unit);
+    }
+
+    /**
+     * Adds a sink.
+     *
+     * @param sink the sink. Cannot be <code>null</code>.
+     */
+    public void addSink(ChangeEventSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink cannot be null");
+        }
+        this.sinks.add(sink);
+    }
+
+    /**
+     * Removes a sink.
+     *
+     * @param sink the sink.
+     */
+    public void removeSink(ChangeEventSink sink) {
+        this.sinks.remove(sink);
+    }
+
+    /**
+     * Queues an event for delivery.
+     *
+     * @param event the event. Cannot be <code>null</code>.
+     */
+    public void publish(ChangeEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null");
+        }
+        if (this.queued.incrementAndGet() > this.capacity) {
+            this.queued.decrementAndGet();
+            if (this.dropped.getAndIncrement() == 0) {
+                LOGGER.warn("Change event queue is full, dropping events");
+            }
+            return;
+        }
+        this.queue.offer(event);
+    }
+
+    /**
+     * Queues an event for delivery, or holds it on the current thread until
+     * {@link #afterCommit() } if it was made in a transaction.
+     *
+     * @param event the event. Cannot be <code>null</code>.
+     * @param inTransaction whether the change was made in a transaction.
+     */
+    public void stage(ChangeEvent event, boolean inTransaction) {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null");
+        }
+        if (inTransaction) {
+            this.pending.get().add(() -> publish(event));
+        } else {
+            publish(event);
+        }
+    }
+
+    /**
+     * Runs an action now, or holds it on the current thread until
+     * {@link #afterCommit() } if the change that it follows was made in a
+     * transaction. Held actions are discarded if the transaction rolls back.
+     * Actions run on the thread that signals the commit, and an exception
+     * thrown by one is logged and does not prevent the others from running.
+     *
+     * @param action the action. Cannot be <code>null</code>.
+     * @param inTransaction whether the change was made in a transaction.
+     */
+    public void runAfterCommit(Runnable action, boolean inTransaction) {
+        if (action == null) {
+            throw new IllegalArgumentException("action cannot be null");
+        }
+        if (inTransaction) {
+            this.pending.get().add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Opens a scope for staging the events of a transaction on the current
+     * thread. Events staged on the thread before are set aside until the
+     * scope is closed, so scopes may be nested, and events left behind by a
+     * transaction that was never signaled are not published by a later one.
+     * Close the scope on the same thread, in a finally block or a
+     * try-with-resources statement.
+     *
+     * @return the scope.
+     */
+    public Scope openScope() {
+        List<Runnable> outer = this.pending.get();
+        this.pending.set(new ArrayList<>());
+        return new Scope(outer);
+    }
+
+    /**
+     * Publishes the events and runs the actions staged on the current thread.
+     * Call it after the current thread's transaction commits.
+     */
+    public void afterCommit() {
+        List<Runnable> actions = this.pending.get();
+        this.pending.remove();
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Error running an action after commit", ex);
+            }
+        }
+    }
+
+    /**
+     * Discards the events and actions staged on the current thread. Call it
+     * after the current thread's transaction rolls back.
+     */
+    public void afterRollback() {
+        this.pending.remove();
+    }
+
+    /**
+     * Delivers all queued events now, on the calling thread.
+     */
+    public void flush() {
+        synchronized (this.drainLock) {
+            List<ChangeEvent> batch = new ArrayList<>(this.maxBatchSize);
+            ChangeEvent event;
+            while ((event = this.queue.poll()) != null) {
+                this.queued.decrementAndGet();
+                batch.add(event);
+                if (batch.size() == this.maxBatchSize) {
+                    deliver(batch);
+                    batch = new ArrayList<>(this.maxBatchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events that were dropped because the queue was
+     * full.
+     *
+     * @return the number of dropped events.
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Stops the delivery thread and delivers any queued events.
+     */
+    @Override
+    public void close() {
+        this.drainer.shutdown();
+        try {
+            this.drainer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Holds the events and actions staged on a thread while it is open. See
+     * {@link ChangeEventPublisher#openScope() }.
+     */
+    public final class Scope implements AutoCloseable {
+
+        private final List<Runnable> outer;
+        private boolean closed;
+
+        private Scope(List<Runnable> outer) {
+            this.outer = outer;
+        }
+
+        /**
+         * Publishes the events and runs the actions staged since the scope
+         * was opened or last committed. Call it after the scope's transaction
+         * commits.
+         */
+        public void commit() {
+            if (this.closed) {
+                throw new IllegalStateException("scope is closed");
+            }
+            afterCommit();
+        }
+
+        /**
+         * Discards the events and actions staged and not committed in this
+         * scope, and restores those that were staged before it was opened.
+         */
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                if (this.outer.isEmpty()) {
+                    pending.remove();
+                } else {
+                    pending.set(this.outer);
+                }
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            LOGGER.error("Error delivering change events", ex);
+        }
+    }
+
+    private void deliver(List<ChangeEvent> batch) {
+        List<ChangeEvent> events = Collections.unmodifiableList(batch);
+        for (ChangeEventSink sink : this.sinks) {
+            try {
+                sink.accept(events);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Change event sink {} failed on a batch of {} events",
+                        sink, events.size(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.List;
+
+/**
+ * Receives batches of change events from a {@link ChangeEventPublisher}, for
+ * example, to update a cache or a search index incrementally. Batches are
+ * delivered from one thread at a time, in the order the changes were
+ * committed on each thread.
+ *
+ * @author Andrew Post
+ */
+@FunctionalInterface
+public interface ChangeEventSink {
+
+    /**
+     * Handles a batch of events. Exceptions are logged and do not stop
+     * delivery to other sinks or of later batches.
+     *
+     * @param events the events. Guaranteed not empty.
+     */
+    void accept(List<ChangeEvent> events);
+}
@@ -0,0 +1,50 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * Remembers how far a {@link HistoricalCompactor} got, so that an
+ * interrupted compaction resumes where it stopped instead of rescanning the
+ * history table from the beginning.
+ *
+ * @author Andrew Post
+ */
+public interface CompactionCheckpointStore {
+
+    /**
+     * Gets the primary key of the last version that a compaction job
+     * processed.
+     *
+     * @param jobName the job's name.
+     * @return the primary key, or <code>null</code> if the job has not
+     * started or last ran to completion.
+     */
+    Object load(String jobName);
+
+    /**
+     * Records the primary key of the last version that a compaction job
+     * processed.
+     *
+     * @param jobName the job's name.
+     * @param lastId the primary key, or <code>null</code> to clear the
+     * checkpoint when the job completes.
+     */
+    void save(String jobName, Object lastId);
+}
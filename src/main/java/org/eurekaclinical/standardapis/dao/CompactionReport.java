@@ -0,0 +1,81 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * The outcome of a {@link HistoricalCompactor} run.
+ *
+ * @author Andrew Post
+ */
+public final class CompactionReport {
+
+    private final long removed;
+    private final int batches;
+    private final boolean complete;
+    private final long elapsedMillis;
+
+    CompactionReport(long removed, int batches, boolean complete,
+            long elapsedMillis) {
+        this.removed = removed;
+        this.batches = batches;
+        this.complete = complete;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets the number of versions removed, and archived if an archiver is
+     * set.
+     *
+     * @return the number of versions.
+     */
+    public long getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Gets the number of batches committed.
+     *
+     * @return the number of batches.
+     */
+    public int getBatches() {
+        return this.batches;
+    }
+
+    /**
+     * Gets whether every version expired before the horizon was processed,
+     * as opposed to the run being stopped or interrupted.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionReport{" + "removed=" + this.removed + ", batches="
+                + this.batches + ", complete=" + this.complete
+                + ", elapsedMillis=" + this.elapsedMillis + '}';
+    }
+}
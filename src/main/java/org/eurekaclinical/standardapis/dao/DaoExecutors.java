@@ -0,0 +1,120 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory methods for the executors that run data access object calls off of
+ * the caller's thread, as in {@link AsyncDao}.
+ *
+ * @author Andrew Post
+ */
+public final class DaoExecutors {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(DaoExecutors.class);
+
+    private DaoExecutors() {
+    }
+
+    /**
+     * Creates a fixed-size thread pool with a bounded work queue. When the
+     * queue is full, the submitting thread runs the task itself, which slows
+     * down submitters rather than growing the queue without limit.
+     *
+     * @param threads the number of worker threads. Must be positive.
+     * @param queueCapacity the maximum number of waiting tasks. Must be
+     * positive.
+     * @return a new executor service.
+     */
+    public static ExecutorService newBoundedExecutor(int threads,
+            int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "queueCapacity must be positive");
+        }
+        return new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new DaoThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task if
+     * the running JDK supports virtual threads. Otherwise, it falls back to
+     * {@link #newBoundedExecutor(int, int) }.
+     *
+     * @param fallbackThreads the number of worker threads to use if virtual
+     * threads are not available.
+     * @param fallbackQueueCapacity the work queue capacity to use if virtual
+     * threads are not available.
+     * @return a new executor service.
+     */
+    public static ExecutorService newVirtualThreadExecutor(int fallbackThreads,
+            int fallbackQueueCapacity) {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException ex) {
+            LOGGER.debug("Virtual threads are not available, using a bounded thread pool instead: {}",
+                    ex.toString());
+            return newBoundedExecutor(fallbackThreads, fallbackQueueCapacity);
+        }
+    }
+
+    /**
+     * Names the daemon worker threads of bounded executors.
+     */
+    private static final class DaoThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+        private final String prefix;
+
+        DaoThreadFactory() {
+            this.prefix = "eurekaclinical-dao-" + POOL_NUMBER.incrementAndGet()
+                    + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r,
+                    this.prefix + this.threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
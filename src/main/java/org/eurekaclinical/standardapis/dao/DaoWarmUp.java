@@ -0,0 +1,279 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
+import org.eurekaclinical.standardapis.props.EurekaClinicalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Preloads reference data and runs each common query shape once at startup,
+ * so that the first requests after a deploy do not pay for cold caches and
+ * query compilation. Call {@link #run() } from a servlet context listener or
+ * similar hook that finishes before the application reports ready.
+ *
+ * Tasks run in parallel on their own threads, so the data access objects
+ * must be able to obtain an entity manager on a thread that is not serving a
+ * request. If entity managers are bound to a unit of work, as with
+ * Guice Persist, set a task wrapper that begins and ends one around each
+ * task.
+ *
+ * @author Andrew Post
+ */
+public class DaoWarmUp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaoWarmUp.class);
+
+    /**
+     * A name that is looked up to exercise name queries. It is not
+     * expected to exist.
+     */
+    private static final String PROBE_NAME = "eurekaclinical-warmup-probe";
+
+    private final EurekaClinicalProperties properties;
+    private final Map<String, Runnable> tasks;
+    private UnaryOperator<Runnable> taskWrapper;
+    private volatile boolean complete;
+
+    /**
+     * Creates a warm-up with no tasks.
+     *
+     * @param inProperties the application's configuration, which says whether
+     * warm-up is enabled, how many threads it uses and how long it may take.
+     * Cannot be <code>null</code>.
+     */
+    public DaoWarmUp(EurekaClinicalProperties inProperties) {
+        if (inProperties == null) {
+            throw new IllegalArgumentException("inProperties cannot be null");
+        }
+        this.properties = inProperties;
+        this.tasks = new LinkedHashMap<>();
+        this.taskWrapper = UnaryOperator.identity();
+    }
+
+    /**
+     * Sets a function that wraps each task before it runs, for example, to
+     * begin and end a unit of work. The default runs tasks as they are.
+     *
+     * @param taskWrapper the wrapper. Cannot be <code>null</code>.
+     * @return this warm-up.
+     */
+    public DaoWarmUp setTaskWrapper(UnaryOperator<Runnable> taskWrapper) {
+        if (taskWrapper == null) {
+            throw new IllegalArgumentException("taskWrapper cannot be null");
+        }
+        this.taskWrapper = taskWrapper;
+        return this;
+    }
+
+    /**
+     * Adds a task.
+     *
+     * @param name the task's name in the report. Must be unique.
+     * @param task the task. Cannot be <code>null</code>.
+     * @return this warm-up.
+     */
+    public DaoWarmUp addTask(String name, Runnable task) {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("task cannot be null");
+        }
+        if (this.tasks.putIfAbsent(name, task) != null) {
+            throw new IllegalArgumentException("Duplicate task " + name);
+        }
+        return this;
+    }
+
+    /**
+     * Adds tasks that load all roles and look one up by name.
+     *
+     * @param roleDao the role data access object. Cannot be
+     * <code>null</code>.
+     * @return this warm-up.
+     */
+    public DaoWarmUp addRoles(RoleDao<?> roleDao) {
+        if (roleDao == null) {
+            throw new IllegalArgumentException("roleDao cannot be null");
+        }
+        addTask("RoleDao.getAll", roleDao::getAll);
+        return addTask("RoleDao.getByName",
+                () -> roleDao.getByName(PROBE_NAME));
+    }
+
+    /**
+     * Adds tasks that load all groups and look one up by name.
+     *
+     * @param groupDao the group data access object. Cannot be
+     * <code>null</code>.
+     * @return this warm-up.
+     */
+    public DaoWarmUp addGroups(GroupDao<?> groupDao) {
+        if (groupDao == null) {
+            throw new IllegalArgumentException("groupDao cannot be null");
+        }
+        addTask("GroupDao.getAll", groupDao::getAll);
+        return addTask("GroupDao.getByName",
+                () -> groupDao.getByName(PROBE_NAME));
+    }
+
+    /**
+     * Adds a task that loads the auto-authorization template, which
+     * {@link AbstractJpaUserTemplateDao} then keeps in memory.
+     *
+     * @param userTemplateDao the user template data access object. Cannot be
+     * <code>null</code>.
+     * @return this warm-up.
+     */
+    public DaoWarmUp addAutoAuthorizationTemplate(
+            UserTemplateDao<?> userTemplateDao) {
+        if (userTemplateDao == null) {
+            throw new IllegalArgumentException(
+                    "userTemplateDao cannot be null");
+        }
+        return addTask("UserTemplateDao.getAutoAuthorizationTemplate",
+                userTemplateDao::getAutoAuthorizationTemplate);
+    }
+
+    /**
+     * Adds tasks that look up a user by name and by principal.
+     *
+     * @param userDao the user data access object. Cannot be
+     * <code>null</code>.
+     * @return this warm-up.
+     */
+    public DaoWarmUp addUserLookups(UserDao<?> userDao) {
+        if (userDao == null) {
+            throw new IllegalArgumentException("userDao cannot be null");
+        }
+        Principal probe = () -> PROBE_NAME;
+        addTask("UserDao.getByName", () -> userDao.getByName(PROBE_NAME));
+        return addTask("UserDao.getByPrincipal",
+                () -> userDao.getByPrincipal(probe));
+    }
+
+    /**
+     * Runs the tasks in parallel and waits for them to finish or for the
+     * configured timeout to elapse. Failures are logged and reported rather
+     * than thrown, since a failed warm-up should not keep the application
+     * from starting.
+     *
+     * @return the report, or <code>null</code> if warm-up is disabled.
+     */
+    public WarmUpReport run() {
+        if (!this.properties.isWarmUpEnabled()) {
+            LOGGER.info("Warm-up is disabled");
+            this.complete = true;
+            return null;
+        }
+        int threads = Math.max(1, Math.min(this.properties.getWarmUpThreads(),
+                Math.max(1, this.tasks.size())));
+        ExecutorService executor = DaoExecutors.newBoundedExecutor(threads,
+                Math.max(1, this.tasks.size()));
+        try {
+            return run(executor, this.properties.getWarmUpTimeoutSeconds(),
+                    TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets whether {@link #run() } has finished.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    private WarmUpReport run(ExecutorService executor, long timeout,
+            TimeUnit unit) {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        Map<String, Long> taskMillis = new ConcurrentHashMap<>();
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Runnable> me : this.tasks.entrySet()) {
+            String name = me.getKey();
+            Runnable wrapped = this.taskWrapper.apply(me.getValue());
+            futures.put(name, executor.submit(() -> {
+                long taskStart = System.nanoTime();
+                try {
+                    wrapped.run();
+                } finally {
+                    ReadYourWrites.clear();
+                }
+                taskMillis.put(name, TimeUnit.NANOSECONDS.toMillis(
+                        System.nanoTime() - taskStart));
+            }));
+        }
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        List<String> unfinished = new ArrayList<>();
+        for (Map.Entry<String, Future<?>> me : futures.entrySet()) {
+            try {
+                me.getValue().get(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+            } catch (ExecutionException ex) {
+                failures.put(me.getKey(), ex.getCause());
+                LOGGER.warn("Warm-up task {} failed", me.getKey(),
+                        ex.getCause());
+            } catch (TimeoutException
+                    | CancellationException ex) {
+                me.getValue().cancel(true);
+                unfinished.add(me.getKey());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                unfinished.add(me.getKey());
+                break;
+            }
+        }
+        Map<String, Long> orderedMillis = new LinkedHashMap<>();
+        for (String name : futures.keySet()) {
+            Long millis = taskMillis.get(name);
+            if (millis != null) {
+                orderedMillis.put(name, millis);
+            }
+        }
+        WarmUpReport report = new WarmUpReport(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                orderedMillis, failures, !unfinished.isEmpty());
+        if (!unfinished.isEmpty()) {
+            LOGGER.warn("Warm-up timed out waiting for {}", unfinished);
+        }
+        LOGGER.info("Warm-up of {} tasks took {} ms", futures.size(),
+                report.getElapsedMillis());
+        this.complete = true;
+        return report;
+    }
+}
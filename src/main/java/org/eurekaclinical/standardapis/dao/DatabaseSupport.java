@@ -19,10 +19,14 @@ package org.eurekaclinical.standardapis.dao;
  * limitations under the License.
  * #L%
  */
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.TypedQuery;
@@ -31,8 +35,12 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
+import org.eurekaclinical.standardapis.entity.CurrentFlagEntity;
 import org.eurekaclinical.standardapis.entity.HistoricalEntity;
+import org.eurekaclinical.standardapis.metrics.DaoMetrics;
+import org.eurekaclinical.standardapis.metrics.NoOpDaoMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,9 +53,23 @@ public final class DatabaseSupport {
     private static Logger LOGGER
             = LoggerFactory.getLogger(DatabaseSupport.class);
 
+    private static final String EQUAL_TO = SqlComparator.EQUAL_TO.name();
+
+    private static final String IN = "IN";
+
+    private static final String BETWEEN = "BETWEEN";
+
+    private static final String LOCK_TIMEOUT_HINT
+            = "javax.persistence.lock.timeout";
+
+    /**
+     * The lock timeout hint value that asks Hibernate to skip locked rows.
+     */
+    private static final int SKIP_LOCKED = -2;
+
     /**
      * Comparators for constructing where clauses that set a threshold on a
-     * numerical value.
+     * value of any {@link Comparable} type, such as a number, date or string.
      */
     public static enum SqlComparator {
         LESS_THAN_OR_EQUAL_TO,
@@ -89,6 +111,28 @@ public final class DatabaseSupport {
      */
     private final Provider<EntityManager> entityManagerProvider;
 
+    /**
+     * The entity manager used in creating read-only queries when reads may go
+     * to a replica, or <code>null</code> to read from the primary.
+     */
+    private final Provider<EntityManager> replicaEntityManagerProvider;
+
+    /**
+     * Records the latency and result size of each query.
+     */
+    private volatile DaoMetrics metrics = NoOpDaoMetrics.INSTANCE;
+
+    /**
+     * Flags slow queries, or <code>null</code> to skip checking.
+     */
+    private volatile SlowQueryDetector slowQueryDetector;
+
+    /**
+     * The name of the data access object using this instance, for slow query
+     * reports.
+     */
+    private String daoName;
+
     /**
      * Creates a database support instance that uses the provided entity manager
      * to construct queries.
@@ -101,6 +145,7 @@ public final class DatabaseSupport {
             throw new IllegalArgumentException("entityManager cannot be null");
         }
         this.entityManagerProvider = new EntityManagerProvider(entityManager);
+        this.replicaEntityManagerProvider = null;
     }
 
     /**
@@ -116,6 +161,89 @@ public final class DatabaseSupport {
                     "entityManagerProvider cannot be null");
         }
         this.entityManagerProvider = entityManagerProvider;
+        this.replicaEntityManagerProvider = null;
+    }
+
+    /**
+     * Creates a database support instance that sends read-only queries to a
+     * replica. Queries go to the primary instead when the primary entity
+     * manager is in a transaction, when they lock rows, or after a write on
+     * the same thread, as tracked by {@link ReadYourWrites}.
+     *
+     * @param entityManagerProvider provides entity managers for the primary
+     * database. Cannot be <code>null</code>.
+     * @param replicaEntityManagerProvider provides entity managers for a
+     * replica, or <code>null</code> to read from the primary.
+     */
+    public DatabaseSupport(Provider<EntityManager> entityManagerProvider,
+            Provider<EntityManager> replicaEntityManagerProvider) {
+        if (entityManagerProvider == null) {
+            throw new IllegalArgumentException(
+                    "entityManagerProvider cannot be null");
+        }
+        this.entityManagerProvider = entityManagerProvider;
+        this.replicaEntityManagerProvider = replicaEntityManagerProvider;
+    }
+
+    /**
+     * Gets whether read-only queries may go to a replica.
+     *
+     * @return <code>true</code> if a replica is configured.
+     */
+    public boolean hasReplica() {
+        return this.replicaEntityManagerProvider != null;
+    }
+
+    /**
+     * Gets the metrics collector that records the latency and result size of
+     * each query.
+     *
+     * @return the metrics collector. Guaranteed not <code>null</code>.
+     */
+    public DaoMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the metrics collector that records the latency and result size of
+     * each query. The default discards everything.
+     *
+     * @param metrics the metrics collector. If <code>null</code>, the default
+     * is restored.
+     */
+    public void setMetrics(DaoMetrics metrics) {
+        this.metrics = metrics != null ? metrics : NoOpDaoMetrics.INSTANCE;
+    }
+
+    /**
+     * Gets the detector that flags queries exceeding a latency threshold.
+     *
+     * @return the slow query detector, or <code>null</code> if slow queries
+     * are not being detected.
+     */
+    public SlowQueryDetector getSlowQueryDetector() {
+        return this.slowQueryDetector;
+    }
+
+    /**
+     * Sets the detector that flags queries exceeding a latency threshold. A
+     * detector may be shared by many instances. The default is
+     * <code>null</code>, which turns off slow query detection.
+     *
+     * @param slowQueryDetector the slow query detector, or <code>null</code>.
+     */
+    public void setSlowQueryDetector(SlowQueryDetector slowQueryDetector) {
+        this.slowQueryDetector = slowQueryDetector;
+    }
+
+    /**
+     * Sets the name of the data access object using this instance, which is
+     * reported with slow queries.
+     *
+     * @param daoName a class name.
+     */
+    void setDaoName(String daoName) {
+        this.daoName = daoName;
     }
 
     /**
@@ -131,15 +259,14 @@ public final class DatabaseSupport {
         if (entityCls == null) {
             throw new IllegalArgumentException("entityCls cannot be null");
         }
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery
                 = builder.createQuery(entityCls);
         criteriaQuery.from(entityCls);
         TypedQuery<T> typedQuery
                 = entityManager.createQuery(criteriaQuery);
-        List<T> results = typedQuery.getResultList();
-        return results;
+        return instrument(entityCls, "getAll", typedQuery::getResultList);
     }
     
     /**
@@ -155,17 +282,17 @@ public final class DatabaseSupport {
         if (entityCls == null) {
             throw new IllegalArgumentException("entityCls cannot be null");
         }
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery
                 = builder.createQuery(entityCls);
         criteriaQuery.from(entityCls);
         TypedQuery<T> typedQuery
                 = entityManager.createQuery(criteriaQuery);
-        return typedQuery
+        typedQuery
                 .setFirstResult(firstResult)
-                .setMaxResults(maxResults)
-                .getResultList();
+                .setMaxResults(maxResults);
+        return instrument(entityCls, "getAll", typedQuery::getResultList);
     }
 
     /**
@@ -178,13 +305,14 @@ public final class DatabaseSupport {
      * @return the instances requested. Guaranteed not <code>null</code>.
      */
     public <T extends HistoricalEntity<?>> List<T> getCurrent(Class<T> historicalEntityCls) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(historicalEntityCls);
         Root<T> root = criteriaQuery.from(historicalEntityCls);
         criteriaQuery.where(expiredAt(root, builder));
         TypedQuery<T> typedQuery = entityManager.createQuery(criteriaQuery);
-        return typedQuery.getResultList();
+        return instrument(historicalEntityCls, "getCurrent",
+                typedQuery::getResultList);
     }
 
     /**
@@ -203,7 +331,7 @@ public final class DatabaseSupport {
     public <T extends HistoricalEntity<?>, Y> T getCurrentUniqueByAttribute(
             Class<T> historicalEntityCls, 
             SingularAttribute<T, Y> attribute, Y value) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(historicalEntityCls);
         Root<T> root = criteriaQuery.from(historicalEntityCls);
@@ -212,18 +340,10 @@ public final class DatabaseSupport {
                 expiredAt(root, builder));
         criteriaQuery.where(whereClause);
         TypedQuery<T> query = entityManager.createQuery(criteriaQuery);
-        T result = null;
-        try {
-            result = query.getSingleResult();
-        } catch (NonUniqueResultException nure) {
-            LOGGER.warn("Result not unique for {}: {} = {}",
-                    historicalEntityCls.getName(), attribute.getName(), value);
-            result = query.getResultList().get(0);
-        } catch (NoResultException nre) {
-            LOGGER.debug("Result not existant for {}: {} = {}",
-                    historicalEntityCls.getName(), attribute.getName(), value);
-        }
-        return result;
+        return instrument(historicalEntityCls, "getCurrentUniqueByAttribute",
+                attribute.getName(), EQUAL_TO, -1,
+                () -> singleResult(query, historicalEntityCls,
+                        attribute.getName(), value));
     }
     
     /**
@@ -242,7 +362,7 @@ public final class DatabaseSupport {
     public <T extends HistoricalEntity<?>, Y> List<T> getCurrentListByAttribute(
             Class<T> historicalEntityCls, 
             SingularAttribute<T, Y> attribute, Y value) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(historicalEntityCls);
         Root<T> root = criteriaQuery.from(historicalEntityCls);
@@ -251,10 +371,594 @@ public final class DatabaseSupport {
                 expiredAt(root, builder));
         criteriaQuery.where(whereClause);
         TypedQuery<T> typedQuery = entityManager.createQuery(criteriaQuery);
-        return typedQuery.getResultList();
+        return instrument(historicalEntityCls, "getCurrentListByAttribute",
+                attribute.getName(), EQUAL_TO, -1, typedQuery::getResultList);
+    }
+
+    /**
+     * Gets an ordered page of the instances of the specified entity.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the class of the specified entity. Cannot be
+     * <code>null</code>.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all instances.
+     * @return the instances requested. Guaranteed not <code>null</code>.
+     */
+    public <T> List<T> getAll(Class<T> entityCls, SortSpec<T> sort,
+            Paging paging) {
+        return getList(entityCls, "getAll", null, null, -1, null, sort,
+                paging);
+    }
+
+    /**
+     * Executes a query for an ordered page of the entities that have the
+     * specified value of the given attribute. A <code>null</code> value
+     * matches entities whose attribute is null.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y> List<T> getListByAttribute(Class<T> entityCls,
+            SingularAttribute<T, Y> attribute, Y value, SortSpec<T> sort,
+            Paging paging) {
+        return getList(entityCls, "getListByAttribute", nameOf(attribute),
+                EQUAL_TO, -1, QueryCriterion.equal(attribute, value), sort,
+                paging);
+    }
+
+    /**
+     * Executes a query for an ordered page of the entities that match the
+     * given path value. A <code>null</code> value matches entities whose path
+     * value is null.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param provider provides the path from the entity to the target
+     * attribute/column. Cannot be <code>null</code>.
+     * @param value the value.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y> List<T> getListByAttribute(Class<T> entityCls,
+            QueryPathProvider<T, Y> provider, Y value, SortSpec<T> sort,
+            Paging paging) {
+        return getList(entityCls, "getListByAttribute",
+                nameOf(provider), EQUAL_TO, -1,
+                QueryCriterion.equal(provider, value), sort, paging);
+    }
+
+    /**
+     * Executes a query for an ordered page of the entities whose value of the
+     * given attribute compares to the specified value as the comparator says.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param comparator the comparator to use. Cannot be <code>null</code>.
+     * @param value the value.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttribute(
+            Class<T> entityCls, SingularAttribute<T, Y> attribute,
+            SqlComparator comparator, Y value, SortSpec<T> sort,
+            Paging paging) {
+        return getList(entityCls, "getListByAttribute", nameOf(attribute),
+                comparator.name(), -1,
+                QueryCriterion.compare(attribute, comparator, value), sort,
+                paging);
+    }
+
+    /**
+     * Executes a query for an ordered page of the entities whose path value
+     * compares to the specified value as the comparator says.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param provider provides the path from the entity to the target
+     * attribute/column. Cannot be <code>null</code>.
+     * @param comparator the comparator to use. Cannot be <code>null</code>.
+     * @param value the value.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttribute(
+            Class<T> entityCls, QueryPathProvider<T, Y> provider,
+            SqlComparator comparator, Y value, SortSpec<T> sort,
+            Paging paging) {
+        return getList(entityCls, "getListByAttribute",
+                nameOf(provider), comparator.name(), -1,
+                QueryCriterion.compare(provider, comparator, value), sort,
+                paging);
+    }
+
+    /**
+     * Executes a query for an ordered page of the entities that have any of
+     * the given attribute values.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param values the values. Cannot be <code>null</code>.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y> List<T> getListByAttributeIn(Class<T> entityCls,
+            SingularAttribute<T, Y> attribute, List<Y> values,
+            SortSpec<T> sort, Paging paging) {
+        return getList(entityCls, "getListByAttributeIn", nameOf(attribute),
+                IN, sizeOf(values), QueryCriterion.in(attribute, values), sort,
+                paging);
     }
 
+    /**
+     * Executes a query for an ordered page of the entities whose path value is
+     * any of the given values.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param provider provides the path from the entity to the target
+     * attribute/column. Cannot be <code>null</code>.
+     * @param values the values. Cannot be <code>null</code>.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y> List<T> getListByAttributeIn(Class<T> entityCls,
+            QueryPathProvider<T, Y> provider, List<Y> values,
+            SortSpec<T> sort, Paging paging) {
+        return getList(entityCls, "getListByAttributeIn",
+                nameOf(provider), IN, sizeOf(values),
+                QueryCriterion.in(provider, values), sort, paging);
+    }
+
+    /**
+     * Gets an ordered page of the current instances of the specified
+     * historical entity.
+     *
+     * @param <T> the type of the entity.
+     * @param historicalEntityCls the class of the specified historical entity.
+     * Cannot be <code>null</code>.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all instances.
+     * @return the instances requested. Guaranteed not <code>null</code>.
+     */
+    public <T extends HistoricalEntity<?>> List<T> getCurrent(
+            Class<T> historicalEntityCls, SortSpec<T> sort, Paging paging) {
+        return getList(historicalEntityCls, "getCurrent", null, null, -1,
+                current(), sort, paging);
+    }
+
+    /**
+     * Gets an ordered page of the current instances of the specified
+     * historical entity that have the given value of the given attribute.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the attribute's type.
+     * @param historicalEntityCls the class of the specified historical entity.
+     * Cannot be <code>null</code>.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     * @return the instances requested. Guaranteed not <code>null</code>.
+     */
+    public <T extends HistoricalEntity<?>, Y> List<T> getCurrentListByAttribute(
+            Class<T> historicalEntityCls, SingularAttribute<T, Y> attribute,
+            Y value, SortSpec<T> sort, Paging paging) {
+        return getList(historicalEntityCls, "getCurrentListByAttribute",
+                nameOf(attribute), EQUAL_TO, -1,
+                QueryCriterion.allOf(QueryCriterion.equal(attribute, value),
+                        current()), sort, paging);
+    }
+
+    /**
+     * Executes a query for an ordered page of the entities that match the
+     * given criterion.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param criterion the criterion. Cannot be <code>null</code>.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T> List<T> getListByCriteria(Class<T> entityCls,
+            QueryCriterion<T> criterion, SortSpec<T> sort, Paging paging) {
+        if (criterion == null) {
+            throw new IllegalArgumentException("criterion cannot be null");
+        }
+        return getList(entityCls, "getListByCriteria", criterion.toString(),
+                null, -1, criterion, sort, paging);
+    }
+
+    /**
+     * Claims up to the given number of entities that match a criterion, for
+     * using a table as a work queue. The entities are selected in the given
+     * order and locked with {@link LockModeType#PESSIMISTIC_WRITE} using
+     * <code>SKIP LOCKED</code>, so rows that another worker has claimed are
+     * passed over rather than waited for, and concurrent workers get disjoint
+     * batches. The locks are held until the caller's transaction ends, and
+     * the caller should mark the entities as taken or remove them before
+     * committing.
+     *
+     * <code>SKIP LOCKED</code> is requested with the lock timeout hint value
+     * -2, which Hibernate 5.2 and later render on databases that support it,
+     * such as PostgreSQL 9.5, MySQL 8 and Oracle. Elsewhere the query falls
+     * back to a blocking <code>FOR UPDATE</code>.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param criterion which entities are claimable. Cannot be
+     * <code>null</code>.
+     * @param sort the order in which to claim entities, or <code>null</code>
+     * for no particular order.
+     * @param maxResults the maximum number of entities to claim. Must be
+     * positive.
+     *
+     * @return the claimed entities. Guaranteed not <code>null</code>.
+     * @throws javax.persistence.TransactionRequiredException if there is no
+     * transaction.
+     */
+    public <T> List<T> claimNext(Class<T> entityCls,
+            QueryCriterion<T> criterion, SortSpec<T> sort, int maxResults) {
+        return claim(entityCls, criterion, sort, maxResults, SKIP_LOCKED);
+    }
+
+    /**
+     * Claims up to the given number of entities that match a criterion,
+     * waiting for rows that another transaction has locked. The entities are
+     * selected in the given order and locked with
+     * {@link LockModeType#PESSIMISTIC_WRITE} until the caller's transaction
+     * ends. If a lock cannot be acquired in time, the persistence provider
+     * throws a {@link javax.persistence.LockTimeoutException} or
+     * {@link javax.persistence.PessimisticLockException}.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param criterion which entities are claimable. Cannot be
+     * <code>null</code>.
+     * @param sort the order in which to claim entities, or <code>null</code>
+     * for no particular order.
+     * @param maxResults the maximum number of entities to claim. Must be
+     * positive.
+     * @param lockTimeoutMillis how long to wait for locks, in milliseconds,
+     * or 0 to fail immediately (<code>NOWAIT</code>). Cannot be negative.
+     *
+     * @return the claimed entities. Guaranteed not <code>null</code>.
+     * @throws javax.persistence.TransactionRequiredException if there is no
+     * transaction.
+     */
+    public <T> List<T> claimNext(Class<T> entityCls,
+            QueryCriterion<T> criterion, SortSpec<T> sort, int maxResults,
+            long lockTimeoutMillis) {
+        if (lockTimeoutMillis < 0) {
+            throw new IllegalArgumentException(
+                    "lockTimeoutMillis cannot be negative");
+        }
+        return claim(entityCls, criterion, sort, maxResults,
+                (int) Math.min(Integer.MAX_VALUE, lockTimeoutMillis));
+    }
+
+    private <T> List<T> claim(Class<T> entityCls,
+            QueryCriterion<T> criterion, SortSpec<T> sort, int maxResults,
+            int lockTimeout) {
+        if (criterion == null) {
+            throw new IllegalArgumentException("criterion cannot be null");
+        }
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive");
+        }
+        return getList(entityCls, "claimNext", criterion.toString(), null, -1,
+                criterion, sort, Paging.first(maxResults), lockTimeout);
+    }
+
+    /**
+     * Runs an ordered, paged query for entities that match a criterion. The
+     * sort and the keyset of keyset pagination are applied in the database.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param method the name of the data access method, for metrics.
+     * @param attribute the attribute in the where clause, for metrics.
+     * @param comparator the comparator in the where clause, for metrics.
+     * @param inListSize the size of the where clause's IN list, or -1.
+     * @param criterion the criterion, or <code>null</code> to match all
+     * entities.
+     * @param sort the order, or <code>null</code>.
+     * @param paging the page, or <code>null</code>.
+     * @return the matching entities.
+     */
+    private <T> List<T> getList(Class<T> entityCls, String method,
+            String attribute, String comparator, int inListSize,
+            QueryCriterion<T> criterion, SortSpec<T> sort, Paging paging) {
+        return getList(entityCls, method, attribute, comparator, inListSize,
+                criterion, sort, paging, null);
+    }
+
+    /**
+     * Runs an ordered, paged query for entities that match a criterion,
+     * optionally locking them.
+     *
+     * @param lockTimeout the lock timeout hint for a
+     * {@link LockModeType#PESSIMISTIC_WRITE} lock, or <code>null</code> for no
+     * lock.
+     */
+    private <T> List<T> getList(Class<T> entityCls, String method,
+            String attribute, String comparator, int inListSize,
+            QueryCriterion<T> criterion, SortSpec<T> sort, Paging paging,
+            Integer lockTimeout) {
+        if (entityCls == null) {
+            throw new IllegalArgumentException("entityCls cannot be null");
+        }
+        if (paging != null && paging.isKeyset() && sort == null) {
+            throw new IllegalArgumentException(
+                    "keyset paging requires a sort");
+        }
+        EntityManager entityManager = lockTimeout != null
+                ? this.entityManagerProvider.get() : readEntityManager();
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
+        Root<T> root = criteriaQuery.from(entityCls);
+        QueryCriterion.Bindings bindings = new QueryCriterion.Bindings();
+        List<Predicate> predicates = new ArrayList<>(2);
+        if (criterion != null) {
+            predicates.add(criterion.toPredicate(root, builder, bindings));
+        }
+        if (paging != null && paging.isKeyset()) {
+            predicates.add(sort.after(root, builder, paging.getKeyset(),
+                    bindings));
+        }
+        if (!predicates.isEmpty()) {
+            criteriaQuery.where(predicates.toArray(
+                    new Predicate[predicates.size()]));
+        }
+        if (sort != null) {
+            criteriaQuery.orderBy(sort.toOrders(root, builder));
+        }
+        TypedQuery<T> typedQuery = entityManager.createQuery(criteriaQuery);
+        bindings.bind(typedQuery);
+        if (paging != null) {
+            paging.apply(typedQuery);
+        }
+        if (lockTimeout != null) {
+            typedQuery.setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setHint(LOCK_TIMEOUT_HINT, lockTimeout);
+        }
+        return instrument(entityCls, method, attribute, comparator,
+                inListSize, typedQuery::getResultList);
+    }
+
+    /**
+     * Creates a criterion that matches the current instances of a historical
+     * entity.
+     *
+     * @param <T> the type of the entity.
+     * @return the criterion.
+     */
+    private <T extends HistoricalEntity<?>> QueryCriterion<T> current() {
+        return new QueryCriterion<T>() {
+            @Override
+            Predicate toPredicate(Root<T> root, CriteriaBuilder builder,
+                    Bindings bindings) {
+                return expiredAt(root, builder);
+            }
+
+            @Override
+            void appendShape(StringBuilder buf) {
+                buf.append("current");
+            }
+        };
+    }
+
+    /**
+     * Runs a query that has no attribute criteria, recording its latency and
+     * result size with this instance's {@link DaoMetrics} and checking it with
+     * this instance's {@link SlowQueryDetector}.
+     *
+     * @param <R> the type of the query result.
+     * @param entityCls the entity class being queried.
+     * @param method the name of the data access method.
+     * @param query runs the query.
+     * @return the query result.
+     */
+    <R> R instrument(Class<?> entityCls, String method, Supplier<R> query) {
+        return instrument(entityCls, method, null, null, -1, query);
+    }
+
+    /**
+     * Runs a query, recording its latency and result size with this
+     * instance's {@link DaoMetrics} and checking it with this instance's
+     * {@link SlowQueryDetector}. The attribute, comparator and IN list size
+     * describe the shape of the query for slow query reports. Never pass
+     * parameter values.
+     *
+     * @param <R> the type of the query result.
+     * @param entityCls the entity class being queried.
+     * @param method the name of the data access method.
+     * @param attribute the attribute or path in the where clause, if any.
+     * @param comparator the comparator in the where clause, if any.
+     * @param inListSize the number of values in the where clause's IN list,
+     * or -1 if there is none.
+     * @param query runs the query.
+     * @return the query result.
+     */
+    <R> R instrument(Class<?> entityCls, String method, String attribute,
+            String comparator, int inListSize, Supplier<R> query) {
+        DaoMetrics m = this.metrics;
+        long start = System.nanoTime();
+        R result;
+        try {
+            result = query.get();
+        } catch (RuntimeException ex) {
+            long elapsed = System.nanoTime() - start;
+            m.recordException(entityCls, method, elapsed, ex);
+            checkSlow(entityCls, method, attribute, comparator, inListSize,
+                    elapsed);
+            throw ex;
+        }
+        long elapsed = System.nanoTime() - start;
+        m.recordCall(entityCls, method, elapsed, rowCount(result));
+        checkSlow(entityCls, method, attribute, comparator, inListSize,
+                elapsed);
+        return result;
+    }
+
+    private void checkSlow(Class<?> entityCls, String method,
+            String attribute, String comparator, int inListSize,
+            long elapsedNanos) {
+        SlowQueryDetector detector = this.slowQueryDetector;
+        if (detector != null && detector.isSlow(elapsedNanos)) {
+            detector.record(new SlowQuery(entityCls.getName(), method,
+                    attribute, comparator, inListSize, callerName(),
+                    elapsedNanos, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Gets the name of the data access object that is using this instance. If
+     * none was set, the class of the first caller outside of this class is
+     * returned.
+     *
+     * @return a class name.
+     */
+    private String callerName() {
+        String result = this.daoName;
+        if (result == null) {
+            String thisClassName = DatabaseSupport.class.getName();
+            for (StackTraceElement frame
+                    : Thread.currentThread().getStackTrace()) {
+                String className = frame.getClassName();
+                if (!className.startsWith(thisClassName)
+                        && !className.equals(Thread.class.getName())) {
+                    result = className;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String nameOf(SingularAttribute<?, ?> attribute) {
+        if (attribute == null) {
+            throw new IllegalArgumentException("attribute cannot be null");
+        }
+        return attribute.getName();
+    }
+
+    private static String nameOf(QueryPathProvider<?, ?> provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider cannot be null");
+        }
+        return provider.getClass().getName();
+    }
+
+    private static int sizeOf(List<?> values) {
+        return values != null ? values.size() : 0;
+    }
+
+    private static int rowCount(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        } else {
+            return result != null ? 1 : 0;
+        }
+    }
+
+    /**
+     * Gets the single result of a query. If there is more than one result, the
+     * first is returned and a warning is logged.
+     *
+     * @param <T> the type of the entity.
+     * @param query the query.
+     * @param entityCls the entity class, for logging.
+     * @param attributeName the name of the attribute in the where clause, for
+     * logging.
+     * @param value the value in the where clause, for logging.
+     * @return the result, or <code>null</code> if there is none.
+     */
+    private static <T> T singleResult(TypedQuery<T> query, Class<?> entityCls,
+            String attributeName, Object value) {
+        T result = null;
+        try {
+            result = query.getSingleResult();
+        } catch (NonUniqueResultException nure) {
+            LOGGER.warn("Result not unique for {}: {} = {}",
+                    entityCls.getName(), attributeName, value);
+            result = query.getResultList().get(0);
+        } catch (NoResultException nre) {
+            LOGGER.debug("Result not existant for {}: {} = {}",
+                    entityCls.getName(), attributeName, value);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the entity manager for a read-only query: the replica's, unless
+     * there is none, the thread must read its own writes, or the primary
+     * entity manager is in a transaction whose changes the query must see.
+     */
+    EntityManager readEntityManager() {
+        EntityManager primary = this.entityManagerProvider.get();
+        if (this.replicaEntityManagerProvider == null
+                || ReadYourWrites.isSticky()
+                || primary.isJoinedToTransaction()) {
+            return primary;
+        }
+        return this.replicaEntityManagerProvider.get();
+    }
+
+    /**
+     * Gets the path of an entity's primary key attribute, whatever it is
+     * named, from the metamodel.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the primary key.
+     * @param root the query root of an entity with a single id attribute.
+     * @return the path.
+     */
+    static <T, Y> Path<Y> idPath(Root<T> root) {
+        EntityType<T> type = root.getModel();
+        if (!type.hasSingleIdAttribute()) {
+            throw new IllegalArgumentException(type.getName()
+                    + " does not have a single id attribute");
+        }
+        return root.get(type.getId(type.getIdType().getJavaType()).getName());
+    }
+
+    /**
+     * Creates the predicate that matches current instances. Entities that
+     * implement {@link CurrentFlagEntity} are matched by equality on their
+     * flag, and others by comparing their expiration datetime with now.
+     */
     private <T> Predicate expiredAt(Root<T> root, CriteriaBuilder builder) {
+        if (CurrentFlagEntity.class.isAssignableFrom(root.getJavaType())) {
+            return builder.isTrue(
+                    root.get(CurrentFlagEntity.CURRENT_ATTRIBUTE));
+        }
         Path<Date> expiredAt = root.get("expiredAt");
         return builder.or(
                 builder.isNull(root.get("expiredAt")),
@@ -284,18 +988,10 @@ public final class DatabaseSupport {
             throw new IllegalArgumentException("attribute cannot be null");
         }
         TypedQuery<T> query = createTypedQuery(entityCls, attribute, value);
-        T result = null;
-        try {
-            result = query.getSingleResult();
-        } catch (NonUniqueResultException nure) {
-            LOGGER.warn("Result not unique for {}: {} = {}",
-                    entityCls.getName(), attribute.getName(), value);
-            result = query.getResultList().get(0);
-        } catch (NoResultException nre) {
-            LOGGER.debug("Result not existant for {}: {} = {}",
-                    entityCls.getName(), attribute.getName(), value);
-        }
-        return result;
+        return instrument(entityCls, "getUniqueByAttribute",
+                attribute.getName(), EQUAL_TO, -1,
+                () -> singleResult(query, entityCls, attribute.getName(),
+                        value));
     }
 
     /**
@@ -323,18 +1019,9 @@ public final class DatabaseSupport {
             throw new IllegalArgumentException("attributeName cannot be null");
         }
         TypedQuery<T> query = createTypedQuery(entityCls, attributeName, value);
-        T result = null;
-        try {
-            result = query.getSingleResult();
-        } catch (NonUniqueResultException nure) {
-            LOGGER.warn("Result not unique for {}: {} = {}",
-                    entityCls.getName(), attributeName, value);
-            result = query.getResultList().get(0);
-        } catch (NoResultException nre) {
-            LOGGER.debug("Result not existant for {}: {} = {}",
-                    entityCls.getName(), attributeName, value);
-        }
-        return result;
+        return instrument(entityCls, "getUniqueByAttribute", attributeName,
+                EQUAL_TO, -1,
+                () -> singleResult(query, entityCls, attributeName, value));
     }
 
     /**
@@ -358,15 +1045,17 @@ public final class DatabaseSupport {
             throw new IllegalArgumentException("attribute cannot be null");
         }
         TypedQuery<T> query = createTypedQuery(entityCls, attribute, value);
-        return query.getResultList();
+        return instrument(entityCls, "getListByAttribute",
+                attribute.getName(), EQUAL_TO, -1, query::getResultList);
     }
 
     /**
-     * Executes a query for the entities that have the specified values of the
-     * given numerical attribute.
+     * Executes a query for the entities whose value of the given attribute
+     * compares to the specified value as the comparator says. The attribute
+     * may be of any {@link Comparable} type, such as a number, date or string.
      *
      * @param <T> the type of the entity.
-     * @param <Y> the type of the numerical attribute.
+     * @param <Y> the type of the attribute.
      * @param entityCls the entity class. Cannot be <code>null</code>.
      * @param attribute the attribute. Cannot be <code>null</code>.
      * @param comparator the comparator to use. Cannot be <code>null</code>.
@@ -374,21 +1063,132 @@ public final class DatabaseSupport {
      *
      * @return the matching entities. Guaranteed not <code>null</code>.
      */
-    public <T, Y extends Number> List<T> getListByAttribute(Class<T> entityCls,
-            SingularAttribute<T, Y> attribute, SqlComparator comparator,
-            Y value) {
-        if (entityCls == null) {
-            throw new IllegalArgumentException("entityCls cannot be null");
-        }
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttribute(
+            Class<T> entityCls, SingularAttribute<T, Y> attribute,
+            SqlComparator comparator, Y value) {
         if (attribute == null) {
             throw new IllegalArgumentException("attribute cannot be null");
         }
-        if (comparator == null) {
-            throw new IllegalArgumentException("comparator cannot be null");
+        TypedQuery<T> query = createTypedQuery(entityCls,
+                (root, builder) -> root.get(attribute), comparator, value);
+        return instrument(entityCls, "getListByAttribute",
+                attribute.getName(), comparator.name(), -1,
+                query::getResultList);
+    }
+
+    /**
+     * Executes a query for the entities whose path value compares to the
+     * specified value as the comparator says. The path may traverse one or
+     * more entity relationships, and its value may be of any
+     * {@link Comparable} type.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param provider provides the path from the entity to the target
+     * attribute/column. Cannot be <code>null</code>.
+     * @param comparator the comparator to use. Cannot be <code>null</code>.
+     * @param value the value.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttribute(
+            Class<T> entityCls, QueryPathProvider<T, Y> provider,
+            SqlComparator comparator, Y value) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider cannot be null");
         }
-        TypedQuery<T> query = createTypedQuery(entityCls, attribute,
+        TypedQuery<T> query = createTypedQuery(entityCls, provider,
                 comparator, value);
-        return query.getResultList();
+        return instrument(entityCls, "getListByAttribute",
+                provider.getClass().getName(), comparator.name(), -1,
+                query::getResultList);
+    }
+
+    /**
+     * Executes a query for the entities whose value of the given attribute is
+     * between two values, inclusive.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param lower the lower bound. Cannot be <code>null</code>.
+     * @param upper the upper bound. Cannot be <code>null</code>.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttributeBetween(
+            Class<T> entityCls, SingularAttribute<T, Y> attribute, Y lower,
+            Y upper) {
+        return getListByAttributeBetween(entityCls, attribute, lower, upper,
+                true, 0, -1);
+    }
+
+    /**
+     * Executes a query for a page of the entities whose value of the given
+     * attribute is between two values, inclusive, ordered by that attribute.
+     * Paired with an index on the attribute, this is an index range scan,
+     * for example, over a time window of audit records.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param lower the lower bound. Cannot be <code>null</code>.
+     * @param upper the upper bound. Cannot be <code>null</code>.
+     * @param ascending whether to order by the attribute ascending rather
+     * than descending.
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved, or a negative number
+     * for all of them.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttributeBetween(
+            Class<T> entityCls, SingularAttribute<T, Y> attribute, Y lower,
+            Y upper, boolean ascending, int firstResult, int maxResults) {
+        if (attribute == null) {
+            throw new IllegalArgumentException("attribute cannot be null");
+        }
+        TypedQuery<T> query = createTypedQueryBetween(entityCls,
+                (root, builder) -> root.get(attribute), lower, upper,
+                ascending, firstResult, maxResults);
+        return instrument(entityCls, "getListByAttributeBetween",
+                attribute.getName(), BETWEEN, -1, query::getResultList);
+    }
+
+    /**
+     * Executes a query for a page of the entities whose path value is between
+     * two values, inclusive, ordered by that path value. The path may traverse
+     * one or more entity relationships.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param provider provides the path from the entity to the target
+     * attribute/column. Cannot be <code>null</code>.
+     * @param lower the lower bound. Cannot be <code>null</code>.
+     * @param upper the upper bound. Cannot be <code>null</code>.
+     * @param ascending whether to order by the path value ascending rather
+     * than descending.
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved, or a negative number
+     * for all of them.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T, Y extends Comparable<? super Y>> List<T> getListByAttributeBetween(
+            Class<T> entityCls, QueryPathProvider<T, Y> provider, Y lower,
+            Y upper, boolean ascending, int firstResult, int maxResults) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider cannot be null");
+        }
+        TypedQuery<T> query = createTypedQueryBetween(entityCls, provider,
+                lower, upper, ascending, firstResult, maxResults);
+        return instrument(entityCls, "getListByAttributeBetween",
+                provider.getClass().getName(), BETWEEN, -1,
+                query::getResultList);
     }
 
     /**
@@ -413,7 +1213,46 @@ public final class DatabaseSupport {
         }
         TypedQuery<T> query
                 = createTypedQueryIn(entityCls, attribute, values);
-        return query.getResultList();
+        return instrument(entityCls, "getListByAttributeIn",
+                attribute.getName(), IN, sizeOf(values), query::getResultList);
+    }
+
+    /**
+     * Executes a query for the entities that match the given criterion, which
+     * may combine conditions on any number of attributes.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param criterion the criterion. Cannot be <code>null</code>.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    public <T> List<T> getListByCriteria(Class<T> entityCls,
+            QueryCriterion<T> criterion) {
+        TypedQuery<T> query = createTypedQuery(entityCls, criterion);
+        return instrument(entityCls, "getListByCriteria",
+                criterion.toString(), null, -1, query::getResultList);
+    }
+
+    /**
+     * Executes a query for the entity that matches the given criterion. This
+     * method assumes that at most one instance of the given entity will be a
+     * match.
+     *
+     * @param <T> the type of the entity.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param criterion the criterion. Cannot be <code>null</code>. If there is
+     * more than one matching instance, only the first will be returned, and a
+     * warning will be logged.
+     *
+     * @return the matching instance, or <code>null</code> if there is none.
+     */
+    public <T> T getUniqueByCriteria(Class<T> entityCls,
+            QueryCriterion<T> criterion) {
+        TypedQuery<T> query = createTypedQuery(entityCls, criterion);
+        String shape = criterion.toString();
+        return instrument(entityCls, "getUniqueByCriteria", shape, null, -1,
+                () -> singleResult(query, entityCls, shape, "?"));
     }
 
     /**
@@ -442,7 +1281,9 @@ public final class DatabaseSupport {
         }
         TypedQuery<T> typedQuery
                 = createTypedQuery(entityCls, provider, value);
-        return typedQuery.getResultList();
+        return instrument(entityCls, "getListByAttribute",
+                provider.getClass().getName(), EQUAL_TO, -1,
+                typedQuery::getResultList);
     }
 
     /**
@@ -471,7 +1312,37 @@ public final class DatabaseSupport {
         }
         TypedQuery<T> typedQuery
                 = createTypedQueryIn(entityCls, provider, values);
-        return typedQuery.getResultList();
+        return instrument(entityCls, "getListByAttributeIn",
+                provider.getClass().getName(), IN, sizeOf(values),
+                typedQuery::getResultList);
+    }
+
+    /**
+     * Creates a typed query for entities that match a criterion, with the
+     * criterion's parameters bound.
+     *
+     * @param <T> the type of the entity class.
+     * @param entityCls the entity class. Cannot be <code>null</code>.
+     * @param criterion the criterion. Cannot be <code>null</code>.
+     * @return a typed query that contains the given criterion.
+     */
+    private <T> TypedQuery<T> createTypedQuery(Class<T> entityCls,
+            QueryCriterion<T> criterion) {
+        if (entityCls == null) {
+            throw new IllegalArgumentException("entityCls cannot be null");
+        }
+        if (criterion == null) {
+            throw new IllegalArgumentException("criterion cannot be null");
+        }
+        EntityManager entityManager = readEntityManager();
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
+        Root<T> root = criteriaQuery.from(entityCls);
+        QueryCriterion.Bindings bindings = new QueryCriterion.Bindings();
+        criteriaQuery.where(criterion.toPredicate(root, builder, bindings));
+        TypedQuery<T> query = entityManager.createQuery(criteriaQuery);
+        bindings.bind(query);
+        return query;
     }
 
     /**
@@ -490,7 +1361,7 @@ public final class DatabaseSupport {
      */
     private <T, Y> TypedQuery<T> createTypedQueryIn(Class<T> entityCls,
             QueryPathProvider<T, Y> provider, List<Y> values) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
         Root<T> root = criteriaQuery.from(entityCls);
@@ -517,7 +1388,7 @@ public final class DatabaseSupport {
      */
     private <T, Y> TypedQuery<T> createTypedQuery(Class<T> entityCls,
             QueryPathProvider<T, Y> provider, Y value) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
         Root<T> root = criteriaQuery.from(entityCls);
@@ -539,7 +1410,7 @@ public final class DatabaseSupport {
      */
     private <T, Y> TypedQuery<T> createTypedQueryIn(Class<T> entityCls,
             SingularAttribute<T, Y> attribute, List<Y> values) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
         Root<T> root = criteriaQuery.from(entityCls);
@@ -564,7 +1435,7 @@ public final class DatabaseSupport {
      */
     private <T, Y> TypedQuery<T> createTypedQuery(Class<T> entityCls,
             SingularAttribute<T, Y> attribute, Y value) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
         Root<T> root = criteriaQuery.from(entityCls);
@@ -584,7 +1455,7 @@ public final class DatabaseSupport {
      */
     private <T, Y> TypedQuery<T> createTypedQuery(Class<T> entityCls,
             String attributeName, Y value) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
         Root<T> root = criteriaQuery.from(entityCls);
@@ -594,32 +1465,37 @@ public final class DatabaseSupport {
     }
 
     /**
-     * Creates a typed query for entities with the given numerical attribute
-     * value.
+     * Creates a typed query for entities with the given path value.
      *
      * @param <T> the type of the entity to return.
-     * @param <Y> the type of the attribute.
+     * @param <Y> the type of the path value.
      * @param entityCls the entity's class.
-     * @param attribute the attribute.
+     * @param provider provides the path.
      * @param comparator the comparator.
      * @param value the value or value threshold.
      * @return a typed query with the given criteria.
      */
-    private <T, Y extends Number> TypedQuery<T> createTypedQuery(
-            Class<T> entityCls, SingularAttribute<T, Y> attribute,
+    private <T, Y extends Comparable<? super Y>> TypedQuery<T> createTypedQuery(
+            Class<T> entityCls, QueryPathProvider<T, Y> provider,
             SqlComparator comparator, Y value) {
-        EntityManager entityManager = this.entityManagerProvider.get();
+        if (entityCls == null) {
+            throw new IllegalArgumentException("entityCls cannot be null");
+        }
+        if (comparator == null) {
+            throw new IllegalArgumentException("comparator cannot be null");
+        }
+        EntityManager entityManager = readEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
         Root<T> root = criteriaQuery.from(entityCls);
-        Path<Y> path = root.get(attribute);
+        Path<Y> path = provider.getPath(root, builder);
         Predicate pred;
         switch (comparator) {
             case LESS_THAN:
-                pred = builder.lt(path, value);
+                pred = builder.lessThan(path, value);
                 break;
             case LESS_THAN_OR_EQUAL_TO:
-                pred = builder.le(path, value);
+                pred = builder.lessThanOrEqualTo(path, value);
                 break;
             case EQUAL_TO:
                 pred = builder.equal(path, value);
@@ -628,10 +1504,10 @@ public final class DatabaseSupport {
                 pred = builder.notEqual(path, value);
                 break;
             case GREATER_THAN_OR_EQUAL_TO:
-                pred = builder.ge(path, value);
+                pred = builder.greaterThanOrEqualTo(path, value);
                 break;
             case GREATER_THAN:
-                pred = builder.gt(path, value);
+                pred = builder.greaterThan(path, value);
                 break;
             default:
                 throw new AssertionError("Invalid SQLComparator: "
@@ -639,4 +1515,45 @@ public final class DatabaseSupport {
         }
         return entityManager.createQuery(criteriaQuery.where(pred));
     }
+
+    /**
+     * Creates a typed query for a page of entities with a path value between
+     * two values, ordered by that path value.
+     *
+     * @param <T> the type of the entity to return.
+     * @param <Y> the type of the path value.
+     * @param entityCls the entity's class.
+     * @param provider provides the path.
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @param ascending the order.
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved, or a negative number
+     * for all of them.
+     * @return a typed query with the given criteria.
+     */
+    private <T, Y extends Comparable<? super Y>> TypedQuery<T> createTypedQueryBetween(
+            Class<T> entityCls, QueryPathProvider<T, Y> provider, Y lower,
+            Y upper, boolean ascending, int firstResult, int maxResults) {
+        if (entityCls == null) {
+            throw new IllegalArgumentException("entityCls cannot be null");
+        }
+        if (lower == null || upper == null) {
+            throw new IllegalArgumentException(
+                    "lower and upper cannot be null");
+        }
+        EntityManager entityManager = readEntityManager();
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = builder.createQuery(entityCls);
+        Root<T> root = criteriaQuery.from(entityCls);
+        Path<Y> path = provider.getPath(root, builder);
+        criteriaQuery.where(builder.between(path, lower, upper))
+                .orderBy(ascending ? builder.asc(path) : builder.desc(path));
+        TypedQuery<T> query = entityManager.createQuery(criteriaQuery)
+                .setFirstResult(firstResult);
+        if (maxResults >= 0) {
+            query.setMaxResults(maxResults);
+        }
+        return query;
+    }
 }
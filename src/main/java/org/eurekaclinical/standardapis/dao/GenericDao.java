@@ -20,6 +20,7 @@ package org.eurekaclinical.standardapis.dao;
  * #L%
  */
 import java.util.List;
+import java.util.function.Supplier;
 
 import javax.persistence.EntityManager;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -29,6 +30,11 @@ import javax.persistence.metamodel.SingularAttribute;
 
 import javax.inject.Provider;
 import javax.persistence.NoResultException;
+import javax.persistence.TypedQuery;
+import org.eurekaclinical.standardapis.entity.VersionedEntity;
+import org.eurekaclinical.standardapis.metrics.DaoMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Generic implementation of the {@link Dao} interface. It is a wrapper around
@@ -40,6 +46,9 @@ import javax.persistence.NoResultException;
  */
 public class GenericDao<T, PK> implements Dao<T, PK> {
 
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(GenericDao.class);
+
     /**
      * The type for the entities this DAO instance handles.
      */
@@ -52,6 +61,13 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
 
     private final DatabaseSupport databaseSupport;
 
+    private final ThreadLocal<Boolean> changeEventsSuppressed
+            = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private volatile ChangeEventPublisher changeEventPublisher;
+
+    private volatile boolean unsignaledCommitLogged;
+
     /**
      * Creates a generic DAO that handles the given type of entity. The entity
      * manager provider is used to fetch entity managers to interact with the
@@ -62,9 +78,32 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
      */
     protected GenericDao(Class<T> inEntityClass,
             Provider<EntityManager> inManagerProvider) {
+        this(inEntityClass, inManagerProvider, null);
+    }
+
+    /**
+     * Creates a generic DAO that sends read-only calls to a replica database
+     * and writes to the primary. Reads go to the primary instead when the
+     * primary entity manager is in a transaction, or after a write on the
+     * same thread until {@link ReadYourWrites#clear() } is called, so that
+     * callers read their own writes despite replication lag. Entities read
+     * from the replica are not managed by the primary entity manager, so
+     * changes to them must be saved with {@link #update(java.lang.Object) }.
+     *
+     * @param inEntityClass The type of entities to handle.
+     * @param inManagerProvider Provides entity managers for the primary
+     * database on demand.
+     * @param inReplicaManagerProvider Provides entity managers for a replica
+     * on demand, or <code>null</code> to read from the primary.
+     */
+    protected GenericDao(Class<T> inEntityClass,
+            Provider<EntityManager> inManagerProvider,
+            Provider<EntityManager> inReplicaManagerProvider) {
         this.entityClass = inEntityClass;
         this.managerProvider = inManagerProvider;
-        this.databaseSupport = new DatabaseSupport(this.managerProvider);
+        this.databaseSupport = new DatabaseSupport(this.managerProvider,
+                inReplicaManagerProvider);
+        this.databaseSupport.setDaoName(getClass().getName());
     }
 
     /**
@@ -80,8 +119,14 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
     @Override
     public T create(T entity) {
         EntityManager entityManager = getEntityManager();
-        entityManager.persist(entity);
-        return entity;
+        markWritten();
+        T created = getDatabaseSupport().instrument(getEntityClass(), "create", () -> {
+            entityManager.persist(entity);
+            return entity;
+        });
+        publishChange(entityManager, ChangeEvent.Operation.CREATED,
+                created, null);
+        return created;
     }
 
     /**
@@ -96,13 +141,37 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
      */
     @Override
     public final T retrieve(PK uniqueId) {
-        return getEntityManager().find(getEntityClass(), uniqueId);
+        EntityManager entityManager = getReadEntityManager();
+        return getDatabaseSupport().instrument(getEntityClass(), "retrieve",
+                () -> entityManager.find(getEntityClass(), uniqueId));
+    }
+
+    /**
+     * Selects an entity from the primary database even if reads may go to a
+     * replica, for reads whose result is written back, so that a write is
+     * not based on stale replicated data.
+     *
+     * @param uniqueId the primary key of the entity to select.
+     *
+     * @return the entity, or <code>null</code> if none has the specified
+     * primary key.
+     */
+    protected T retrieveFromPrimary(PK uniqueId) {
+        EntityManager entityManager = getEntityManager();
+        return getDatabaseSupport().instrument(getEntityClass(), "retrieve",
+                () -> entityManager.find(getEntityClass(), uniqueId));
     }
 
     /**
      * Updates an entity in the database. It calls
      * {@link EntityManager#merge(java.lang.Object) } and throws the same
-     * exceptions.
+     * exceptions. Updates to {@link VersionedEntity versioned entities} made
+     * in a transaction are flushed immediately, so that an update based on a
+     * stale version throws {@link javax.persistence.OptimisticLockException}
+     * here rather than when the transaction commits. Outside a transaction,
+     * the merge is written at the next commit as before, and a conflict
+     * surfaces then. See {@link OptimisticUpdater} for retrying such
+     * updates.
      *
      * @param entity the updates to the entity.
      *
@@ -111,8 +180,18 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
     @Override
     public T update(T entity) {
         EntityManager entityManager = getEntityManager();
-        T result = entityManager.merge(entity);
-        return result;
+        markWritten();
+        T updated = getDatabaseSupport().instrument(getEntityClass(), "update", () -> {
+            T merged = entityManager.merge(entity);
+            if (merged instanceof VersionedEntity
+                    && entityManager.isJoinedToTransaction()) {
+                entityManager.flush();
+            }
+            return merged;
+        });
+        publishChange(entityManager, ChangeEvent.Operation.UPDATED, updated,
+                null);
+        return updated;
     }
 
     /**
@@ -127,12 +206,18 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
     @Override
     public T remove(T entity) {
         EntityManager entityManager = getEntityManager();
-        if (entityManager.contains(entity)) {
-            entityManager.remove(entity);
-        } else {
-            entityManager.remove(entityManager.merge(entity));
-        }
-        return entity;
+        markWritten();
+        Object id = idOf(entityManager, entity);
+        T removed = getDatabaseSupport().instrument(getEntityClass(), "remove", () -> {
+            if (entityManager.contains(entity)) {
+                entityManager.remove(entity);
+            } else {
+                entityManager.remove(entityManager.merge(entity));
+            }
+            return entity;
+        });
+        publishChange(entityManager, ChangeEvent.Operation.REMOVED, id, null);
+        return removed;
     }
 
     /**
@@ -144,8 +229,11 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
      */
     @Override
     public T refresh(T entity) {
-        this.getEntityManager().refresh(entity);
-        return entity;
+        EntityManager entityManager = getEntityManager();
+        return getDatabaseSupport().instrument(getEntityClass(), "refresh", () -> {
+            entityManager.refresh(entity);
+            return entity;
+        });
     }
 
     /**
@@ -168,6 +256,18 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
         return getDatabaseSupport().getAll(getEntityClass(), firstResult, maxResults);
     }
 
+    /**
+     * Gets an ordered page of this DAO's entities.
+     *
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all entities.
+     *
+     * @return a list of entities. Guaranteed not <code>null</code>.
+     */
+    public List<T> getAll(SortSpec<T> sort, Paging paging) {
+        return getDatabaseSupport().getAll(getEntityClass(), sort, paging);
+    }
+
     /**
      * Gets all of this DAO's entities ordered by the provided attribute in
      * ascending order.
@@ -177,12 +277,14 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
      * @return an ordered list of entities. Guaranteed not <code>null</code>.
      */
     protected List<T> getListAsc(SingularAttribute<T, ?> attribute) {
-        EntityManager entityManager = this.getEntityManager();
+        EntityManager entityManager = getReadEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(getEntityClass());
         Root<T> root = criteriaQuery.from(getEntityClass());
         criteriaQuery.orderBy(builder.asc(root.get(attribute)));
-        return entityManager.createQuery(criteriaQuery).getResultList();
+        TypedQuery<T> typedQuery = entityManager.createQuery(criteriaQuery);
+        return getDatabaseSupport().instrument(getEntityClass(), "getListAsc",
+                typedQuery::getResultList);
     }
     
     /**
@@ -194,15 +296,16 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
      * @return an ordered list of entities. Guaranteed not <code>null</code>.
      */
     protected List<T> getListAsc(SingularAttribute<T, ?> attribute, int firstResult, int maxResults) {
-        EntityManager entityManager = this.getEntityManager();
+        EntityManager entityManager = getReadEntityManager();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<T> criteriaQuery = builder.createQuery(getEntityClass());
         Root<T> root = criteriaQuery.from(getEntityClass());
         criteriaQuery.orderBy(builder.asc(root.get(attribute)));
-        return entityManager.createQuery(criteriaQuery)
+        TypedQuery<T> typedQuery = entityManager.createQuery(criteriaQuery)
                 .setFirstResult(firstResult)
-                .setMaxResults(maxResults)
-                .getResultList();
+                .setMaxResults(maxResults);
+        return getDatabaseSupport().instrument(getEntityClass(), "getListAsc",
+                typedQuery::getResultList);
     }
 
     /**
@@ -304,6 +407,242 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
         return getDatabaseSupport().getListByAttributeIn(getEntityClass(), provider, values);
     }
 
+    /**
+     * Gets an ordered page of the entities that have the target value of the
+     * specified attribute.
+     *
+     * @param <Y> the type of the attribute and target value.
+     * @param attribute the attribute of the entity to compare.
+     * @param value the target value of the given attribute.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y> List<T> getListByAttribute(SingularAttribute<T, Y> attribute,
+            Y value, SortSpec<T> sort, Paging paging) {
+        return getDatabaseSupport().getListByAttribute(getEntityClass(),
+                attribute, value, sort, paging);
+    }
+
+    /**
+     * Gets an ordered page of the entities whose path value is the target
+     * value.
+     *
+     * @param <Y> the type of the path value and target value.
+     * @param provider provides the path from the entity to the target
+     * attribute/column.
+     * @param value the target value.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y> List<T> getListByAttribute(QueryPathProvider<T, Y> provider,
+            Y value, SortSpec<T> sort, Paging paging) {
+        return getDatabaseSupport().getListByAttribute(getEntityClass(),
+                provider, value, sort, paging);
+    }
+
+    /**
+     * Gets an ordered page of the entities that have any of the target values
+     * of the specified attribute.
+     *
+     * @param <Y> the type of the attribute and target values.
+     * @param attribute the attribute of the entity to compare.
+     * @param values the target values of the given attribute.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y> List<T> getListByAttributeIn(
+            SingularAttribute<T, Y> attribute, List<Y> values,
+            SortSpec<T> sort, Paging paging) {
+        return getDatabaseSupport().getListByAttributeIn(getEntityClass(),
+                attribute, values, sort, paging);
+    }
+
+    /**
+     * Gets an ordered page of the entities whose path value is any of the
+     * target values.
+     *
+     * @param <Y> the type of the path value and target values.
+     * @param provider provides the path from the entity to the target
+     * attribute/column.
+     * @param values the target values.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y> List<T> getListByAttributeIn(
+            QueryPathProvider<T, Y> provider, List<Y> values,
+            SortSpec<T> sort, Paging paging) {
+        return getDatabaseSupport().getListByAttributeIn(getEntityClass(),
+                provider, values, sort, paging);
+    }
+
+    /**
+     * Gets the entities whose value of the specified attribute compares to
+     * the target value as the comparator says.
+     *
+     * @param <Y> the type of the attribute and target value.
+     * @param attribute the attribute of the entity to compare.
+     * @param comparator the comparator.
+     * @param value the target value of the given attribute.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y extends Comparable<? super Y>> List<T> getListByAttribute(
+            SingularAttribute<T, Y> attribute,
+            DatabaseSupport.SqlComparator comparator, Y value) {
+        return getDatabaseSupport().getListByAttribute(getEntityClass(),
+                attribute, comparator, value);
+    }
+
+    /**
+     * Gets the entities whose path value compares to the target value as the
+     * comparator says.
+     *
+     * @param <Y> the type of the path value and target value.
+     * @param provider provides the path from the entity to the target
+     * attribute/column.
+     * @param comparator the comparator.
+     * @param value the target value.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y extends Comparable<? super Y>> List<T> getListByAttribute(
+            QueryPathProvider<T, Y> provider,
+            DatabaseSupport.SqlComparator comparator, Y value) {
+        return getDatabaseSupport().getListByAttribute(getEntityClass(),
+                provider, comparator, value);
+    }
+
+    /**
+     * Gets a page of the entities whose value of the specified attribute is
+     * between two values, inclusive, ordered by that attribute.
+     *
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute of the entity to compare.
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @param ascending whether to order ascending rather than descending.
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved, or a negative number
+     * for all of them.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y extends Comparable<? super Y>> List<T> getListByAttributeBetween(
+            SingularAttribute<T, Y> attribute, Y lower, Y upper,
+            boolean ascending, int firstResult, int maxResults) {
+        return getDatabaseSupport().getListByAttributeBetween(getEntityClass(),
+                attribute, lower, upper, ascending, firstResult, maxResults);
+    }
+
+    /**
+     * Gets a page of the entities whose path value is between two values,
+     * inclusive, ordered by that path value.
+     *
+     * @param <Y> the type of the path value.
+     * @param provider provides the path from the entity to the target
+     * attribute/column.
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @param ascending whether to order ascending rather than descending.
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved, or a negative number
+     * for all of them.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected <Y extends Comparable<? super Y>> List<T> getListByAttributeBetween(
+            QueryPathProvider<T, Y> provider, Y lower, Y upper,
+            boolean ascending, int firstResult, int maxResults) {
+        return getDatabaseSupport().getListByAttributeBetween(getEntityClass(),
+                provider, lower, upper, ascending, firstResult, maxResults);
+    }
+
+    /**
+     * Gets the entities that match the given criterion, which may combine
+     * conditions on any number of attributes.
+     *
+     * @param criterion the criterion.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected List<T> getListByCriteria(QueryCriterion<T> criterion) {
+        return getDatabaseSupport().getListByCriteria(getEntityClass(), criterion);
+    }
+
+    /**
+     * Gets an ordered page of the entities that match the given criterion.
+     *
+     * @param criterion the criterion.
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all matches.
+     *
+     * @return the matching entities. Guaranteed not <code>null</code>.
+     */
+    protected List<T> getListByCriteria(QueryCriterion<T> criterion,
+            SortSpec<T> sort, Paging paging) {
+        return getDatabaseSupport().getListByCriteria(getEntityClass(),
+                criterion, sort, paging);
+    }
+
+    /**
+     * Gets the entity that matches the given criterion.
+     *
+     * @param criterion the criterion.
+     *
+     * @return the matching entity, or <code>null</code> if there is none.
+     */
+    protected T getUniqueByCriteria(QueryCriterion<T> criterion) {
+        return getDatabaseSupport().getUniqueByCriteria(getEntityClass(), criterion);
+    }
+
+    /**
+     * Claims up to the given number of entities that match the criterion,
+     * skipping rows that other transactions have locked, for draining a work
+     * queue from concurrent workers. See
+     * {@link DatabaseSupport#claimNext(java.lang.Class, org.eurekaclinical.standardapis.dao.QueryCriterion, org.eurekaclinical.standardapis.dao.SortSpec, int) }.
+     *
+     * @param criterion which entities are claimable.
+     * @param sort the order in which to claim entities, or <code>null</code>.
+     * @param maxResults the maximum number of entities to claim.
+     *
+     * @return the claimed entities, locked until the current transaction
+     * ends. Guaranteed not <code>null</code>.
+     */
+    protected List<T> claimNext(QueryCriterion<T> criterion, SortSpec<T> sort,
+            int maxResults) {
+        return getDatabaseSupport().claimNext(getEntityClass(), criterion,
+                sort, maxResults);
+    }
+
+    /**
+     * Claims up to the given number of entities that match the criterion,
+     * waiting up to the given time for rows that other transactions have
+     * locked. See
+     * {@link DatabaseSupport#claimNext(java.lang.Class, org.eurekaclinical.standardapis.dao.QueryCriterion, org.eurekaclinical.standardapis.dao.SortSpec, int, long) }.
+     *
+     * @param criterion which entities are claimable.
+     * @param sort the order in which to claim entities, or <code>null</code>.
+     * @param maxResults the maximum number of entities to claim.
+     * @param lockTimeoutMillis how long to wait for locks, or 0 to fail
+     * immediately.
+     *
+     * @return the claimed entities, locked until the current transaction
+     * ends. Guaranteed not <code>null</code>.
+     */
+    protected List<T> claimNext(QueryCriterion<T> criterion, SortSpec<T> sort,
+            int maxResults, long lockTimeoutMillis) {
+        return getDatabaseSupport().claimNext(getEntityClass(), criterion,
+                sort, maxResults, lockTimeoutMillis);
+    }
+
     /**
      * Returns an entity manager that can be used to interact with the data
      * source.
@@ -313,7 +652,177 @@ public class GenericDao<T, PK> implements Dao<T, PK> {
     protected EntityManager getEntityManager() {
         return this.managerProvider.get();
     }
+
+    /**
+     * Returns an entity manager for read-only queries. It is a replica's if
+     * this DAO has one and the current thread need not read from the
+     * primary, and otherwise the same as {@link #getEntityManager() }.
+     *
+     * @return the entity manager.
+     */
+    protected EntityManager getReadEntityManager() {
+        return getDatabaseSupport().readEntityManager();
+    }
+
+    /**
+     * Records a write for {@link ReadYourWrites} if reads may go to a
+     * replica. Subclasses that write without calling
+     * {@link #create(java.lang.Object) }, {@link #update(java.lang.Object) }
+     * or {@link #remove(java.lang.Object) } should call it.
+     */
+    protected void markWritten() {
+        if (getDatabaseSupport().hasReplica()) {
+            ReadYourWrites.markWritten();
+        }
+    }
     
+    /**
+     * Gets the metrics collector that records the latency and result size of
+     * this DAO's calls.
+     *
+     * @return the metrics collector. Guaranteed not <code>null</code>.
+     */
+    public DaoMetrics getMetrics() {
+        return getDatabaseSupport().getMetrics();
+    }
+
+    /**
+     * Sets the metrics collector that records the latency and result size of
+     * this DAO's calls. The default discards everything.
+     *
+     * @param metrics the metrics collector. If <code>null</code>, the default
+     * is restored.
+     */
+    public void setMetrics(DaoMetrics metrics) {
+        getDatabaseSupport().setMetrics(metrics);
+    }
+
+    /**
+     * Gets the detector that flags this DAO's queries that exceed a latency
+     * threshold.
+     *
+     * @return the slow query detector, or <code>null</code> if slow queries
+     * are not being detected.
+     */
+    public SlowQueryDetector getSlowQueryDetector() {
+        return getDatabaseSupport().getSlowQueryDetector();
+    }
+
+    /**
+     * Sets the detector that flags this DAO's queries that exceed a latency
+     * threshold. The default is <code>null</code>, which turns off slow query
+     * detection.
+     *
+     * @param slowQueryDetector the slow query detector, or <code>null</code>.
+     */
+    public void setSlowQueryDetector(SlowQueryDetector slowQueryDetector) {
+        getDatabaseSupport().setSlowQueryDetector(slowQueryDetector);
+    }
+
+    /**
+     * Gets the publisher of this DAO's change events.
+     *
+     * @return the publisher, or <code>null</code> if changes are not
+     * published.
+     */
+    public ChangeEventPublisher getChangeEventPublisher() {
+        return this.changeEventPublisher;
+    }
+
+    /**
+     * Sets a publisher of change events. Creates, updates and removals are
+     * published to it, after the transaction commits if they are made in one.
+     * See {@link ChangeEventPublisher} for how commits are signaled.
+     *
+     * @param changeEventPublisher the publisher, or <code>null</code> to stop
+     * publishing.
+     */
+    public void setChangeEventPublisher(
+            ChangeEventPublisher changeEventPublisher) {
+        this.changeEventPublisher = changeEventPublisher;
+    }
+
+    /**
+     * Publishes a change event if a publisher is set and events are not
+     * suppressed on the current thread.
+     *
+     * @param entityManager the entity manager that made the change.
+     * @param operation what happened.
+     * @param entityOrId the entity, or for removals its primary key.
+     * @param previousId the primary key of the superseded version, or
+     * <code>null</code>.
+     */
+    protected void publishChange(EntityManager entityManager,
+            ChangeEvent.Operation operation, Object entityOrId,
+            Object previousId) {
+        ChangeEventPublisher publisher = this.changeEventPublisher;
+        if (publisher == null || this.changeEventsSuppressed.get()) {
+            return;
+        }
+        Object id = operation == ChangeEvent.Operation.REMOVED
+                ? entityOrId : idOf(entityManager, entityOrId);
+        publisher.stage(new ChangeEvent(getEntityClass(), id, previousId,
+                operation, System.currentTimeMillis()),
+                entityManager.isJoinedToTransaction());
+    }
+
+    /**
+     * Runs an action after the transaction in which the current change was
+     * made commits, for work that must not be seen before the change is, or
+     * now if the change was made outside a transaction. Commits are signaled
+     * through the {@link #setChangeEventPublisher(org.eurekaclinical.standardapis.dao.ChangeEventPublisher) change event publisher}
+     * as described in {@link ChangeEventPublisher}, and the action is
+     * discarded if the transaction rolls back. Without a publisher, this DAO
+     * cannot tell when a transaction commits, so the action runs now and a
+     * warning is logged the first time.
+     *
+     * @param entityManager the entity manager that made the change.
+     * @param action the action.
+     */
+    protected void runAfterCommit(EntityManager entityManager,
+            Runnable action) {
+        boolean inTransaction = entityManager.isJoinedToTransaction();
+        ChangeEventPublisher publisher = this.changeEventPublisher;
+        if (publisher != null) {
+            publisher.runAfterCommit(action, inTransaction);
+        } else {
+            if (inTransaction && !this.unsignaledCommitLogged) {
+                this.unsignaledCommitLogged = true;
+                LOGGER.warn("{} has no change event publisher to signal commits, so work that should follow a commit runs before it",
+                        getClass().getName());
+            }
+            action.run();
+        }
+    }
+
+    /**
+     * Runs an operation without publishing the change events of the writes
+     * it makes, for operations that publish one event for several writes.
+     *
+     * @param <R> the type of the result.
+     * @param operation the operation.
+     * @return the operation's result.
+     */
+    protected <R> R withoutChangeEvents(Supplier<R> operation) {
+        if (this.changeEventsSuppressed.get()) {
+            return operation.get();
+        }
+        this.changeEventsSuppressed.set(Boolean.TRUE);
+        try {
+            return operation.get();
+        } finally {
+            this.changeEventsSuppressed.remove();
+        }
+    }
+
+    private Object idOf(EntityManager entityManager, Object entity) {
+        if (this.changeEventPublisher == null || entity == null) {
+            return null;
+        }
+        return entityManager.getEntityManagerFactory()
+                .getPersistenceUnitUtil().getIdentifier(entity);
+    }
+
     protected DatabaseSupport getDatabaseSupport() {
         return this.databaseSupport;
     }
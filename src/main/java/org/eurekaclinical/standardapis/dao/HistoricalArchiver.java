@@ -0,0 +1,77 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * Copies expired historical versions somewhere else before
+ * {@link HistoricalCompactor} deletes them. It runs in the same transaction
+ * as the delete, so a version is never deleted without being archived.
+ *
+ * @author Andrew Post
+ */
+public interface HistoricalArchiver {
+
+    /**
+     * Archives the versions with the given primary keys.
+     *
+     * @param entityManager the entity manager of the compaction transaction.
+     * @param ids the primary keys. Guaranteed not empty.
+     */
+    void archive(EntityManager entityManager, List<?> ids);
+
+    /**
+     * Creates an archiver that copies rows into an archive table with the
+     * same columns as the history table, using
+     * <code>INSERT INTO archive SELECT * FROM history WHERE id IN (...)</code>.
+     * The names are inserted into SQL as is, so they must not come from user
+     * input.
+     *
+     * @param historyTable the name of the history table.
+     * @param archiveTable the name of the archive table.
+     * @param idColumn the name of the history table's primary key column.
+     * @return the archiver.
+     */
+    static HistoricalArchiver toTable(String historyTable, String archiveTable,
+            String idColumn) {
+        if (historyTable == null || archiveTable == null || idColumn == null) {
+            throw new IllegalArgumentException(
+                    "historyTable, archiveTable and idColumn cannot be null");
+        }
+        return (entityManager, ids) -> {
+            StringBuilder sql = new StringBuilder("INSERT INTO ")
+                    .append(archiveTable).append(" SELECT * FROM ")
+                    .append(historyTable).append(" WHERE ").append(idColumn)
+                    .append(" IN (");
+            for (int i = 0, n = ids.size(); i < n; i++) {
+                sql.append(i > 0 ? ",?" : "?");
+            }
+            sql.append(')');
+            Query query = entityManager.createNativeQuery(sql.toString());
+            for (int i = 0, n = ids.size(); i < n; i++) {
+                query.setParameter(i + 1, ids.get(i));
+            }
+            query.executeUpdate();
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.List;
+import org.eurekaclinical.standardapis.entity.HistoricalEntity;
+
+/**
+ * The versions of one logical historical entity that changed within a time
+ * window, as streamed by
+ * {@link HistoricalGenericDao#streamChanges(javax.persistence.metamodel.SingularAttribute, java.util.Date, java.util.Date, int, java.util.function.Consumer) }.
+ *
+ * @author Andrew Post
+ * @param <E> the entity type.
+ * @param <K> the type of the logical key.
+ */
+public final class HistoricalChangeGroup<E extends HistoricalEntity<?>, K> {
+
+    private final K key;
+    private final List<E> versions;
+
+    HistoricalChangeGroup(K key, List<E> versions) {
+        this.key = key;
+        this.versions = Collections.unmodifiableList(versions);
+    }
+
+    /**
+     * Gets the value of the logical key that the versions share.
+     *
+     * @return the logical key.
+     */
+    public K getKey() {
+        return this.key;
+    }
+
+    /**
+     * Gets the versions that became effective or expired within the window.
+     *
+     * @return the versions, ordered by effective time. Guaranteed not empty.
+     */
+    public List<E> getVersions() {
+        return this.versions;
+    }
+}
@@ -0,0 +1,279 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.eurekaclinical.standardapis.entity.HistoricalEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes historical versions that expired before a horizon, so that history
+ * tables and their indexes stay small. Versions are processed in ascending
+ * primary key order in bounded batches, each in its own resource-local
+ * transaction: the batch's keys are selected, the rows are optionally copied
+ * by a {@link HistoricalArchiver}, and then deleted with a bulk
+ * {@link CriteriaDelete}. A pause between batches limits the load on the
+ * database, and the last key of each committed batch is saved to a
+ * {@link CompactionCheckpointStore} so that a stopped run resumes after it.
+ *
+ * Bulk deletes bypass the persistence context and cascades, so versions must
+ * not own rows in other tables that are not deleted by the database itself.
+ * Current versions are never removed.
+ *
+ * @author Andrew Post
+ * @param <E> the entity type.
+ */
+public class HistoricalCompactor<E extends HistoricalEntity<?>> {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(HistoricalCompactor.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<E> entityClass;
+    private final CompactionCheckpointStore checkpointStore;
+    private final String jobName;
+    private volatile int batchSize = 1000;
+    private volatile long pauseMillis = 100;
+    private volatile HistoricalArchiver archiver;
+    private volatile boolean stopRequested;
+
+    /**
+     * Creates a compactor.
+     *
+     * @param inEntityManagerFactory creates the entity manager for each run.
+     * It must be configured for resource-local transactions. Cannot be
+     * <code>null</code>.
+     * @param inEntityClass the historical entity class. Its primary key must
+     * be {@link Comparable}. Cannot be <code>null</code>.
+     * @param inCheckpointStore records progress. Cannot be
+     * <code>null</code>.
+     */
+    public HistoricalCompactor(EntityManagerFactory inEntityManagerFactory,
+            Class<E> inEntityClass,
+            CompactionCheckpointStore inCheckpointStore) {
+        if (inEntityManagerFactory == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerFactory cannot be null");
+        }
+        if (inEntityClass == null) {
+            throw new IllegalArgumentException("inEntityClass cannot be null");
+        }
+        if (inCheckpointStore == null) {
+            throw new IllegalArgumentException(
+                    "inCheckpointStore cannot be null");
+        }
+        this.entityManagerFactory = inEntityManagerFactory;
+        this.entityClass = inEntityClass;
+        this.checkpointStore = inCheckpointStore;
+        this.jobName = "compact:" + inEntityClass.getName();
+    }
+
+    /**
+     * Sets the number of versions removed per transaction. The default is
+     * 1000.
+     *
+     * @param batchSize the batch size. Must be positive.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets how long to pause between batches. The default is 100
+     * milliseconds.
+     *
+     * @param pause the pause. Cannot be negative.
+     * @param unit the unit of the pause. Cannot be <code>null</code>.
+     */
+    public void setPause(long pause, TimeUnit unit) {
+        if (pause < 0) {
+            throw new IllegalArgumentException("pause cannot be negative");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.pauseMillis = unit.toMillis(pause);
+    }
+
+    /**
+     * Sets an archiver that copies versions before they are deleted. The
+     * default is <code>null</code>, which deletes without archiving.
+     *
+     * @param archiver the archiver, or <code>null</code>.
+     */
+    public void setArchiver(HistoricalArchiver archiver) {
+        this.archiver = archiver;
+    }
+
+    /**
+     * Asks a running {@link #compact(java.util.Date) } to stop after its
+     * current batch. The checkpoint is kept, so the next run resumes.
+     */
+    public void stop() {
+        this.stopRequested = true;
+    }
+
+    /**
+     * Removes the versions that expired before the horizon, resuming from the
+     * checkpoint if a previous run was stopped. The checkpoint is cleared when
+     * a run completes.
+     *
+     * @param horizon versions that expired before this are removed. A
+     * horizon in the future is clamped to the current time, so versions that
+     * are scheduled to expire later are kept. Cannot be <code>null</code>.
+     * @return what the run did.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CompactionReport compact(Date horizon) {
+        if (horizon == null) {
+            throw new IllegalArgumentException("horizon cannot be null");
+        }
+        Date now = new Date();
+        if (horizon.after(now)) {
+            LOGGER.warn("Compaction horizon {} for {} is in the future, using {}",
+                    horizon, this.entityClass.getName(), now);
+            horizon = now;
+        }
+        this.stopRequested = false;
+        long start = System.nanoTime();
+        long removed = 0;
+        int batches = 0;
+        boolean complete = false;
+        Comparable lastId = (Comparable) this.checkpointStore.load(
+                this.jobName);
+        if (lastId != null) {
+            LOGGER.info("Resuming compaction of {} after id {}",
+                    this.entityClass.getName(), lastId);
+        }
+        EntityManager entityManager
+                = this.entityManagerFactory.createEntityManager();
+        try {
+            while (true) {
+                if (this.stopRequested
+                        || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                List<Comparable> ids = compactBatch(entityManager, horizon,
+                        lastId);
+                if (ids.isEmpty()) {
+                    complete = true;
+                    break;
+                }
+                removed += ids.size();
+                batches++;
+                lastId = ids.get(ids.size() - 1);
+                this.checkpointStore.save(this.jobName, lastId);
+                if (ids.size() < this.batchSize) {
+                    complete = true;
+                    break;
+                }
+                if (this.pauseMillis > 0) {
+                    try {
+                        Thread.sleep(this.pauseMillis);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+        if (complete) {
+            this.checkpointStore.save(this.jobName, null);
+        }
+        CompactionReport report = new CompactionReport(removed, batches,
+                complete, TimeUnit.NANOSECONDS.toMillis(
+                        System.nanoTime() - start));
+        LOGGER.info("Compaction of {}: {}", this.entityClass.getName(),
+                report);
+        return report;
+    }
+
+    /**
+     * Archives and deletes one batch in its own transaction.
+     *
+     * @return the primary keys of the removed versions, in ascending order.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Comparable> compactBatch(EntityManager entityManager,
+            Date horizon, Comparable lastId) {
+        EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+            CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Comparable> select
+                    = builder.createQuery(Comparable.class);
+            Root<E> root = select.from(this.entityClass);
+            Path<Comparable> id = DatabaseSupport.idPath(root);
+            select.select(id)
+                    .where(expiredBefore(builder, root, horizon, id, lastId))
+                    .orderBy(builder.asc(id));
+            List<Comparable> ids = entityManager.createQuery(select)
+                    .setMaxResults(this.batchSize)
+                    .getResultList();
+            if (!ids.isEmpty()) {
+                HistoricalArchiver a = this.archiver;
+                if (a != null) {
+                    a.archive(entityManager, ids);
+                }
+                CriteriaDelete<E> delete
+                        = builder.createCriteriaDelete(this.entityClass);
+                Root<E> deleteRoot = delete.from(this.entityClass);
+                delete.where(DatabaseSupport.idPath(deleteRoot).in(ids));
+                entityManager.createQuery(delete).executeUpdate();
+            }
+            transaction.commit();
+            return ids;
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            entityManager.clear();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate[] expiredBefore(CriteriaBuilder builder,
+            Root<?> root, Date horizon, Path<Comparable> id,
+            Comparable lastId) {
+        Predicate expired = builder.lessThan(root.<Date>get("expiredAt"),
+                horizon);
+        if (lastId == null) {
+            return new Predicate[]{expired};
+        }
+        return new Predicate[]{expired, builder.greaterThan(id, lastId)};
+    }
+}
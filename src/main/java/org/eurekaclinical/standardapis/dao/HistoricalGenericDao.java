@@ -20,13 +20,34 @@ package org.eurekaclinical.standardapis.dao;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+import org.eurekaclinical.standardapis.entity.CurrentFlagEntity;
 import org.eurekaclinical.standardapis.entity.HistoricalEntity;
 
 /**
+ * A data access object for historical entities. Besides the current
+ * versions, it can retrieve the versions in effect at any instant and stream
+ * the versions that changed within a time window, for incremental
+ * synchronization with downstream stores. Those queries filter on
+ * <code>effectiveAt</code> and <code>expiredAt</code>, which should be
+ * indexed. Entities that implement {@link CurrentFlagEntity} have their
+ * current flag maintained by {@link #create} and {@link #updateCurrent}, and
+ * current-version lookups use it instead of comparing times.
  *
  * @author Andrew Post
  * @param <E> the entity type.
@@ -38,12 +59,30 @@ public class HistoricalGenericDao<E extends HistoricalEntity<PK>, PK> extends Ge
         super(inEntityClass, inManagerProvider);
     }
 
+    /**
+     * Creates a data access object that sends read-only calls to a replica,
+     * as described in
+     * {@link GenericDao#GenericDao(java.lang.Class, javax.inject.Provider, javax.inject.Provider) }.
+     *
+     * @param inEntityClass the entity class.
+     * @param inManagerProvider provides entity managers for the primary
+     * database.
+     * @param inReplicaManagerProvider provides entity managers for a replica,
+     * or <code>null</code> to read from the primary.
+     */
+    public HistoricalGenericDao(Class<E> inEntityClass,
+            Provider<EntityManager> inManagerProvider,
+            Provider<EntityManager> inReplicaManagerProvider) {
+        super(inEntityClass, inManagerProvider, inReplicaManagerProvider);
+    }
+
     @Override
     public E create(E entity) {
         Date now = new Date();
         entity.setCreatedAt(now);
         entity.setEffectiveAt(now);
         entity.setExpiredAt(null);
+        setCurrent(entity, true);
         return super.create(entity);
     }
     
@@ -51,17 +90,211 @@ public class HistoricalGenericDao<E extends HistoricalEntity<PK>, PK> extends Ge
         return getDatabaseSupport().getCurrent(getEntityClass());
     }
 
+    /**
+     * Gets an ordered page of the current entities.
+     *
+     * @param sort the order, or <code>null</code> for no particular order.
+     * @param paging the page, or <code>null</code> for all current entities.
+     * @return the current entities. Guaranteed not <code>null</code>.
+     */
+    public List<E> getCurrent(SortSpec<E> sort, Paging paging) {
+        return getDatabaseSupport().getCurrent(getEntityClass(), sort, paging);
+    }
+
+    /**
+     * Gets the versions that were in effect at the given instant, that is,
+     * those that became effective at or before it and expired after it or
+     * have not expired.
+     *
+     * @param instant the instant. Cannot be <code>null</code>.
+     * @return the versions. Guaranteed not <code>null</code>.
+     */
+    public List<E> getAsOf(Date instant) {
+        if (instant == null) {
+            throw new IllegalArgumentException("instant cannot be null");
+        }
+        EntityManager entityManager = getReadEntityManager();
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<E> criteriaQuery = builder.createQuery(getEntityClass());
+        Root<E> root = criteriaQuery.from(getEntityClass());
+        Path<Date> expiredAt = root.get("expiredAt");
+        criteriaQuery.where(
+                builder.lessThanOrEqualTo(root.get("effectiveAt"), instant),
+                builder.or(builder.isNull(expiredAt),
+                        builder.greaterThan(expiredAt, instant)));
+        TypedQuery<E> query = entityManager.createQuery(criteriaQuery);
+        return getDatabaseSupport().instrument(getEntityClass(), "getAsOf",
+                "effectiveAt", "BETWEEN", -1, query::getResultList);
+    }
+
+    /**
+     * Streams the versions that became effective or expired within a time
+     * window, grouped by logical entity. Each group holds the versions of one
+     * value of the logical key, such as a name, ordered by effective time.
+     * Groups arrive in logical key order, not in the order in which the
+     * changes happened, so consumers that need changes in time order must
+     * sort them. Each group's versions are detached from the entity manager
+     * after the consumer returns, so memory use is bounded by the page size
+     * and the largest group.
+     *
+     * Versions are read in pages ordered by the logical key, effective time
+     * and primary key, with a keyset cursor on the same columns, so that a
+     * page costs the same however far into the window it is. This needs an
+     * index on <code>(logical key, effectiveAt, id)</code>, which the
+     * database scans from the cursor while filtering on the window. Versions
+     * outside the window that the scan passes over count toward the cost, so
+     * this suits windows that cover a large share of the table's versions. For
+     * narrow windows over long histories, indexes on <code>effectiveAt</code>
+     * and <code>expiredAt</code> and a query that is not ordered by logical
+     * key are cheaper.
+     *
+     * @param <K> the type of the logical key.
+     * @param logicalKey the attribute that identifies a logical entity across
+     * its versions. Its values cannot be <code>null</code>. Cannot be
+     * <code>null</code>.
+     * @param from the start of the window, inclusive. Cannot be
+     * <code>null</code>.
+     * @param to the end of the window, exclusive. Cannot be
+     * <code>null</code>.
+     * @param pageSize the number of versions per page. Must be positive.
+     * @param consumer receives each group. Cannot be <code>null</code>.
+     * @return the number of groups streamed.
+     */
+    public <K> long streamChanges(SingularAttribute<E, K> logicalKey,
+            Date from, Date to, int pageSize,
+            Consumer<? super HistoricalChangeGroup<E, K>> consumer) {
+        if (logicalKey == null) {
+            throw new IllegalArgumentException("logicalKey cannot be null");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from and to cannot be null");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer cannot be null");
+        }
+        SortSpec<E> sort = SortSpec.<E>by(logicalKey, SortSpec.Direction.ASC,
+                SortSpec.Nulls.DEFAULT)
+                .then((root, builder) -> root.get("effectiveAt"),
+                        SortSpec.Direction.ASC, SortSpec.Nulls.DEFAULT)
+                .then((root, builder) -> DatabaseSupport.idPath(root),
+                        SortSpec.Direction.ASC, SortSpec.Nulls.DEFAULT);
+        EntityManager entityManager = getReadEntityManager();
+        long groups = 0;
+        K groupKey = null;
+        List<E> group = new ArrayList<>();
+        Object[] keyset = null;
+        List<Tuple> page;
+        do {
+            page = changesPage(entityManager, logicalKey, from, to, sort,
+                    keyset, pageSize);
+            for (Tuple tuple : page) {
+                E version = tuple.get(0, getEntityClass());
+                @SuppressWarnings("unchecked")
+                K key = (K) tuple.get(1);
+                if (!group.isEmpty() && !Objects.equals(groupKey, key)) {
+                    emit(entityManager, groupKey, group, consumer);
+                    groups++;
+                    group = new ArrayList<>();
+                }
+                groupKey = key;
+                group.add(version);
+                keyset = new Object[]{key, tuple.get(2), tuple.get(3)};
+            }
+        } while (page.size() == pageSize);
+        if (!group.isEmpty()) {
+            emit(entityManager, groupKey, group, consumer);
+            groups++;
+        }
+        return groups;
+    }
+
+    private <K> List<Tuple> changesPage(EntityManager entityManager,
+            SingularAttribute<E, K> logicalKey, Date from, Date to,
+            SortSpec<E> sort, Object[] keyset, int pageSize) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = builder.createTupleQuery();
+        Root<E> root = criteriaQuery.from(getEntityClass());
+        Path<Date> effectiveAt = root.get("effectiveAt");
+        Path<Date> expiredAt = root.get("expiredAt");
+        QueryCriterion.Bindings bindings = new QueryCriterion.Bindings();
+        ParameterExpression<Date> fromParam
+                = bindings.add(builder, Date.class, from);
+        ParameterExpression<Date> toParam
+                = bindings.add(builder, Date.class, to);
+        List<Predicate> predicates = new ArrayList<>(2);
+        predicates.add(builder.or(
+                builder.and(
+                        builder.greaterThanOrEqualTo(effectiveAt, fromParam),
+                        builder.lessThan(effectiveAt, toParam)),
+                builder.and(
+                        builder.greaterThanOrEqualTo(expiredAt, fromParam),
+                        builder.lessThan(expiredAt, toParam))));
+        if (keyset != null) {
+            predicates.add(sort.after(root, builder, keyset, bindings));
+        }
+        criteriaQuery.multiselect(root, root.get(logicalKey), effectiveAt,
+                DatabaseSupport.idPath(root))
+                .where(predicates.toArray(new Predicate[predicates.size()]))
+                .orderBy(sort.toOrders(root, builder));
+        TypedQuery<Tuple> query = entityManager.createQuery(criteriaQuery)
+                .setMaxResults(pageSize);
+        bindings.bind(query);
+        return getDatabaseSupport().instrument(getEntityClass(),
+                "streamChanges", "effectiveAt, expiredAt", "BETWEEN", -1,
+                query::getResultList);
+    }
+
+    private <K> void emit(EntityManager entityManager, K key, List<E> versions,
+            Consumer<? super HistoricalChangeGroup<E, K>> consumer) {
+        try {
+            consumer.accept(new HistoricalChangeGroup<>(key, versions));
+        } finally {
+            for (E version : versions) {
+                entityManager.detach(version);
+            }
+        }
+    }
+
+    /**
+     * Expires the current version of an entity and creates a new version
+     * from the given entity, as described in
+     * {@link HistoricalDao#updateCurrent(org.eurekaclinical.standardapis.entity.HistoricalEntity) }.
+     * If a change event publisher is set, one
+     * {@link ChangeEvent.Operation#SUPERSEDED} event is published with the
+     * new and expired versions' primary keys.
+     *
+     * @param entity the new state of the entity.
+     * @return the new version.
+     */
     public E updateCurrent(E entity) {
         Date now = new Date();
-        E oldEntity = retrieve(entity.getId());
-        oldEntity.setExpiredAt(now);
-        update(oldEntity);
+        E oldEntity = retrieveFromPrimary(entity.getId());
+        PK oldId = oldEntity.getId();
+        E created = withoutChangeEvents(() -> {
+            oldEntity.setExpiredAt(now);
+            setCurrent(oldEntity, false);
+            update(oldEntity);
 
-        entity.setId(null);
-        entity.setCreatedAt(oldEntity.getCreatedAt());
-        entity.setEffectiveAt(now);
-        entity.setExpiredAt(null);
-        return super.create(entity);
+            entity.setId(null);
+            entity.setCreatedAt(oldEntity.getCreatedAt());
+            entity.setEffectiveAt(now);
+            entity.setExpiredAt(null);
+            setCurrent(entity, true);
+            return super.create(entity);
+        });
+        publishChange(getEntityManager(), ChangeEvent.Operation.SUPERSEDED,
+                created, oldId);
+        return created;
+    }
+
+    private static void setCurrent(HistoricalEntity<?> entity,
+            boolean current) {
+        if (entity instanceof CurrentFlagEntity) {
+            ((CurrentFlagEntity<?>) entity).setCurrent(current);
+        }
     }
 
 }
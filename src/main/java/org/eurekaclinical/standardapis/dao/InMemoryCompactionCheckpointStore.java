@@ -0,0 +1,51 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link CompactionCheckpointStore} that keeps checkpoints in memory, so
+ * that a compaction that is stopped and restarted within the same process
+ * resumes where it left off.
+ *
+ * @author Andrew Post
+ */
+public class InMemoryCompactionCheckpointStore
+        implements CompactionCheckpointStore {
+
+    private final ConcurrentMap<String, Object> checkpoints
+            = new ConcurrentHashMap<>();
+
+    @Override
+    public Object load(String jobName) {
+        return this.checkpoints.get(jobName);
+    }
+
+    @Override
+    public void save(String jobName, Object lastId) {
+        if (lastId == null) {
+            this.checkpoints.remove(jobName);
+        } else {
+            this.checkpoints.put(jobName, lastId);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.metamodel.SingularAttribute;
+import org.eurekaclinical.standardapis.entity.Entity;
+
+/**
+ * A data access object that keeps its entities in concurrent maps instead of
+ * a database, for unit tests and for measuring code above the data access
+ * layer without persistence provider overhead. Entities are stored by
+ * reference and returned in primary key order, which makes paging
+ * deterministic. Lookups by attribute value use secondary indexes that must
+ * be declared with {@link #addIndex(java.lang.String, java.util.function.Function) }
+ * or {@link #addIndex(javax.persistence.metamodel.SingularAttribute) }.
+ *
+ * Like a persistence context, {@link #create(java.lang.Object) } assigns a
+ * primary key if there is none and throws {@link EntityExistsException} if
+ * the key is taken, and {@link #update(java.lang.Object) } inserts the entity
+ * if it is not present. Changes to a stored entity are visible immediately,
+ * but indexes are only updated by {@link #create(java.lang.Object) } and
+ * {@link #update(java.lang.Object) }. Writes are serialized, and reads see
+ * each write either entirely or not at all per entity. There are no
+ * transactions.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the entity.
+ * @param <PK> the type of the primary key of the entity.
+ */
+public class InMemoryDao<T extends Entity<PK>, PK extends Comparable<? super PK>>
+        implements Dao<T, PK> {
+
+    private final Supplier<? extends PK> idGenerator;
+    private final NavigableMap<PK, T> entities;
+    private final Map<String, Index<T, PK>> indexes;
+
+    /**
+     * Creates an empty data access object.
+     *
+     * @param inIdGenerator generates primary keys for entities that are
+     * created without one, for example, an incrementing
+     * {@link java.util.concurrent.atomic.AtomicLong}. Cannot be
+     * <code>null</code>.
+     */
+    public InMemoryDao(Supplier<? extends PK> inIdGenerator) {
+        if (inIdGenerator == null) {
+            throw new IllegalArgumentException("inIdGenerator cannot be null");
+        }
+        this.idGenerator = inIdGenerator;
+        this.entities = new ConcurrentSkipListMap<>();
+        this.indexes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a secondary index on the values that a getter returns. Entities
+     * that already are stored are indexed immediately.
+     *
+     * @param name the name of the index, usually the name of the attribute.
+     * Cannot be <code>null</code>.
+     * @param getter gets the indexed value from an entity. Cannot be
+     * <code>null</code>.
+     */
+    public synchronized void addIndex(String name,
+            Function<? super T, ?> getter) {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (getter == null) {
+            throw new IllegalArgumentException("getter cannot be null");
+        }
+        Index<T, PK> index = new Index<>(getter);
+        for (T entity : this.entities.values()) {
+            index.put(entity);
+        }
+        this.indexes.put(name, index);
+    }
+
+    /**
+     * Adds a secondary index on an attribute. The attribute's value is read
+     * from the field or getter method that the metamodel reports, so the
+     * metamodel must have been populated by a persistence provider. Use
+     * {@link #addIndex(java.lang.String, java.util.function.Function) }
+     * otherwise.
+     *
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     */
+    public void addIndex(SingularAttribute<? super T, ?> attribute) {
+        if (attribute == null) {
+            throw new IllegalArgumentException("attribute cannot be null");
+        }
+        addIndex(attribute.getName(), getterOf(attribute.getJavaMember()));
+    }
+
+    @Override
+    public synchronized T create(T entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        PK id = entity.getId();
+        if (id == null) {
+            id = this.idGenerator.get();
+            entity.setId(id);
+        } else if (this.entities.containsKey(id)) {
+            throw new EntityExistsException("An entity with id " + id
+                    + " already exists");
+        }
+        store(id, entity);
+        return entity;
+    }
+
+    @Override
+    public T retrieve(PK uniqueId) {
+        return uniqueId != null ? this.entities.get(uniqueId) : null;
+    }
+
+    @Override
+    public synchronized T update(T entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        PK id = entity.getId();
+        if (id == null) {
+            return create(entity);
+        }
+        store(id, entity);
+        return entity;
+    }
+
+    @Override
+    public synchronized T remove(T entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        PK id = entity.getId();
+        if (id != null && this.entities.remove(id) != null) {
+            for (Index<T, PK> index : this.indexes.values()) {
+                index.remove(id);
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public T refresh(T entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        T stored = retrieve(entity.getId());
+        if (stored == null) {
+            throw new EntityNotFoundException("No entity with id "
+                    + entity.getId());
+        }
+        return stored;
+    }
+
+    @Override
+    public List<T> getAll() {
+        return new ArrayList<>(this.entities.values());
+    }
+
+    @Override
+    public List<T> getAll(int firstResult, int maxResults) {
+        return page(this.entities.values(), firstResult, maxResults);
+    }
+
+    /**
+     * Gets the entities with the given value of an indexed attribute, in
+     * primary key order.
+     *
+     * @param indexName the name of the index. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the entities. Guaranteed not <code>null</code>.
+     */
+    public List<T> getListByAttribute(String indexName, Object value) {
+        List<T> result = new ArrayList<>();
+        for (PK id : index(indexName).get(value)) {
+            T entity = this.entities.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the entities with the given value of an indexed attribute, in
+     * primary key order.
+     *
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the entities. Guaranteed not <code>null</code>.
+     */
+    public <Y> List<T> getListByAttribute(
+            SingularAttribute<? super T, Y> attribute, Y value) {
+        if (attribute == null) {
+            throw new IllegalArgumentException("attribute cannot be null");
+        }
+        return getListByAttribute(attribute.getName(), value);
+    }
+
+    /**
+     * Gets the entity with the given value of an indexed attribute. If more
+     * than one has it, the one with the lowest primary key is returned.
+     *
+     * @param indexName the name of the index. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the entity, or <code>null</code> if there is none.
+     */
+    public T getUniqueByAttribute(String indexName, Object value) {
+        for (PK id : index(indexName).get(value)) {
+            T entity = this.entities.get(id);
+            if (entity != null) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the entity with the given value of an indexed attribute. If more
+     * than one has it, the one with the lowest primary key is returned.
+     *
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the entity, or <code>null</code> if there is none.
+     */
+    public <Y> T getUniqueByAttribute(
+            SingularAttribute<? super T, Y> attribute, Y value) {
+        if (attribute == null) {
+            throw new IllegalArgumentException("attribute cannot be null");
+        }
+        return getUniqueByAttribute(attribute.getName(), value);
+    }
+
+    /**
+     * Gets the entities that match a predicate, in primary key order. This
+     * scans all of the entities.
+     *
+     * @param predicate the predicate. Cannot be <code>null</code>.
+     * @return the entities. Guaranteed not <code>null</code>.
+     */
+    public List<T> getListMatching(Predicate<? super T> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("predicate cannot be null");
+        }
+        List<T> result = new ArrayList<>();
+        for (T entity : this.entities.values()) {
+            if (predicate.test(entity)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all of the entities. Indexes are kept.
+     */
+    public synchronized void clear() {
+        this.entities.clear();
+        for (Index<T, PK> index : this.indexes.values()) {
+            index.clear();
+        }
+    }
+
+    /**
+     * Gets the number of stored entities.
+     *
+     * @return the number of entities.
+     */
+    public int size() {
+        return this.entities.size();
+    }
+
+    /**
+     * Applies JPA's first result and maximum results semantics to a
+     * collection.
+     */
+    static <T> List<T> page(Iterable<T> values, int firstResult,
+            int maxResults) {
+        if (firstResult < 0) {
+            throw new IllegalArgumentException(
+                    "firstResult cannot be negative");
+        }
+        if (maxResults < 0) {
+            throw new IllegalArgumentException(
+                    "maxResults cannot be negative");
+        }
+        List<T> result = new ArrayList<>();
+        int i = 0;
+        for (T value : values) {
+            if (result.size() == maxResults) {
+                break;
+            }
+            if (i++ >= firstResult) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private void store(PK id, T entity) {
+        this.entities.put(id, entity);
+        for (Index<T, PK> index : this.indexes.values()) {
+            index.put(entity);
+        }
+    }
+
+    private Index<T, PK> index(String indexName) {
+        if (indexName == null) {
+            throw new IllegalArgumentException("indexName cannot be null");
+        }
+        Index<T, PK> index = this.indexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("No index named " + indexName);
+        }
+        return index;
+    }
+
+    private static <T> Function<T, Object> getterOf(Member member) {
+        if (member instanceof Field) {
+            Field field = (Field) member;
+            field.setAccessible(true);
+            return entity -> {
+                try {
+                    return field.get(entity);
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            };
+        } else if (member instanceof Method) {
+            Method method = (Method) member;
+            method.setAccessible(true);
+            return entity -> {
+                try {
+                    return method.invoke(entity);
+                } catch (IllegalAccessException
+                        | InvocationTargetException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            };
+        } else {
+            throw new IllegalArgumentException(
+                    "Cannot read attribute values from " + member);
+        }
+    }
+
+    /**
+     * Maps the values of an attribute to the primary keys of the entities
+     * that have them. The value of each entity when it was indexed is kept
+     * so that it can be unindexed after the entity changes.
+     */
+    private static final class Index<T extends Entity<PK>, PK extends Comparable<? super PK>> {
+
+        private static final Object NULL = new Object();
+
+        private final Function<? super T, ?> getter;
+        private final Map<Object, Set<PK>> idsByValue;
+        private final Map<PK, Object> valuesById;
+
+        Index(Function<? super T, ?> getter) {
+            this.getter = getter;
+            this.idsByValue = new ConcurrentHashMap<>();
+            this.valuesById = new ConcurrentHashMap<>();
+        }
+
+        void put(T entity) {
+            PK id = entity.getId();
+            Object value = key(this.getter.apply(entity));
+            Object oldValue = this.valuesById.put(id, value);
+            if (value.equals(oldValue)) {
+                return;
+            }
+            if (oldValue != null) {
+                unindex(oldValue, id);
+            }
+            this.idsByValue.computeIfAbsent(value,
+                    v -> new ConcurrentSkipListSet<>()).add(id);
+        }
+
+        void remove(PK id) {
+            Object oldValue = this.valuesById.remove(id);
+            if (oldValue != null) {
+                unindex(oldValue, id);
+            }
+        }
+
+        Set<PK> get(Object value) {
+            Set<PK> ids = this.idsByValue.get(key(value));
+            return ids != null ? ids : Collections.<PK>emptySet();
+        }
+
+        void clear() {
+            this.idsByValue.clear();
+            this.valuesById.clear();
+        }
+
+        private void unindex(Object value, PK id) {
+            this.idsByValue.computeIfPresent(value, (v, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        private static Object key(Object value) {
+            return value != null ? value : NULL;
+        }
+    }
+}
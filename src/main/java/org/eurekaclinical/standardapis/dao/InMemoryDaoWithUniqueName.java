@@ -0,0 +1,60 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.eurekaclinical.standardapis.entity.Entity;
+
+/**
+ * An {@link InMemoryDao} for entities with a unique name. The name is
+ * indexed as <code>name</code>.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the entity.
+ * @param <PK> the type of the primary key of the entity.
+ */
+public class InMemoryDaoWithUniqueName<T extends Entity<PK>, PK extends Comparable<? super PK>>
+        extends InMemoryDao<T, PK> implements DaoWithUniqueName<T, PK> {
+
+    /**
+     * The name of the index of the entities' names.
+     */
+    public static final String NAME_INDEX = "name";
+
+    /**
+     * Creates an empty data access object.
+     *
+     * @param inIdGenerator generates primary keys for entities that are
+     * created without one. Cannot be <code>null</code>.
+     * @param inNameGetter gets an entity's name. Cannot be
+     * <code>null</code>.
+     */
+    public InMemoryDaoWithUniqueName(Supplier<? extends PK> inIdGenerator,
+            Function<? super T, String> inNameGetter) {
+        super(inIdGenerator);
+        addIndex(NAME_INDEX, inNameGetter);
+    }
+
+    @Override
+    public T getByName(String name) {
+        return getUniqueByAttribute(NAME_INDEX, name);
+    }
+}
@@ -0,0 +1,174 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+import org.eurekaclinical.standardapis.entity.CurrentFlagEntity;
+import org.eurekaclinical.standardapis.entity.HistoricalEntity;
+
+/**
+ * An {@link InMemoryDao} for historical entities, with the same semantics as
+ * {@link HistoricalGenericDao}: creating an entity makes it current, and
+ * {@link #updateCurrent(org.eurekaclinical.standardapis.entity.HistoricalEntity) }
+ * expires the stored version and creates a new one. Current versions are
+ * those that implement {@link CurrentFlagEntity} and are flagged current, or
+ * otherwise that have not expired.
+ *
+ * @author Andrew Post
+ * @param <E> the type of the entity.
+ * @param <PK> the type of the primary key of the entity.
+ */
+public class InMemoryHistoricalDao<E extends HistoricalEntity<PK>, PK extends Comparable<? super PK>>
+        extends InMemoryDao<E, PK> implements HistoricalDao<PK, E> {
+
+    /**
+     * Creates an empty data access object.
+     *
+     * @param inIdGenerator generates primary keys for new versions. Cannot be
+     * <code>null</code>.
+     */
+    public InMemoryHistoricalDao(Supplier<? extends PK> inIdGenerator) {
+        super(inIdGenerator);
+    }
+
+    @Override
+    public E create(E entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        Date now = new Date();
+        entity.setCreatedAt(now);
+        entity.setEffectiveAt(now);
+        entity.setExpiredAt(null);
+        setCurrent(entity, true);
+        return super.create(entity);
+    }
+
+    /**
+     * Expires the stored version of an entity and stores the given entity as
+     * its new version. Since versions are stored by reference, the given
+     * entity must be a new instance, such as a copy of the stored version
+     * with the changes applied. Changing the stored version itself would
+     * overwrite the history that this method is meant to keep, so it is
+     * rejected.
+     *
+     * @param entity the new state of the entity, with the primary key of the
+     * current version. Cannot be <code>null</code>, and cannot be the stored
+     * version.
+     * @return the new version.
+     */
+    @Override
+    public synchronized E updateCurrent(E entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity cannot be null");
+        }
+        Date now = new Date();
+        E oldEntity = retrieve(entity.getId());
+        if (oldEntity == null) {
+            throw new IllegalArgumentException("No stored version with id "
+                    + entity.getId());
+        }
+        if (oldEntity == entity) {
+            throw new IllegalArgumentException(
+                    "entity cannot be the stored version; pass a copy with the changes applied");
+        }
+        oldEntity.setExpiredAt(now);
+        setCurrent(oldEntity, false);
+        update(oldEntity);
+
+        entity.setId(null);
+        entity.setCreatedAt(oldEntity.getCreatedAt());
+        entity.setEffectiveAt(now);
+        entity.setExpiredAt(null);
+        setCurrent(entity, true);
+        return super.create(entity);
+    }
+
+    @Override
+    public List<E> getCurrent() {
+        Date now = new Date();
+        return getListMatching(e -> isCurrent(e, now));
+    }
+
+    /**
+     * Gets the current versions with the given value of an indexed
+     * attribute, in primary key order.
+     *
+     * @param indexName the name of the index. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the versions. Guaranteed not <code>null</code>.
+     */
+    public List<E> getCurrentListByAttribute(String indexName, Object value) {
+        Date now = new Date();
+        List<E> result = new ArrayList<>();
+        for (E entity : getListByAttribute(indexName, value)) {
+            if (isCurrent(entity, now)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the current version with the given value of an indexed attribute.
+     *
+     * @param indexName the name of the index. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the version, or <code>null</code> if there is none.
+     */
+    public E getCurrentUniqueByAttribute(String indexName, Object value) {
+        List<E> result = getCurrentListByAttribute(indexName, value);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Gets the versions that were in effect at the given instant, as in
+     * {@link HistoricalGenericDao#getAsOf(java.util.Date) }.
+     *
+     * @param instant the instant. Cannot be <code>null</code>.
+     * @return the versions. Guaranteed not <code>null</code>.
+     */
+    public List<E> getAsOf(Date instant) {
+        if (instant == null) {
+            throw new IllegalArgumentException("instant cannot be null");
+        }
+        return getListMatching(e -> !e.getEffectiveAt().after(instant)
+                && (e.getExpiredAt() == null
+                || e.getExpiredAt().after(instant)));
+    }
+
+    private static boolean isCurrent(HistoricalEntity<?> entity, Date now) {
+        if (entity instanceof CurrentFlagEntity) {
+            return ((CurrentFlagEntity<?>) entity).isCurrent();
+        }
+        Date expiredAt = entity.getExpiredAt();
+        return expiredAt == null || !expiredAt.before(now);
+    }
+
+    private static void setCurrent(HistoricalEntity<?> entity,
+            boolean current) {
+        if (entity instanceof CurrentFlagEntity) {
+            ((CurrentFlagEntity<?>) entity).setCurrent(current);
+        }
+    }
+}
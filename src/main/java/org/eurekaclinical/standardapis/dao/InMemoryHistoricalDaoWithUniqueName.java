@@ -0,0 +1,58 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.eurekaclinical.standardapis.entity.HistoricalEntity;
+
+/**
+ * An {@link InMemoryHistoricalDao} for entities with a name that is unique
+ * among current versions. The name is indexed as <code>name</code>.
+ *
+ * @author Andrew Post
+ * @param <E> the type of the entity.
+ * @param <PK> the type of the primary key of the entity.
+ */
+public class InMemoryHistoricalDaoWithUniqueName<E extends HistoricalEntity<PK>, PK extends Comparable<? super PK>>
+        extends InMemoryHistoricalDao<E, PK>
+        implements HistoricalDaoWithUniqueName<PK, E> {
+
+    /**
+     * Creates an empty data access object.
+     *
+     * @param inIdGenerator generates primary keys for new versions. Cannot be
+     * <code>null</code>.
+     * @param inNameGetter gets a version's name. Cannot be
+     * <code>null</code>.
+     */
+    public InMemoryHistoricalDaoWithUniqueName(
+            Supplier<? extends PK> inIdGenerator,
+            Function<? super E, String> inNameGetter) {
+        super(inIdGenerator);
+        addIndex(InMemoryDaoWithUniqueName.NAME_INDEX, inNameGetter);
+    }
+
+    @Override
+    public E getCurrentByName(String name) {
+        return getCurrentUniqueByAttribute(
+                InMemoryDaoWithUniqueName.NAME_INDEX, name);
+    }
+}
@@ -0,0 +1,145 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * A {@link RoleInvalidationStore} backed by a database table, accessed with
+ * native SQL so that no entity class is needed. The table must have a
+ * <code>id</code> column that the database assigns in increasing order, such
+ * as an identity column, and a nullable <code>username</code> column, for
+ * example:
+ *
+ * <pre>
+ * CREATE TABLE role_invalidations (
+ *     id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+ *     username VARCHAR(255)
+ * )
+ * </pre>
+ *
+ * Appends use the caller's entity manager, so an invalidation commits or
+ * rolls back with the role change that caused it, and other nodes do not see
+ * it before the change is visible. Since ids are assigned on insert but rows
+ * become visible on commit, a row may appear after rows with higher ids;
+ * {@link PollingRoleInvalidationBus} re-reads skipped ids for that reason. Polling creates a short-lived entity
+ * manager from the given factory, since it runs outside of any request.
+ * Old rows may be deleted periodically, for example, those older than the
+ * longest session timeout.
+ *
+ * @author Andrew Post
+ */
+public class JpaRoleInvalidationStore implements RoleInvalidationStore {
+
+    private final Provider<EntityManager> entityManagerProvider;
+    private final EntityManagerFactory entityManagerFactory;
+    private final String tableName;
+
+    /**
+     * Creates a store.
+     *
+     * @param inEntityManagerProvider provides the entity manager for appends.
+     * Cannot be <code>null</code>.
+     * @param inEntityManagerFactory creates entity managers for reads. Cannot
+     * be <code>null</code>.
+     * @param inTableName the name of the table. Cannot be <code>null</code>.
+     * It is inserted into SQL as is, so it must not come from user input.
+     */
+    public JpaRoleInvalidationStore(
+            Provider<EntityManager> inEntityManagerProvider,
+            EntityManagerFactory inEntityManagerFactory, String inTableName) {
+        if (inEntityManagerProvider == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerProvider cannot be null");
+        }
+        if (inEntityManagerFactory == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerFactory cannot be null");
+        }
+        if (inTableName == null) {
+            throw new IllegalArgumentException("inTableName cannot be null");
+        }
+        this.entityManagerProvider = inEntityManagerProvider;
+        this.entityManagerFactory = inEntityManagerFactory;
+        this.tableName = inTableName;
+    }
+
+    @Override
+    public void append(String username) {
+        this.entityManagerProvider.get()
+                .createNativeQuery("INSERT INTO " + this.tableName
+                        + " (username) VALUES (?)")
+                .setParameter(1, username)
+                .executeUpdate();
+    }
+
+    /**
+     * Returns <code>true</code>, since appends use the caller's entity
+     * manager.
+     *
+     * @return <code>true</code>.
+     */
+    @Override
+    public boolean isTransactional() {
+        return true;
+    }
+
+    @Override
+    public List<RoleInvalidation> readAfter(long sequence, int maxResults) {
+        EntityManager entityManager
+                = this.entityManagerFactory.createEntityManager();
+        try {
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = entityManager.createNativeQuery(
+                    "SELECT id, username FROM " + this.tableName
+                    + " WHERE id > ? ORDER BY id")
+                    .setParameter(1, sequence)
+                    .setMaxResults(maxResults)
+                    .getResultList();
+            List<RoleInvalidation> result = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                result.add(new RoleInvalidation(((Number) row[0]).longValue(),
+                        (String) row[1]));
+            }
+            return result;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Override
+    public long getLastSequence() {
+        EntityManager entityManager
+                = this.entityManagerFactory.createEntityManager();
+        try {
+            Object max = entityManager.createNativeQuery(
+                    "SELECT MAX(id) FROM " + this.tableName)
+                    .getSingleResult();
+            return max != null ? ((Number) max).longValue() : -1;
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link RoleInvalidationBus} that notifies the subscribers in this JVM
+ * synchronously, on the publishing thread. An exception thrown by one
+ * subscriber is logged and does not prevent the others from being notified.
+ * Since subscribers are notified right away, it must be called only after
+ * the role change is committed; the data access objects do so when a
+ * {@link ChangeEventPublisher} signals commits.
+ *
+ * Invalidations are versioned when the bus is called, from a clock that
+ * starts at the current time in microseconds, so versions keep increasing
+ * across restarts as long as fewer than a million invalidations are
+ * published per second. Because the bus is called after the commit, a
+ * version is delivered only once the change it covers is visible, and roles
+ * loaded before then carry an older version and are reloaded. A new
+ * subscriber is {@link RoleInvalidationListener#versionsReset(long) reset}
+ * to the current version.
+ *
+ * @author Andrew Post
+ */
+public class LocalRoleInvalidationBus implements RoleInvalidationBus {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(LocalRoleInvalidationBus.class);
+
+    private final List<RoleInvalidationListener> listeners
+            = new CopyOnWriteArrayList<>();
+
+    private long clock = System.currentTimeMillis() * 1000;
+
+    @Override
+    public void invalidateUser(String username) {
+        if (username == null) {
+            throw new IllegalArgumentException("username cannot be null");
+        }
+        synchronized (this) {
+            long version = ++this.clock;
+            notifyListeners(l -> l.userInvalidated(username, version));
+            notifyListeners(l -> l.versionsDelivered(version));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        synchronized (this) {
+            long version = ++this.clock;
+            notifyListeners(l -> l.allInvalidated(version));
+            notifyListeners(l -> l.versionsDelivered(version));
+        }
+    }
+
+    @Override
+    public void subscribe(RoleInvalidationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+        synchronized (this) {
+            this.listeners.add(listener);
+            subscribed(listener);
+        }
+    }
+
+    @Override
+    public void unsubscribe(RoleInvalidationListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Tells a new subscriber the version as of which it receives
+     * invalidations. It is called by {@link #subscribe(org.eurekaclinical.standardapis.dao.RoleInvalidationListener) }
+     * while holding this bus' lock.
+     *
+     * @param listener the new subscriber.
+     */
+    protected void subscribed(RoleInvalidationListener listener) {
+        notifyListener(listener, l -> l.versionsReset(this.clock));
+    }
+
+    /**
+     * Passes a notification to every subscriber, logging exceptions. Callers
+     * should hold this bus' lock so that subscribers see notifications in
+     * version order.
+     *
+     * @param notification the notification.
+     */
+    protected void notifyListeners(
+            Consumer<RoleInvalidationListener> notification) {
+        for (RoleInvalidationListener listener : this.listeners) {
+            notifyListener(listener, notification);
+        }
+    }
+
+    /**
+     * Passes a notification to one subscriber, logging exceptions.
+     *
+     * @param listener the subscriber.
+     * @param notification the notification.
+     */
+    protected static void notifyListener(RoleInvalidationListener listener,
+            Consumer<RoleInvalidationListener> notification) {
+        try {
+            notification.accept(listener);
+        } catch (RuntimeException ex) {
+            LOGGER.error("Role invalidation listener {} failed",
+                    listener, ex);
+        }
+    }
+}
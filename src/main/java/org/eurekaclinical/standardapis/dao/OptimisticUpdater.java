@@ -0,0 +1,173 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
+import org.eurekaclinical.standardapis.entity.VersionedEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies changes to {@link VersionedEntity versioned entities} without
+ * holding row locks, retrying when a concurrent writer got there first. Each
+ * attempt runs in its own resource-local transaction: it reads the current
+ * state of the entity, applies the changes to it, and commits. If the commit
+ * fails with an {@link OptimisticLockException}, the transaction is rolled
+ * back, and after the retry policy's delay the changes are applied again to
+ * a fresh read. The changes therefore must be safe to apply more than once
+ * and should be computed from the entity they are given, not from a copy that
+ * the caller read earlier.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the entity.
+ * @param <PK> the type of the primary key of the entity.
+ */
+public class OptimisticUpdater<T extends VersionedEntity<PK>, PK> {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(OptimisticUpdater.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<T> entityClass;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Creates an updater.
+     *
+     * @param inEntityManagerFactory creates the entity manager for each
+     * attempt. It must be configured for resource-local transactions. Cannot
+     * be <code>null</code>.
+     * @param inEntityClass the entity class. Cannot be <code>null</code>.
+     * @param inRetryPolicy how to retry after a conflict. Cannot be
+     * <code>null</code>.
+     */
+    public OptimisticUpdater(EntityManagerFactory inEntityManagerFactory,
+            Class<T> inEntityClass, RetryPolicy inRetryPolicy) {
+        if (inEntityManagerFactory == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerFactory cannot be null");
+        }
+        if (inEntityClass == null) {
+            throw new IllegalArgumentException("inEntityClass cannot be null");
+        }
+        if (inRetryPolicy == null) {
+            throw new IllegalArgumentException("inRetryPolicy cannot be null");
+        }
+        this.entityManagerFactory = inEntityManagerFactory;
+        this.entityClass = inEntityClass;
+        this.retryPolicy = inRetryPolicy;
+    }
+
+    /**
+     * Applies changes to the entity with the given primary key.
+     *
+     * @param uniqueId the primary key. Cannot be <code>null</code>.
+     * @param changes applies the changes to the current state of the entity.
+     * Cannot be <code>null</code>.
+     * @return the updated entity, detached, or <code>null</code> if there is
+     * no entity with the primary key.
+     * @throws OptimisticLockException if every attempt conflicted with a
+     * concurrent update.
+     */
+    public T update(PK uniqueId, Consumer<? super T> changes) {
+        if (uniqueId == null) {
+            throw new IllegalArgumentException("uniqueId cannot be null");
+        }
+        if (changes == null) {
+            throw new IllegalArgumentException("changes cannot be null");
+        }
+        for (int attempt = 1;; attempt++) {
+            try {
+                return attempt(uniqueId, changes);
+            } catch (RuntimeException ex) {
+                if (!isOptimisticLockFailure(ex)) {
+                    throw ex;
+                }
+                if (attempt >= this.retryPolicy.getMaxAttempts()) {
+                    LOGGER.warn("Giving up updating {} {} after {} conflicting attempts",
+                            this.entityClass.getName(), uniqueId, attempt);
+                    throw ex instanceof OptimisticLockException
+                            ? (OptimisticLockException) ex
+                            : new OptimisticLockException(ex);
+                }
+                long delay = this.retryPolicy.getDelayMillis(attempt);
+                LOGGER.debug("Update of {} {} conflicted on attempt {}, retrying in {} ms",
+                        this.entityClass.getName(), uniqueId, attempt, delay);
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new OptimisticLockException(
+                                "Interrupted while waiting to retry", ex);
+                    }
+                }
+            }
+        }
+    }
+
+    private T attempt(PK uniqueId, Consumer<? super T> changes) {
+        EntityManager entityManager
+                = this.entityManagerFactory.createEntityManager();
+        try {
+            EntityTransaction transaction = entityManager.getTransaction();
+            transaction.begin();
+            try {
+                T entity = entityManager.find(this.entityClass, uniqueId);
+                if (entity != null) {
+                    changes.accept(entity);
+                    entityManager.flush();
+                }
+                transaction.commit();
+                return entity;
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Gets whether an exception, or one of its causes, reports an optimistic
+     * locking conflict. Commit failures wrap the conflict in a
+     * {@link javax.persistence.RollbackException}.
+     *
+     * @param throwable the exception.
+     * @return <code>true</code> or <code>false</code>.
+     */
+    static boolean isOptimisticLockFailure(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+}
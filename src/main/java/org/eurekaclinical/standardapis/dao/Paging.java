@@ -0,0 +1,127 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import javax.persistence.TypedQuery;
+
+/**
+ * Which slice of a query's ordered results to return: a page by offset, or
+ * the rows after a known row (keyset pagination). Keyset pagination reads
+ * only the rows it returns, no matter how deep the page is, but needs a
+ * {@link SortSpec} whose keys uniquely order the rows, such as a sort that
+ * ends with the primary key, and values for every key.
+ *
+ * @author Andrew Post
+ */
+public final class Paging {
+
+    private final int firstResult;
+    private final int maxResults;
+    private final Object[] keyset;
+
+    private Paging(int firstResult, int maxResults, Object[] keyset) {
+        if (firstResult < 0) {
+            throw new IllegalArgumentException(
+                    "firstResult cannot be negative");
+        }
+        if (maxResults < 0) {
+            throw new IllegalArgumentException(
+                    "maxResults cannot be negative");
+        }
+        this.firstResult = firstResult;
+        this.maxResults = maxResults;
+        this.keyset = keyset;
+    }
+
+    /**
+     * Returns a page by offset.
+     *
+     * @param firstResult index of the first row to be retrieved.
+     * @param maxResults amount of rows to be retrieved.
+     * @return the paging.
+     */
+    public static Paging offset(int firstResult, int maxResults) {
+        return new Paging(firstResult, maxResults, null);
+    }
+
+    /**
+     * Returns the first rows.
+     *
+     * @param maxResults amount of rows to be retrieved.
+     * @return the paging.
+     */
+    public static Paging first(int maxResults) {
+        return new Paging(0, maxResults, null);
+    }
+
+    /**
+     * Returns the rows after the row with the given sort key values.
+     *
+     * @param maxResults amount of rows to be retrieved.
+     * @param lastSortValues the values of the sort keys of the last row of
+     * the previous page, in sort key order. Only the values of sort keys
+     * with {@link SortSpec.Nulls#FIRST} or {@link SortSpec.Nulls#LAST} may
+     * be <code>null</code>.
+     * @return the paging.
+     */
+    public static Paging after(int maxResults, Object... lastSortValues) {
+        if (lastSortValues == null || lastSortValues.length == 0) {
+            throw new IllegalArgumentException(
+                    "lastSortValues cannot be empty");
+        }
+        return new Paging(0, maxResults, lastSortValues.clone());
+    }
+
+    public int getFirstResult() {
+        return this.firstResult;
+    }
+
+    public int getMaxResults() {
+        return this.maxResults;
+    }
+
+    /**
+     * Gets whether this is keyset pagination.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isKeyset() {
+        return this.keyset != null;
+    }
+
+    /**
+     * Gets the sort key values of the last row of the previous page.
+     *
+     * @return the values, or <code>null</code> if this is not keyset
+     * pagination.
+     */
+    Object[] getKeyset() {
+        return this.keyset;
+    }
+
+    /**
+     * Sets the first and maximum results of a query.
+     *
+     * @param query the query.
+     */
+    void apply(TypedQuery<?> query) {
+        query.setFirstResult(this.firstResult).setMaxResults(this.maxResults);
+    }
+}
@@ -0,0 +1,310 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link RoleInvalidationBus} that relays invalidations between JVMs
+ * through a shared {@link RoleInvalidationStore}. Publishing appends to the
+ * store. A background thread polls the store at a fixed interval and notifies
+ * local subscribers of every invalidation appended since the previous poll,
+ * including those that this JVM published, so subscribers in this JVM learn of
+ * a change up to one poll interval after it was published. Each invalidation
+ * is versioned by its sequence number in the store, which every JVM sharing
+ * the store agrees on and which survives restarts.
+ *
+ * Sequence numbers are assigned when invalidations are appended, but the
+ * appending transactions may commit in a different order, so an invalidation
+ * can become visible after others with higher sequence numbers were read.
+ * The bus therefore remembers the sequence numbers it skipped over as gaps
+ * and re-reads from the oldest gap on every poll, delivering invalidations
+ * that fill a gap when they appear. A gap that stays unfilled for longer than
+ * the gap timeout is assumed to come from a rolled back transaction or an
+ * unused block of sequence numbers and is forgotten. The gap timeout
+ * therefore must be longer than the longest transaction that changes roles.
+ * After each poll, subscribers are told that every invalidation up to just
+ * before the oldest remaining gap has been delivered.
+ *
+ * On start, the most recent invalidations are read again, in case some that
+ * were appended before the last sequence number committed after it was read,
+ * and subscribers are {@link RoleInvalidationListener#versionsReset(long) reset}
+ * to the delivered version.
+ *
+ * Call {@link #start() } to begin polling and {@link #close() } to stop.
+ *
+ * @author Andrew Post
+ */
+public class PollingRoleInvalidationBus extends LocalRoleInvalidationBus
+        implements AutoCloseable {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(PollingRoleInvalidationBus.class);
+
+    private static final int MAX_RESULTS_PER_POLL = 1000;
+
+    private static final long DEFAULT_GAP_TIMEOUT_MILLIS = 30000;
+
+    private static final int START_LOOKBACK = MAX_RESULTS_PER_POLL;
+
+    private final RoleInvalidationStore store;
+    private final long pollInterval;
+    private final TimeUnit pollIntervalUnit;
+    private ScheduledExecutorService scheduler;
+    private long lastSequence;
+    private final NavigableMap<Long, Gap> gaps = new TreeMap<>();
+    private volatile long gapTimeoutMillis = DEFAULT_GAP_TIMEOUT_MILLIS;
+
+    /**
+     * Creates a polling bus.
+     *
+     * @param inStore the shared store. Cannot be <code>null</code>.
+     * @param inPollInterval how often to poll. Must be positive.
+     * @param inPollIntervalUnit the unit of the poll interval. Cannot be
+     * <code>null</code>.
+     */
+    public PollingRoleInvalidationBus(RoleInvalidationStore inStore,
+            long inPollInterval, TimeUnit inPollIntervalUnit) {
+        if (inStore == null) {
+            throw new IllegalArgumentException("inStore cannot be null");
+        }
+        if (inPollInterval < 1) {
+            throw new IllegalArgumentException(
+                    "inPollInterval must be positive");
+        }
+        if (inPollIntervalUnit == null) {
+            throw new IllegalArgumentException(
+                    "inPollIntervalUnit cannot be null");
+        }
+        this.store = inStore;
+        this.pollInterval = inPollInterval;
+        this.pollIntervalUnit = inPollIntervalUnit;
+    }
+
+    @Override
+    public void invalidateUser(String username) {
+        if (username == null) {
+            throw new IllegalArgumentException("username cannot be null");
+        }
+        this.store.append(username);
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.store.append(null);
+    }
+
+    /**
+     * Gets whether the store's appends take part in the caller's
+     * transaction.
+     *
+     * @return whether the store is transactional.
+     */
+    @Override
+    public boolean isTransactional() {
+        return this.store.isTransactional();
+    }
+
+    /**
+     * Sets how long a skipped sequence number is waited for before it is
+     * assumed never to commit. The default is 30 seconds.
+     *
+     * @param gapTimeout the timeout. Must be positive.
+     * @param unit the unit of the timeout. Cannot be <code>null</code>.
+     */
+    public void setGapTimeout(long gapTimeout, TimeUnit unit) {
+        if (gapTimeout < 1) {
+            throw new IllegalArgumentException("gapTimeout must be positive");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.gapTimeoutMillis = unit.toMillis(gapTimeout);
+    }
+
+    /**
+     * Starts polling, skipping all but the most recent invalidations already
+     * in the store, and resets subscribers to the version delivered by the
+     * first poll.
+     */
+    public synchronized void start() {
+        if (this.scheduler != null) {
+            throw new IllegalStateException("already started");
+        }
+        this.lastSequence = Math.max(-1,
+                this.store.getLastSequence() - START_LOOKBACK);
+        this.gaps.clear();
+        poll();
+        long version = getDeliveredSequence();
+        notifyListeners(l -> l.versionsReset(version));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "eurekaclinical-role-invalidation-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::poll, this.pollInterval,
+                this.pollInterval, this.pollIntervalUnit);
+    }
+
+    /**
+     * Stops polling.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Reads new invalidations, and those that filled a gap, from the store
+     * and notifies local subscribers. It is called by the polling thread.
+     */
+    synchronized void poll() {
+        try {
+            long cursor = getDeliveredSequence();
+            List<RoleInvalidation> invalidations;
+            do {
+                invalidations = this.store.readAfter(cursor,
+                        MAX_RESULTS_PER_POLL);
+                for (RoleInvalidation invalidation : invalidations) {
+                    long sequence = invalidation.getSequence();
+                    if (isNew(sequence)) {
+                        deliver(invalidation);
+                    }
+                    cursor = sequence;
+                }
+            } while (invalidations.size() == MAX_RESULTS_PER_POLL);
+            expireGaps();
+            long version = getDeliveredSequence();
+            notifyListeners(l -> l.versionsDelivered(version));
+        } catch (RuntimeException ex) {
+            LOGGER.error("Error polling for role invalidations", ex);
+        }
+    }
+
+    /**
+     * Resets a new subscriber to the delivered version if polling has
+     * started. Subscribers that subscribe before are reset on start.
+     *
+     * @param listener the new subscriber.
+     */
+    @Override
+    protected void subscribed(RoleInvalidationListener listener) {
+        if (this.scheduler != null) {
+            long version = getDeliveredSequence();
+            notifyListener(listener, l -> l.versionsReset(version));
+        }
+    }
+
+    /**
+     * Gets the sequence number at or below which every invalidation has been
+     * read, that is, the one before the oldest gap, or the last one read if
+     * there are no gaps.
+     */
+    private long getDeliveredSequence() {
+        return this.gaps.isEmpty()
+                ? this.lastSequence : this.gaps.firstKey() - 1;
+    }
+
+    private void deliver(RoleInvalidation invalidation) {
+        String username = invalidation.getUsername();
+        long version = invalidation.getSequence();
+        if (username != null) {
+            notifyListeners(l -> l.userInvalidated(username, version));
+        } else {
+            notifyListeners(l -> l.allInvalidated(version));
+        }
+    }
+
+    /**
+     * Records a sequence number as read, and gets whether it had not been
+     * read before, either because it is past the last one read or because it
+     * fills a gap. Skipped sequence numbers are recorded as a gap.
+     */
+    private boolean isNew(long sequence) {
+        if (sequence > this.lastSequence) {
+            if (sequence > this.lastSequence + 1) {
+                Gap gap = new Gap(this.lastSequence + 1, sequence - 1,
+                        System.currentTimeMillis());
+                this.gaps.put(gap.from, gap);
+            }
+            this.lastSequence = sequence;
+            return true;
+        }
+        Map.Entry<Long, Gap> entry = this.gaps.floorEntry(sequence);
+        if (entry == null || entry.getValue().to < sequence) {
+            return false;
+        }
+        Gap gap = entry.getValue();
+        this.gaps.remove(gap.from);
+        if (gap.from < sequence) {
+            this.gaps.put(gap.from,
+                    new Gap(gap.from, sequence - 1, gap.noticedAt));
+        }
+        if (sequence < gap.to) {
+            this.gaps.put(sequence + 1,
+                    new Gap(sequence + 1, gap.to, gap.noticedAt));
+        }
+        return true;
+    }
+
+    private void expireGaps() {
+        long expiredBefore = System.currentTimeMillis()
+                - this.gapTimeoutMillis;
+        for (Iterator<Gap> itr = this.gaps.values().iterator();
+                itr.hasNext();) {
+            Gap gap = itr.next();
+            if (gap.noticedAt < expiredBefore) {
+                LOGGER.debug("Giving up on role invalidations {} to {}",
+                        gap.from, gap.to);
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * A range of sequence numbers that were skipped over, inclusive, and when
+     * they were first skipped.
+     */
+    private static final class Gap {
+
+        private final long from;
+        private final long to;
+        private final long noticedAt;
+
+        Gap(long from, long to, long noticedAt) {
+            this.from = from;
+            this.to = to;
+            this.noticedAt = noticedAt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * The outcome of provisioning one username with a {@link UserProvisioner}.
+ *
+ * @author Andrew Post
+ */
+public final class ProvisioningResult {
+
+    /**
+     * What happened to a username.
+     */
+    public static enum Status {
+        /**
+         * A user was created.
+         */
+        CREATED,
+        /**
+         * A user with the username already existed and was left alone.
+         */
+        EXISTS,
+        /**
+         * The user could not be created.
+         */
+        FAILED
+    }
+
+    private final String username;
+    private final Status status;
+    private final Long userId;
+    private final Throwable error;
+
+    /**
+     * Creates a result.
+     *
+     * @param username the username.
+     * @param status what happened. Cannot be <code>null</code>.
+     * @param userId the created user's id, or <code>null</code>.
+     * @param error why the user could not be created, or <code>null</code>.
+     */
+    public ProvisioningResult(String username, Status status, Long userId,
+            Throwable error) {
+        if (status == null) {
+            throw new IllegalArgumentException("status cannot be null");
+        }
+        this.username = username;
+        this.status = status;
+        this.userId = userId;
+        this.error = error;
+    }
+
+    public String getUsername() {
+        return this.username;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Gets the id of the created user.
+     *
+     * @return the id, or <code>null</code> unless the status is
+     * {@link Status#CREATED}.
+     */
+    public Long getUserId() {
+        return this.userId;
+    }
+
+    /**
+     * Gets why the user could not be created.
+     *
+     * @return the error, or <code>null</code> unless the status is
+     * {@link Status#FAILED}.
+     */
+    public Throwable getError() {
+        return this.error;
+    }
+
+    @Override
+    public String toString() {
+        return "ProvisioningResult{" + "username=" + this.username
+                + ", status=" + this.status + ", userId=" + this.userId
+                + ", error=" + this.error + '}';
+    }
+}
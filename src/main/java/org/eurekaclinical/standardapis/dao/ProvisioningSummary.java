@@ -0,0 +1,64 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * Counts of the outcomes of a {@link UserProvisioner} run.
+ *
+ * @author Andrew Post
+ */
+public final class ProvisioningSummary {
+
+    private final int created;
+    private final int existing;
+    private final int failed;
+
+    /**
+     * Creates a summary.
+     *
+     * @param created the number of users created.
+     * @param existing the number of usernames that already had a user.
+     * @param failed the number of usernames that could not be provisioned.
+     */
+    public ProvisioningSummary(int created, int existing, int failed) {
+        this.created = created;
+        this.existing = existing;
+        this.failed = failed;
+    }
+
+    public int getCreated() {
+        return this.created;
+    }
+
+    public int getExisting() {
+        return this.existing;
+    }
+
+    public int getFailed() {
+        return this.failed;
+    }
+
+    @Override
+    public String toString() {
+        return "ProvisioningSummary{" + "created=" + this.created
+                + ", existing=" + this.existing + ", failed=" + this.failed
+                + '}';
+    }
+}
@@ -0,0 +1,782 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+
+/**
+ * A typed condition on an entity's attributes, for building where clauses
+ * with more than one attribute, such as
+ * <code>username = ? AND active = ?</code>, that
+ * {@link DatabaseSupport#getListByCriteria(java.lang.Class, org.eurekaclinical.standardapis.dao.QueryCriterion) }
+ * compiles into a single criteria query. Attributes are given as
+ * {@link SingularAttribute}s or, to traverse relationships,
+ * {@link QueryPathProvider}s.
+ *
+ * Values are bound as query parameters rather than inlined, so every query
+ * with the same shape renders to the same query string, and the persistence
+ * provider's query plan cache and the database's statement cache can reuse
+ * it. {@link #toString() } returns that shape without any values.
+ *
+ * Criteria are immutable and may be shared between threads.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the entity.
+ */
+public abstract class QueryCriterion<T> {
+
+    QueryCriterion() {
+    }
+
+    /**
+     * Creates a predicate for this criterion.
+     *
+     * @param root the query root.
+     * @param builder the criteria builder.
+     * @param bindings collects the parameters to bind once the query is
+     * created.
+     * @return the predicate.
+     */
+    abstract Predicate toPredicate(Root<T> root, CriteriaBuilder builder,
+            Bindings bindings);
+
+    /**
+     * Appends this criterion's shape, without values, to a buffer.
+     *
+     * @param buf the buffer.
+     */
+    abstract void appendShape(StringBuilder buf);
+
+    /**
+     * Gets this criterion's shape, for example,
+     * <code>(username = ? AND active = ?)</code>.
+     *
+     * @return the shape, without any values.
+     */
+    @Override
+    public final String toString() {
+        StringBuilder buf = new StringBuilder();
+        appendShape(buf);
+        return buf.toString();
+    }
+
+    /**
+     * Matches entities whose attribute equals a value. A <code>null</code>
+     * value matches entities whose attribute is null.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the criterion.
+     */
+    public static <T, Y> QueryCriterion<T> equal(
+            SingularAttribute<T, Y> attribute, Y value) {
+        return equal(PathSource.of(attribute), value);
+    }
+
+    /**
+     * Matches entities whose path value equals a value. A <code>null</code>
+     * value matches entities whose path value is null.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the criterion.
+     */
+    public static <T, Y> QueryCriterion<T> equal(
+            QueryPathProvider<T, Y> provider, Y value) {
+        return equal(PathSource.of(provider), value);
+    }
+
+    /**
+     * Matches entities whose attribute does not equal a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y> QueryCriterion<T> notEqual(
+            SingularAttribute<T, Y> attribute, Y value) {
+        return new Comparison<>(PathSource.of(attribute), Operator.NOT_EQUAL,
+                requireValue(value));
+    }
+
+    /**
+     * Matches entities whose path value does not equal a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y> QueryCriterion<T> notEqual(
+            QueryPathProvider<T, Y> provider, Y value) {
+        return new Comparison<>(PathSource.of(provider), Operator.NOT_EQUAL,
+                requireValue(value));
+    }
+
+    /**
+     * Matches entities whose attribute is less than a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> lessThan(
+            SingularAttribute<T, Y> attribute, Y value) {
+        return new Comparison<>(PathSource.of(attribute), Operator.LESS_THAN,
+                requireValue(value));
+    }
+
+    /**
+     * Matches entities whose path value is less than a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> lessThan(
+            QueryPathProvider<T, Y> provider, Y value) {
+        return new Comparison<>(PathSource.of(provider), Operator.LESS_THAN,
+                requireValue(value));
+    }
+
+    /**
+     * Matches entities whose attribute is less than or equal to a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> lessThanOrEqualTo(
+            SingularAttribute<T, Y> attribute, Y value) {
+        return new Comparison<>(PathSource.of(attribute),
+                Operator.LESS_THAN_OR_EQUAL_TO, requireValue(value));
+    }
+
+    /**
+     * Matches entities whose path value is less than or equal to a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> lessThanOrEqualTo(
+            QueryPathProvider<T, Y> provider, Y value) {
+        return new Comparison<>(PathSource.of(provider),
+                Operator.LESS_THAN_OR_EQUAL_TO, requireValue(value));
+    }
+
+    /**
+     * Matches entities whose attribute is greater than a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> greaterThan(
+            SingularAttribute<T, Y> attribute, Y value) {
+        return new Comparison<>(PathSource.of(attribute),
+                Operator.GREATER_THAN, requireValue(value));
+    }
+
+    /**
+     * Matches entities whose path value is greater than a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> greaterThan(
+            QueryPathProvider<T, Y> provider, Y value) {
+        return new Comparison<>(PathSource.of(provider),
+                Operator.GREATER_THAN, requireValue(value));
+    }
+
+    /**
+     * Matches entities whose attribute is greater than or equal to a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> greaterThanOrEqualTo(
+            SingularAttribute<T, Y> attribute, Y value) {
+        return new Comparison<>(PathSource.of(attribute),
+                Operator.GREATER_THAN_OR_EQUAL_TO, requireValue(value));
+    }
+
+    /**
+     * Matches entities whose path value is greater than or equal to a value.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param value the value. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> greaterThanOrEqualTo(
+            QueryPathProvider<T, Y> provider, Y value) {
+        return new Comparison<>(PathSource.of(provider),
+                Operator.GREATER_THAN_OR_EQUAL_TO, requireValue(value));
+    }
+
+    /**
+     * Matches entities whose attribute is between two values, inclusive.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param lower the lower bound. Cannot be <code>null</code>.
+     * @param upper the upper bound. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> between(
+            SingularAttribute<T, Y> attribute, Y lower, Y upper) {
+        return allOf(greaterThanOrEqualTo(attribute, lower),
+                lessThanOrEqualTo(attribute, upper));
+    }
+
+    /**
+     * Matches entities whose path value is between two values, inclusive.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param lower the lower bound. Cannot be <code>null</code>.
+     * @param upper the upper bound. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y extends Comparable<? super Y>> QueryCriterion<T> between(
+            QueryPathProvider<T, Y> provider, Y lower, Y upper) {
+        return allOf(greaterThanOrEqualTo(provider, lower),
+                lessThanOrEqualTo(provider, upper));
+    }
+
+    /**
+     * Matches entities whose attribute is any of the given values. An empty
+     * collection matches nothing.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param values the values. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y> QueryCriterion<T> in(
+            SingularAttribute<T, Y> attribute, Collection<? extends Y> values) {
+        return new In<>(PathSource.of(attribute), values);
+    }
+
+    /**
+     * Matches entities whose path value is any of the given values. An empty
+     * collection matches nothing.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param values the values. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T, Y> QueryCriterion<T> in(
+            QueryPathProvider<T, Y> provider, Collection<? extends Y> values) {
+        return new In<>(PathSource.of(provider), values);
+    }
+
+    /**
+     * Matches entities whose attribute is null.
+     *
+     * @param <T> the type of the entity.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T> QueryCriterion<T> isNull(
+            SingularAttribute<T, ?> attribute) {
+        return new NullCheck<>(PathSource.of(attribute), true);
+    }
+
+    /**
+     * Matches entities whose path value is null.
+     *
+     * @param <T> the type of the entity.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T> QueryCriterion<T> isNull(
+            QueryPathProvider<T, ?> provider) {
+        return new NullCheck<>(PathSource.of(provider), true);
+    }
+
+    /**
+     * Matches entities whose attribute is not null.
+     *
+     * @param <T> the type of the entity.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T> QueryCriterion<T> isNotNull(
+            SingularAttribute<T, ?> attribute) {
+        return new NullCheck<>(PathSource.of(attribute), false);
+    }
+
+    /**
+     * Matches entities whose path value is not null.
+     *
+     * @param <T> the type of the entity.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public static <T> QueryCriterion<T> isNotNull(
+            QueryPathProvider<T, ?> provider) {
+        return new NullCheck<>(PathSource.of(provider), false);
+    }
+
+    /**
+     * Matches entities that match all of the given criteria. No criteria
+     * matches everything.
+     *
+     * @param <T> the type of the entity.
+     * @param criteria the criteria. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    @SafeVarargs
+    public static <T> QueryCriterion<T> allOf(QueryCriterion<T>... criteria) {
+        if (criteria == null) {
+            throw new IllegalArgumentException("criteria cannot be null");
+        }
+        List<QueryCriterion<T>> list = new ArrayList<>(criteria.length);
+        for (QueryCriterion<T> criterion : criteria) {
+            list.add(criterion);
+        }
+        return new Junction<>(true, list);
+    }
+
+    /**
+     * Matches entities that match any of the given criteria. No criteria
+     * matches nothing.
+     *
+     * @param <T> the type of the entity.
+     * @param criteria the criteria. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    @SafeVarargs
+    public static <T> QueryCriterion<T> anyOf(QueryCriterion<T>... criteria) {
+        if (criteria == null) {
+            throw new IllegalArgumentException("criteria cannot be null");
+        }
+        List<QueryCriterion<T>> list = new ArrayList<>(criteria.length);
+        for (QueryCriterion<T> criterion : criteria) {
+            list.add(criterion);
+        }
+        return new Junction<>(false, list);
+    }
+
+    /**
+     * Matches entities that match this criterion and another.
+     *
+     * @param other the other criterion. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public QueryCriterion<T> and(QueryCriterion<T> other) {
+        return allOf(this, other);
+    }
+
+    /**
+     * Matches entities that match this criterion or another.
+     *
+     * @param other the other criterion. Cannot be <code>null</code>.
+     * @return the criterion.
+     */
+    public QueryCriterion<T> or(QueryCriterion<T> other) {
+        return anyOf(this, other);
+    }
+
+    /**
+     * Matches entities whose attribute compares to a value as a
+     * {@link DatabaseSupport.SqlComparator} says.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the attribute.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param comparator the comparator. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the criterion.
+     */
+    static <T, Y extends Comparable<? super Y>> QueryCriterion<T> compare(
+            SingularAttribute<T, Y> attribute,
+            DatabaseSupport.SqlComparator comparator, Y value) {
+        return compare(PathSource.of(attribute), comparator, value);
+    }
+
+    /**
+     * Matches entities whose path value compares to a value as a
+     * {@link DatabaseSupport.SqlComparator} says.
+     *
+     * @param <T> the type of the entity.
+     * @param <Y> the type of the path value.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param comparator the comparator. Cannot be <code>null</code>.
+     * @param value the value.
+     * @return the criterion.
+     */
+    static <T, Y extends Comparable<? super Y>> QueryCriterion<T> compare(
+            QueryPathProvider<T, Y> provider,
+            DatabaseSupport.SqlComparator comparator, Y value) {
+        return compare(PathSource.of(provider), comparator, value);
+    }
+
+    private static <T, Y> QueryCriterion<T> compare(PathSource<T, Y> source,
+            DatabaseSupport.SqlComparator comparator, Y value) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("comparator cannot be null");
+        }
+        switch (comparator) {
+            case EQUAL_TO:
+                return equal(source, value);
+            case NOT_EQUAL_TO:
+                return new Comparison<>(source, Operator.NOT_EQUAL,
+                        requireValue(value));
+            case LESS_THAN:
+                return new Comparison<>(source, Operator.LESS_THAN,
+                        requireValue(value));
+            case LESS_THAN_OR_EQUAL_TO:
+                return new Comparison<>(source,
+                        Operator.LESS_THAN_OR_EQUAL_TO, requireValue(value));
+            case GREATER_THAN:
+                return new Comparison<>(source, Operator.GREATER_THAN,
+                        requireValue(value));
+            case GREATER_THAN_OR_EQUAL_TO:
+                return new Comparison<>(source,
+                        Operator.GREATER_THAN_OR_EQUAL_TO, requireValue(value));
+            default:
+                throw new AssertionError("Invalid SQLComparator: "
+                        + comparator);
+        }
+    }
+
+    private static <T, Y> QueryCriterion<T> equal(PathSource<T, Y> source,
+            Y value) {
+        if (value == null) {
+            return new NullCheck<>(source, true);
+        }
+        return new Comparison<>(source, Operator.EQUAL, value);
+    }
+
+    /**
+     * Gets the wrapper class of a primitive type, since parameters of
+     * primitive attributes are bound to boxed values.
+     */
+    private static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else {
+            return Character.class;
+        }
+    }
+
+    private static <Y> Y requireValue(Y value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+        return value;
+    }
+
+    /**
+     * Collects query parameters and their values while a criterion is being
+     * compiled, and binds them once the query exists.
+     */
+    static final class Bindings {
+
+        private final List<ParameterExpression<?>> parameters
+                = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        <Y> ParameterExpression<Y> add(CriteriaBuilder builder,
+                Class<Y> type, Object value) {
+            ParameterExpression<Y> parameter = builder.parameter(type);
+            this.parameters.add(parameter);
+            this.values.add(value);
+            return parameter;
+        }
+
+        @SuppressWarnings("unchecked")
+        void bind(Query query) {
+            for (int i = 0, n = this.parameters.size(); i < n; i++) {
+                query.setParameter(
+                        (ParameterExpression<Object>) this.parameters.get(i),
+                        this.values.get(i));
+            }
+        }
+    }
+
+    /**
+     * Resolves an attribute or a {@link QueryPathProvider} to a path.
+     */
+    private abstract static class PathSource<T, Y> {
+
+        abstract Path<Y> get(Root<T> root, CriteriaBuilder builder);
+
+        abstract String name();
+
+        static <T, Y> PathSource<T, Y> of(
+                final SingularAttribute<T, Y> attribute) {
+            if (attribute == null) {
+                throw new IllegalArgumentException(
+                        "attribute cannot be null");
+            }
+            return new PathSource<T, Y>() {
+                @Override
+                Path<Y> get(Root<T> root, CriteriaBuilder builder) {
+                    return root.get(attribute);
+                }
+
+                @Override
+                String name() {
+                    return attribute.getName();
+                }
+            };
+        }
+
+        static <T, Y> PathSource<T, Y> of(
+                final QueryPathProvider<T, Y> provider) {
+            if (provider == null) {
+                throw new IllegalArgumentException("provider cannot be null");
+            }
+            return new PathSource<T, Y>() {
+                @Override
+                Path<Y> get(Root<T> root, CriteriaBuilder builder) {
+                    return provider.getPath(root, builder);
+                }
+
+                @Override
+                String name() {
+                    return provider.getClass().getName();
+                }
+            };
+        }
+    }
+
+    private static enum Operator {
+        EQUAL(" = ?"),
+        NOT_EQUAL(" <> ?"),
+        LESS_THAN(" < ?"),
+        LESS_THAN_OR_EQUAL_TO(" <= ?"),
+        GREATER_THAN(" > ?"),
+        GREATER_THAN_OR_EQUAL_TO(" >= ?");
+
+        private final String shape;
+
+        Operator(String shape) {
+            this.shape = shape;
+        }
+    }
+
+    private static final class Comparison<T, Y> extends QueryCriterion<T> {
+
+        private final PathSource<T, Y> source;
+        private final Operator operator;
+        private final Y value;
+
+        Comparison(PathSource<T, Y> source, Operator operator, Y value) {
+            this.source = source;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Predicate toPredicate(Root<T> root, CriteriaBuilder builder,
+                Bindings bindings) {
+            Path<Y> path = this.source.get(root, builder);
+            Class<Y> type = (Class<Y>) boxed(path.getJavaType());
+            ParameterExpression<Y> parameter
+                    = bindings.add(builder, type, this.value);
+            switch (this.operator) {
+                case EQUAL:
+                    return builder.equal(path, parameter);
+                case NOT_EQUAL:
+                    return builder.notEqual(path, parameter);
+                case LESS_THAN:
+                    return builder.lessThan((Path) path,
+                            (ParameterExpression) parameter);
+                case LESS_THAN_OR_EQUAL_TO:
+                    return builder.lessThanOrEqualTo((Path) path,
+                            (ParameterExpression) parameter);
+                case GREATER_THAN:
+                    return builder.greaterThan((Path) path,
+                            (ParameterExpression) parameter);
+                case GREATER_THAN_OR_EQUAL_TO:
+                    return builder.greaterThanOrEqualTo((Path) path,
+                            (ParameterExpression) parameter);
+                default:
+                    throw new AssertionError("Invalid operator: "
+                            + this.operator);
+            }
+        }
+
+        @Override
+        void appendShape(StringBuilder buf) {
+            buf.append(this.source.name()).append(this.operator.shape);
+        }
+    }
+
+    private static final class In<T, Y> extends QueryCriterion<T> {
+
+        private final PathSource<T, Y> source;
+        private final List<Y> values;
+
+        In(PathSource<T, Y> source, Collection<? extends Y> values) {
+            if (values == null) {
+                throw new IllegalArgumentException("values cannot be null");
+            }
+            this.source = source;
+            this.values = Collections.unmodifiableList(
+                    new ArrayList<>(values));
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        Predicate toPredicate(Root<T> root, CriteriaBuilder builder,
+                Bindings bindings) {
+            if (this.values.isEmpty()) {
+                return builder.disjunction();
+            }
+            ParameterExpression<Collection> parameter
+                    = bindings.add(builder, Collection.class, this.values);
+            return this.source.get(root, builder).in(parameter);
+        }
+
+        @Override
+        void appendShape(StringBuilder buf) {
+            buf.append(this.source.name()).append(" IN (")
+                    .append(this.values.size()).append(')');
+        }
+    }
+
+    private static final class NullCheck<T> extends QueryCriterion<T> {
+
+        private final PathSource<T, ?> source;
+        private final boolean isNull;
+
+        NullCheck(PathSource<T, ?> source, boolean isNull) {
+            this.source = source;
+            this.isNull = isNull;
+        }
+
+        @Override
+        Predicate toPredicate(Root<T> root, CriteriaBuilder builder,
+                Bindings bindings) {
+            Path<?> path = this.source.get(root, builder);
+            return this.isNull ? builder.isNull(path) : builder.isNotNull(path);
+        }
+
+        @Override
+        void appendShape(StringBuilder buf) {
+            buf.append(this.source.name())
+                    .append(this.isNull ? " IS NULL" : " IS NOT NULL");
+        }
+    }
+
+    private static final class Junction<T> extends QueryCriterion<T> {
+
+        private final boolean conjunction;
+        private final List<QueryCriterion<T>> criteria;
+
+        Junction(boolean conjunction, List<QueryCriterion<T>> criteria) {
+            for (QueryCriterion<T> criterion : criteria) {
+                if (criterion == null) {
+                    throw new IllegalArgumentException(
+                            "criteria cannot contain null");
+                }
+            }
+            this.conjunction = conjunction;
+            this.criteria = Collections.unmodifiableList(
+                    new ArrayList<>(criteria));
+        }
+
+        @Override
+        Predicate toPredicate(Root<T> root, CriteriaBuilder builder,
+                Bindings bindings) {
+            Predicate[] predicates = new Predicate[this.criteria.size()];
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = this.criteria.get(i).toPredicate(root,
+                        builder, bindings);
+            }
+            return this.conjunction ? builder.and(predicates)
+                    : builder.or(predicates);
+        }
+
+        @Override
+        void appendShape(StringBuilder buf) {
+            String separator = this.conjunction ? " AND " : " OR ";
+            buf.append('(');
+            for (int i = 0, n = this.criteria.size(); i < n; i++) {
+                if (i > 0) {
+                    buf.append(separator);
+                }
+                this.criteria.get(i).appendShape(buf);
+            }
+            buf.append(')');
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.function.Supplier;
+
+/**
+ * Tracks, per thread, whether reads must go to the primary database instead
+ * of a replica so that a client sees its own writes despite replication lag.
+ * Data access objects with a replica call {@link #markWritten() } after each
+ * write, after which reads on the same thread go to the primary until
+ * {@link #clear() }. A filter such as
+ * {@link org.eurekaclinical.standardapis.filter.ReadYourWritesFilter} scopes
+ * this to a request and carries it over to the client's next requests for a
+ * while.
+ *
+ * The state is kept in a thread local, so code that uses data access objects
+ * on threads that do not serve requests, such as pooled worker threads, must
+ * call {@link #clear() } in a finally block around each unit of work.
+ * Otherwise a single write leaves the thread reading from the primary for
+ * good. {@link AsyncDao} and {@link DaoWarmUp} do so for their tasks.
+ *
+ * @author Andrew Post
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<State> STATE
+            = ThreadLocal.withInitial(State::new);
+
+    private ReadYourWrites() {
+    }
+
+    /**
+     * Records that the current thread wrote to the primary, which makes
+     * subsequent reads on the thread go to the primary.
+     */
+    public static void markWritten() {
+        State state = STATE.get();
+        state.written = true;
+        state.sticky = true;
+    }
+
+    /**
+     * Makes reads on the current thread go to the primary without recording
+     * a write, for example, because the client wrote recently in another
+     * request.
+     */
+    public static void stick() {
+        STATE.get().sticky = true;
+    }
+
+    /**
+     * Undoes {@link #stick() }, letting reads on the current thread go to
+     * replicas again unless it wrote to the primary.
+     */
+    public static void unstick() {
+        State state = STATE.get();
+        state.sticky = state.written;
+    }
+
+    /**
+     * Runs reads whose results are written back on the primary, so that the
+     * writes are not based on stale replicated data.
+     *
+     * @param <R> the type of the result.
+     * @param reads the reads and writes. Cannot be <code>null</code>.
+     * @return the result of <code>reads</code>.
+     */
+    public static <R> R onPrimary(Supplier<R> reads) {
+        if (reads == null) {
+            throw new IllegalArgumentException("reads cannot be null");
+        }
+        if (isSticky()) {
+            return reads.get();
+        }
+        stick();
+        try {
+            return reads.get();
+        } finally {
+            unstick();
+        }
+    }
+
+    /**
+     * Gets whether reads on the current thread must go to the primary.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public static boolean isSticky() {
+        return STATE.get().sticky;
+    }
+
+    /**
+     * Gets whether the current thread wrote to the primary since the last
+     * {@link #clear() }.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public static boolean isWritten() {
+        return STATE.get().written;
+    }
+
+    /**
+     * Lets reads on the current thread go to replicas again.
+     */
+    public static void clear() {
+        STATE.remove();
+    }
+
+    private static final class State {
+
+        private boolean sticky;
+        private boolean written;
+    }
+}
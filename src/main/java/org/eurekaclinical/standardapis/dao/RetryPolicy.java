@@ -0,0 +1,132 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many times to attempt an operation that failed because of a
+ * concurrent change, and how long to wait between attempts. Waits grow
+ * exponentially from an initial delay up to a maximum, and each wait is
+ * drawn at random from the upper half of its range so that writers that
+ * collided do not retry in lockstep. Instances are immutable.
+ *
+ * @author Andrew Post
+ */
+public final class RetryPolicy {
+
+    private static final RetryPolicy NONE = new RetryPolicy(1, 0, 0,
+            TimeUnit.MILLISECONDS);
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * Creates a retry policy.
+     *
+     * @param maxAttempts the maximum number of attempts, including the first.
+     * Must be positive.
+     * @param initialDelay the wait before the second attempt. Cannot be
+     * negative.
+     * @param maxDelay the longest wait. Cannot be less than the initial
+     * delay.
+     * @param unit the unit of the delays. Cannot be <code>null</code>.
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay,
+            TimeUnit unit) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        if (initialDelay < 0) {
+            throw new IllegalArgumentException(
+                    "initialDelay cannot be negative");
+        }
+        if (maxDelay < initialDelay) {
+            throw new IllegalArgumentException(
+                    "maxDelay cannot be less than initialDelay");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = unit.toMillis(initialDelay);
+        this.maxDelayMillis = unit.toMillis(maxDelay);
+    }
+
+    /**
+     * Gets a policy that makes one attempt.
+     *
+     * @return the policy.
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Gets a policy that makes up to 5 attempts, waiting from 20
+     * milliseconds up to 1 second between them.
+     *
+     * @return the policy.
+     */
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(5, 20, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the maximum number of attempts, including the first.
+     *
+     * @return the number of attempts.
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Gets how long to wait after a failed attempt.
+     *
+     * @param attempt the number of the attempt that failed, starting with 1.
+     * @return the wait in milliseconds.
+     */
+    public long getDelayMillis(int attempt) {
+        if (attempt < 1) {
+            throw new IllegalArgumentException("attempt must be positive");
+        }
+        if (this.initialDelayMillis == 0) {
+            return 0;
+        }
+        long ceiling = this.initialDelayMillis;
+        for (int i = 1; i < attempt && ceiling < this.maxDelayMillis; i++) {
+            ceiling <<= 1;
+        }
+        ceiling = Math.min(ceiling, this.maxDelayMillis);
+        long floor = ceiling / 2;
+        return floor + ThreadLocalRandom.current().nextLong(
+                ceiling - floor + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" + "maxAttempts=" + this.maxAttempts
+                + ", initialDelayMillis=" + this.initialDelayMillis
+                + ", maxDelayMillis=" + this.maxDelayMillis + '}';
+    }
+}
@@ -0,0 +1,58 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * An entry in a {@link RoleInvalidationStore}.
+ *
+ * @author Andrew Post
+ */
+public final class RoleInvalidation {
+
+    private final long sequence;
+    private final String username;
+
+    /**
+     * Creates an invalidation.
+     *
+     * @param sequence the entry's sequence number in the log.
+     * @param username the username whose roles changed, or <code>null</code>
+     * if the roles of any number of users may have changed.
+     */
+    public RoleInvalidation(long sequence, String username) {
+        this.sequence = sequence;
+        this.username = username;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the username whose roles changed.
+     *
+     * @return the username, or <code>null</code> if the roles of any number
+     * of users may have changed.
+     */
+    public String getUsername() {
+        return username;
+    }
+}
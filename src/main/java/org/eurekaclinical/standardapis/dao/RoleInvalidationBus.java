@@ -0,0 +1,82 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Service provider interface for telling every node of a cluster that cached
+ * role information is stale. Code that changes roles publishes through the
+ * bus, which {@link AbstractJpaUserDao} and {@link AbstractJpaRoleDao} do
+ * automatically when one is set on them, and role caches such as the one in
+ * {@link org.eurekaclinical.standardapis.filter.AbstractRolesFilter}
+ * subscribe to it and refresh lazily. {@link LocalRoleInvalidationBus}
+ * notifies subscribers in the same JVM, and
+ * {@link PollingRoleInvalidationBus} also relays notifications between JVMs
+ * through a shared {@link RoleInvalidationStore}.
+ *
+ * Subscribers must not learn of a change before it is committed, or they may
+ * reload the old roles and cache them as current. Buses that notify
+ * subscribers as soon as they are called are therefore called by the data
+ * access objects only after the transaction commits, as described in
+ * {@link GenericDao#runAfterCommit(javax.persistence.EntityManager, java.lang.Runnable) }.
+ * Buses whose publishing takes part in the caller's transaction say so with
+ * {@link #isTransactional() } and are called within it.
+ *
+ * @author Andrew Post
+ */
+public interface RoleInvalidationBus {
+
+    /**
+     * Publishes that a user's roles have changed.
+     *
+     * @param username the user's username. Cannot be <code>null</code>.
+     */
+    void invalidateUser(String username);
+
+    /**
+     * Publishes that the roles of any number of users may have changed.
+     */
+    void invalidateAll();
+
+    /**
+     * Gets whether publishing takes part in the caller's transaction, so that
+     * subscribers are notified only once it commits and never if it rolls
+     * back. The default is <code>false</code>.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    default boolean isTransactional() {
+        return false;
+    }
+
+    /**
+     * Adds a subscriber.
+     *
+     * @param listener the subscriber. Cannot be <code>null</code>.
+     */
+    void subscribe(RoleInvalidationListener listener);
+
+    /**
+     * Removes a subscriber.
+     *
+     * @param listener the subscriber.
+     */
+    void unsubscribe(RoleInvalidationListener listener);
+}
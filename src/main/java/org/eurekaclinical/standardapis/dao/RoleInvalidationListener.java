@@ -0,0 +1,94 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives notifications from a {@link RoleInvalidationBus} that cached role
+ * information is stale.
+ *
+ * Buses that order their invalidations also pass a version with each one.
+ * Versions only increase, including across restarts and between JVMs that
+ * share a bus, so a listener may compare them with versions that it stored
+ * earlier or that another JVM stored. Listeners that only need to know that
+ * something changed may implement the unversioned methods alone.
+ *
+ * @author Andrew Post
+ */
+public interface RoleInvalidationListener {
+
+    /**
+     * Called when a user's roles have changed.
+     *
+     * @param username the user's username.
+     */
+    void userInvalidated(String username);
+
+    /**
+     * Called when the roles of any number of users may have changed, for
+     * example, because a role was renamed or removed.
+     */
+    void allInvalidated();
+
+    /**
+     * Called when a user's roles have changed, with the version of the
+     * change. The default implementation calls
+     * {@link #userInvalidated(java.lang.String) }.
+     *
+     * @param username the user's username.
+     * @param version the version of the change.
+     */
+    default void userInvalidated(String username, long version) {
+        userInvalidated(username);
+    }
+
+    /**
+     * Called when the roles of any number of users may have changed, with the
+     * version of the change. The default implementation calls
+     * {@link #allInvalidated() }.
+     *
+     * @param version the version of the change.
+     */
+    default void allInvalidated(long version) {
+        allInvalidated();
+    }
+
+    /**
+     * Called when every invalidation with a version at or below the given
+     * one has been delivered to this listener. The default implementation
+     * does nothing.
+     *
+     * @param version the version.
+     */
+    default void versionsDelivered(long version) {
+    }
+
+    /**
+     * Called when this listener starts receiving versioned invalidations.
+     * Invalidations with a version at or below the given one may have
+     * happened without being delivered to this listener, so it should treat
+     * anything it stored before with a lower version as possibly stale. The
+     * default implementation does nothing.
+     *
+     * @param version the version as of which delivery starts.
+     */
+    default void versionsReset(long version) {
+    }
+}
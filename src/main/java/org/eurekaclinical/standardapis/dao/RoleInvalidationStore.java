@@ -0,0 +1,69 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * Transport for {@link PollingRoleInvalidationBus}: a shared, append-only log
+ * of role invalidations that every node polls, for example, a database table
+ * with a sequence-generated key.
+ *
+ * @author Andrew Post
+ */
+public interface RoleInvalidationStore {
+
+    /**
+     * Appends an invalidation to the log.
+     *
+     * @param username the username whose roles changed, or <code>null</code>
+     * if the roles of any number of users may have changed.
+     */
+    void append(String username);
+
+    /**
+     * Reads the invalidations appended after the one with the given sequence
+     * number, in order of sequence number.
+     *
+     * @param sequence a sequence number, or -1 to read from the beginning.
+     * @param maxResults the maximum number of invalidations to return.
+     * @return the invalidations. Guaranteed not <code>null</code>.
+     */
+    List<RoleInvalidation> readAfter(long sequence, int maxResults);
+
+    /**
+     * Gets whether appends take part in the caller's transaction, so that
+     * they become visible to readers only once it commits. The default is
+     * <code>false</code>.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    default boolean isTransactional() {
+        return false;
+    }
+
+    /**
+     * Gets the sequence number of the most recently appended invalidation.
+     *
+     * @return the sequence number, or -1 if the log is empty.
+     */
+    long getLastSequence();
+}
@@ -0,0 +1,170 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Role versions, per user and global, that let callers check whether cached
+ * roles are current without querying the database. Subscribe an instance to
+ * the {@link RoleInvalidationBus} that the user and role data access objects
+ * publish to, so that the versions advance whenever those objects change.
+ *
+ * The versions are the ones that the bus assigns to its invalidations, which
+ * only increase across restarts and are shared by every JVM that uses the
+ * same bus, so a version stored in a replicated or persisted session stays
+ * comparable. A user's version is the larger of the version of the last
+ * invalidation of that user and the version of the last invalidation of
+ * everyone. Store {@link #getDeliveredVersion() } with roles as they are
+ * loaded, reading it before the load so that a change made during the load is
+ * not missed, and reload them when {@link #isCurrent(java.lang.String, java.lang.Long) }
+ * returns <code>false</code>.
+ *
+ * If the bus passes no versions, versions are assigned locally from the last
+ * delivered version and are comparable only within this instance.
+ *
+ * @author Andrew Post
+ */
+public final class RoleVersions implements RoleInvalidationListener {
+
+    private final ConcurrentMap<String, Long> userVersions;
+    private volatile long globalVersion;
+    private volatile long deliveredVersion;
+
+    /**
+     * Creates role versions with every user at version -1.
+     */
+    public RoleVersions() {
+        this.userVersions = new ConcurrentHashMap<>();
+        this.globalVersion = -1;
+        this.deliveredVersion = -1;
+    }
+
+    /**
+     * Gets the version of the last invalidation of a user's roles.
+     *
+     * @param username the user's username. Cannot be <code>null</code>.
+     * @return the version.
+     */
+    public long getVersion(String username) {
+        if (username == null) {
+            throw new IllegalArgumentException("username cannot be null");
+        }
+        long global = this.globalVersion;
+        Long user = this.userVersions.get(username);
+        return user != null && user > global ? user : global;
+    }
+
+    /**
+     * Gets the version at or below which every invalidation has been
+     * delivered. Roles loaded after reading it reflect every change up to it.
+     *
+     * @return the version.
+     */
+    public long getDeliveredVersion() {
+        return this.deliveredVersion;
+    }
+
+    /**
+     * Gets whether roles stored with the given version still are current,
+     * that is, whether no invalidation of the user's roles with a higher
+     * version has been delivered.
+     *
+     * @param username the user's username. Cannot be <code>null</code>.
+     * @param version the version stored with the roles, as returned by
+     * {@link #getDeliveredVersion() } before they were loaded, or
+     * <code>null</code> if none was stored.
+     * @return <code>true</code> if the roles are current, <code>false</code>
+     * if they must be reloaded.
+     */
+    public boolean isCurrent(String username, Long version) {
+        return version != null && getVersion(username) <= version;
+    }
+
+    /**
+     * Advances the role version of one user to a locally assigned version.
+     *
+     * @param username the user's username.
+     */
+    @Override
+    public synchronized void userInvalidated(String username) {
+        long version = this.deliveredVersion + 1;
+        userInvalidated(username, version);
+        versionsDelivered(version);
+    }
+
+    /**
+     * Advances the role version of every user to a locally assigned version.
+     */
+    @Override
+    public synchronized void allInvalidated() {
+        long version = this.deliveredVersion + 1;
+        allInvalidated(version);
+        versionsDelivered(version);
+    }
+
+    /**
+     * Advances the role version of one user.
+     *
+     * @param username the user's username.
+     * @param version the version of the change.
+     */
+    @Override
+    public void userInvalidated(String username, long version) {
+        if (username != null) {
+            this.userVersions.merge(username, version, Math::max);
+        }
+    }
+
+    /**
+     * Advances the role version of every user, and forgets per-user versions
+     * that the new global version supersedes.
+     *
+     * @param version the version of the change.
+     */
+    @Override
+    public synchronized void allInvalidated(long version) {
+        if (version > this.globalVersion) {
+            this.globalVersion = version;
+            this.userVersions.values().removeIf(v -> v <= version);
+        }
+    }
+
+    @Override
+    public synchronized void versionsDelivered(long version) {
+        if (version > this.deliveredVersion) {
+            this.deliveredVersion = version;
+        }
+    }
+
+    /**
+     * Treats every user's roles as changed at the given version, since
+     * invalidations up to it may not have been delivered, and records them as
+     * delivered.
+     *
+     * @param version the version as of which delivery starts.
+     */
+    @Override
+    public synchronized void versionsReset(long version) {
+        allInvalidated(version);
+        versionsDelivered(version);
+    }
+}
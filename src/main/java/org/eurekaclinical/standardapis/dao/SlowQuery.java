@@ -0,0 +1,131 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+
+/**
+ * A query that took longer than the threshold of a {@link SlowQueryDetector}.
+ * It records the shape of the query, that is, the entity, attribute,
+ * comparator and number of values in an IN list, but never the values
+ * themselves, so that it is safe to log and to expose over JMX when the data
+ * are protected health information.
+ *
+ * @author Andrew Post
+ */
+public final class SlowQuery {
+
+    private final String entityClass;
+    private final String method;
+    private final String attribute;
+    private final String comparator;
+    private final int inListSize;
+    private final String dao;
+    private final long elapsedNanos;
+    private final long timestamp;
+
+    SlowQuery(String entityClass, String method, String attribute,
+            String comparator, int inListSize, String dao, long elapsedNanos,
+            long timestamp) {
+        this.entityClass = entityClass;
+        this.method = method;
+        this.attribute = attribute;
+        this.comparator = comparator;
+        this.inListSize = inListSize;
+        this.dao = dao;
+        this.elapsedNanos = elapsedNanos;
+        this.timestamp = timestamp;
+    }
+
+    public String getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Gets the name of the {@link DatabaseSupport} or {@link GenericDao}
+     * method that ran the query.
+     *
+     * @return the method name.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the attribute or path in the query's where clause.
+     *
+     * @return the attribute name, or <code>null</code> if the query has no
+     * attribute criteria.
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Gets the comparator in the query's where clause.
+     *
+     * @return the comparator, or <code>null</code> if the query has no
+     * comparator criteria.
+     */
+    public String getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Gets the number of values in the query's IN list.
+     *
+     * @return the number of values, or -1 if the query has no IN list.
+     */
+    public int getInListSize() {
+        return inListSize;
+    }
+
+    /**
+     * Gets the data access object that ran the query.
+     *
+     * @return the class name of the data access object or, if the query was
+     * run through {@link DatabaseSupport} directly, of its caller.
+     */
+    public String getDao() {
+        return dao;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    public Date getTimestamp() {
+        return new Date(timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return "SlowQuery{" + "entityClass=" + entityClass
+                + ", method=" + method + ", attribute=" + attribute
+                + ", comparator=" + comparator + ", inListSize=" + inListSize
+                + ", dao=" + dao + ", elapsedMillis=" + getElapsedMillis()
+                + '}';
+    }
+}
@@ -0,0 +1,170 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flags queries run by {@link DatabaseSupport} and {@link GenericDao} that
+ * take longer than a configurable threshold, and keeps the slowest of them in
+ * a fixed-size, lock-free ring buffer that can be dumped on demand, for
+ * example, over JMX. Only the shape of each query is kept (see
+ * {@link SlowQuery}), never its parameter values. Each slow query is also
+ * logged at the warning level.
+ *
+ * Checking a query against the threshold costs one comparison; the buffer is
+ * touched only for queries that exceed it.
+ *
+ * @author Andrew Post
+ */
+public final class SlowQueryDetector implements SlowQueryDetectorMXBean {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(SlowQueryDetector.class);
+
+    private static final int MAX_ATTEMPTS = 4;
+
+    private final AtomicReferenceArray<SlowQuery> slowest;
+    private final AtomicLong cursor;
+    private final LongAdder slowQueryCount;
+    private volatile long thresholdNanos;
+
+    /**
+     * Creates a slow query detector.
+     *
+     * @param threshold queries taking longer than this are slow. Cannot be
+     * negative.
+     * @param unit the unit of the threshold. Cannot be <code>null</code>.
+     * @param capacity the number of slowest queries to keep. Must be positive.
+     */
+    public SlowQueryDetector(long threshold, TimeUnit unit, int capacity) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold cannot be negative");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.slowest = new AtomicReferenceArray<>(capacity);
+        this.cursor = new AtomicLong();
+        this.slowQueryCount = new LongAdder();
+    }
+
+    @Override
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.thresholdNanos);
+    }
+
+    @Override
+    public void setThresholdMillis(long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException(
+                    "thresholdMillis cannot be negative");
+        }
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Gets whether a query that took the given time is slow.
+     *
+     * @param elapsedNanos the query's latency.
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos > this.thresholdNanos;
+    }
+
+    /**
+     * Records a slow query. If the buffer is full, the query replaces the
+     * fastest query in the buffer, if the fastest is faster than it.
+     *
+     * @param slowQuery the slow query. Cannot be <code>null</code>.
+     */
+    void record(SlowQuery slowQuery) {
+        this.slowQueryCount.increment();
+        LOGGER.warn("{}", slowQuery);
+        int capacity = this.slowest.length();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int start = (int) (this.cursor.getAndIncrement() % capacity);
+            int victimIndex = -1;
+            SlowQuery victim = null;
+            for (int i = 0; i < capacity; i++) {
+                int index = (start + i) % capacity;
+                SlowQuery current = this.slowest.get(index);
+                if (current == null) {
+                    victimIndex = index;
+                    victim = null;
+                    break;
+                }
+                if (victim == null
+                        || current.getElapsedNanos() < victim.getElapsedNanos()) {
+                    victimIndex = index;
+                    victim = current;
+                }
+            }
+            if (victim != null
+                    && victim.getElapsedNanos() >= slowQuery.getElapsedNanos()) {
+                return;
+            }
+            if (this.slowest.compareAndSet(victimIndex, victim, slowQuery)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return this.slowQueryCount.sum();
+    }
+
+    @Override
+    public List<SlowQuery> getSlowQueries() {
+        List<SlowQuery> result = new ArrayList<>(this.slowest.length());
+        for (int i = 0, n = this.slowest.length(); i < n; i++) {
+            SlowQuery slowQuery = this.slowest.get(i);
+            if (slowQuery != null) {
+                result.add(slowQuery);
+            }
+        }
+        Collections.sort(result, (q1, q2)
+                -> Long.compare(q2.getElapsedNanos(), q1.getElapsedNanos()));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0, n = this.slowest.length(); i < n; i++) {
+            this.slowest.set(i, null);
+        }
+        this.slowQueryCount.reset();
+    }
+}
@@ -0,0 +1,55 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * JMX management interface for {@link SlowQueryDetector}.
+ *
+ * @author Andrew Post
+ */
+public interface SlowQueryDetectorMXBean {
+
+    long getThresholdMillis();
+
+    void setThresholdMillis(long thresholdMillis);
+
+    /**
+     * Gets the number of queries that have exceeded the threshold, including
+     * those that are no longer among the slowest kept.
+     *
+     * @return the number of slow queries.
+     */
+    long getSlowQueryCount();
+
+    /**
+     * Gets the slowest queries kept, slowest first.
+     *
+     * @return the slow queries. Guaranteed not <code>null</code>.
+     */
+    List<SlowQuery> getSlowQueries();
+
+    /**
+     * Discards the slow queries kept and resets the count.
+     */
+    void reset();
+}
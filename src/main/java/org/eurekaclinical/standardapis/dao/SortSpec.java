@@ -0,0 +1,328 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+
+/**
+ * The order of a query's results: one or more attributes or paths, each
+ * ascending or descending, with nulls first, last or wherever the database
+ * puts them. Because JPA 2.1 has no syntax for null ordering, nulls first or
+ * last is expressed as an extra leading <code>CASE</code> sort key, which
+ * databases cannot serve from an index; prefer the default for large
+ * results.
+ *
+ * Sort specifications are immutable and may be shared between threads.
+ *
+ * @author Andrew Post
+ * @param <T> the type of the entity.
+ */
+public final class SortSpec<T> {
+
+    /**
+     * The direction of a sort key.
+     */
+    public static enum Direction {
+        ASC,
+        DESC
+    }
+
+    /**
+     * Where nulls go.
+     */
+    public static enum Nulls {
+        /**
+         * Wherever the database puts them.
+         */
+        DEFAULT,
+        FIRST,
+        LAST
+    }
+
+    private final List<Key<T, ?>> keys;
+
+    private SortSpec(List<Key<T, ?>> keys) {
+        this.keys = Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Sorts ascending by an attribute.
+     *
+     * @param <T> the type of the entity.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @return the sort specification.
+     */
+    public static <T> SortSpec<T> asc(SingularAttribute<T, ?> attribute) {
+        return by(attribute, Direction.ASC, Nulls.DEFAULT);
+    }
+
+    /**
+     * Sorts descending by an attribute.
+     *
+     * @param <T> the type of the entity.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @return the sort specification.
+     */
+    public static <T> SortSpec<T> desc(SingularAttribute<T, ?> attribute) {
+        return by(attribute, Direction.DESC, Nulls.DEFAULT);
+    }
+
+    /**
+     * Sorts by an attribute.
+     *
+     * @param <T> the type of the entity.
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param direction the direction. Cannot be <code>null</code>.
+     * @param nulls where nulls go. Cannot be <code>null</code>.
+     * @return the sort specification.
+     */
+    public static <T> SortSpec<T> by(SingularAttribute<T, ?> attribute,
+            Direction direction, Nulls nulls) {
+        return new SortSpec<T>(new ArrayList<>()).then(attribute, direction,
+                nulls);
+    }
+
+    /**
+     * Sorts by a path.
+     *
+     * @param <T> the type of the entity.
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param direction the direction. Cannot be <code>null</code>.
+     * @param nulls where nulls go. Cannot be <code>null</code>.
+     * @return the sort specification.
+     */
+    public static <T> SortSpec<T> by(QueryPathProvider<T, ?> provider,
+            Direction direction, Nulls nulls) {
+        return new SortSpec<T>(new ArrayList<>()).then(provider, direction,
+                nulls);
+    }
+
+    /**
+     * Adds an ascending attribute to break ties.
+     *
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @return a new sort specification.
+     */
+    public SortSpec<T> thenAsc(SingularAttribute<T, ?> attribute) {
+        return then(attribute, Direction.ASC, Nulls.DEFAULT);
+    }
+
+    /**
+     * Adds a descending attribute to break ties.
+     *
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @return a new sort specification.
+     */
+    public SortSpec<T> thenDesc(SingularAttribute<T, ?> attribute) {
+        return then(attribute, Direction.DESC, Nulls.DEFAULT);
+    }
+
+    /**
+     * Adds an attribute to break ties.
+     *
+     * @param attribute the attribute. Cannot be <code>null</code>.
+     * @param direction the direction. Cannot be <code>null</code>.
+     * @param nulls where nulls go. Cannot be <code>null</code>.
+     * @return a new sort specification.
+     */
+    public SortSpec<T> then(SingularAttribute<T, ?> attribute,
+            Direction direction, Nulls nulls) {
+        if (attribute == null) {
+            throw new IllegalArgumentException("attribute cannot be null");
+        }
+        return with(new Key<>(attribute.getName(),
+                (root, builder) -> root.get(attribute), direction, nulls));
+    }
+
+    /**
+     * Adds a path to break ties.
+     *
+     * @param provider provides the path. Cannot be <code>null</code>.
+     * @param direction the direction. Cannot be <code>null</code>.
+     * @param nulls where nulls go. Cannot be <code>null</code>.
+     * @return a new sort specification.
+     */
+    public SortSpec<T> then(QueryPathProvider<T, ?> provider,
+            Direction direction, Nulls nulls) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider cannot be null");
+        }
+        return with(new Key<>(provider.getClass().getName(),
+                provider::getPath, direction, nulls));
+    }
+
+    /**
+     * Gets the number of sort keys.
+     *
+     * @return the number of sort keys.
+     */
+    public int size() {
+        return this.keys.size();
+    }
+
+    /**
+     * Gets this specification's shape, for example,
+     * <code>lastName ASC, firstName ASC NULLS LAST</code>.
+     *
+     * @return the shape.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (Key<T, ?> key : this.keys) {
+            if (buf.length() > 0) {
+                buf.append(", ");
+            }
+            buf.append(key.name).append(' ').append(key.direction);
+            if (key.nulls != Nulls.DEFAULT) {
+                buf.append(" NULLS ").append(key.nulls);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Creates the order by clause.
+     *
+     * @param root the query root.
+     * @param builder the criteria builder.
+     * @return the orders.
+     */
+    List<Order> toOrders(Root<T> root, CriteriaBuilder builder) {
+        List<Order> result = new ArrayList<>(this.keys.size() * 2);
+        for (Key<T, ?> key : this.keys) {
+            Path<?> path = key.path.getPath(root, builder);
+            if (key.nulls != Nulls.DEFAULT) {
+                Expression<Integer> nullsRank = builder.<Integer>selectCase()
+                        .when(builder.isNull(path),
+                                key.nulls == Nulls.FIRST ? 0 : 1)
+                        .otherwise(key.nulls == Nulls.FIRST ? 1 : 0);
+                result.add(builder.asc(nullsRank));
+            }
+            result.add(key.direction == Direction.ASC
+                    ? builder.asc(path) : builder.desc(path));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a predicate that matches the rows after the row with the given
+     * sort key values, for keyset pagination. For keys <code>(a, b)</code>
+     * ascending, that is <code>a &gt; ? OR (a = ? AND b &gt; ?)</code>. Keys
+     * with {@link Nulls#FIRST} or {@link Nulls#LAST} compare their null rank
+     * before their value, as {@link #toOrders(javax.persistence.criteria.Root, javax.persistence.criteria.CriteriaBuilder) }
+     * orders them, so their values may be <code>null</code>. Keys with
+     * {@link Nulls#DEFAULT} leave null placement to the database, so their
+     * values cannot be <code>null</code>, and rows with a null in such a key
+     * may be skipped.
+     *
+     * @param root the query root.
+     * @param builder the criteria builder.
+     * @param values the sort key values of the last row of the previous page,
+     * one per key. Only keys with {@link Nulls#FIRST} or {@link Nulls#LAST}
+     * may have <code>null</code> values.
+     * @param bindings collects the parameters.
+     * @return the predicate.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Predicate after(Root<T> root, CriteriaBuilder builder, Object[] values,
+            QueryCriterion.Bindings bindings) {
+        if (values.length != this.keys.size()) {
+            throw new IllegalArgumentException("Expected "
+                    + this.keys.size() + " keyset values but got "
+                    + values.length);
+        }
+        List<Predicate> disjuncts = new ArrayList<>(values.length);
+        List<Predicate> equalities = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            Key<T, ?> key = this.keys.get(i);
+            Object value = values[i];
+            if (value == null && key.nulls == Nulls.DEFAULT) {
+                throw new IllegalArgumentException(
+                        "keyset values cannot be null for keys without NULLS FIRST or NULLS LAST");
+            }
+            Path path = key.path.getPath(root, builder);
+            Predicate beyond;
+            Predicate equality;
+            if (value == null) {
+                beyond = key.nulls == Nulls.FIRST
+                        ? builder.isNotNull(path) : null;
+                equality = builder.isNull(path);
+            } else {
+                ParameterExpression parameter = bindings.add(builder,
+                        value.getClass(), value);
+                beyond = key.direction == Direction.ASC
+                        ? builder.greaterThan(path, parameter)
+                        : builder.lessThan(path, parameter);
+                if (key.nulls == Nulls.LAST) {
+                    beyond = builder.or(beyond, builder.isNull(path));
+                }
+                equality = builder.equal(path, parameter);
+            }
+            if (beyond != null) {
+                List<Predicate> conjuncts = new ArrayList<>(equalities);
+                conjuncts.add(beyond);
+                disjuncts.add(builder.and(conjuncts.toArray(
+                        new Predicate[conjuncts.size()])));
+            }
+            equalities.add(equality);
+        }
+        return builder.or(disjuncts.toArray(new Predicate[disjuncts.size()]));
+    }
+
+    private SortSpec<T> with(Key<T, ?> key) {
+        List<Key<T, ?>> newKeys = new ArrayList<>(this.keys);
+        newKeys.add(key);
+        return new SortSpec<>(newKeys);
+    }
+
+    private static final class Key<T, Y> {
+
+        private final String name;
+        private final QueryPathProvider<T, Y> path;
+        private final Direction direction;
+        private final Nulls nulls;
+
+        Key(String name, QueryPathProvider<T, Y> path, Direction direction,
+                Nulls nulls) {
+            if (direction == null) {
+                throw new IllegalArgumentException(
+                        "direction cannot be null");
+            }
+            if (nulls == null) {
+                throw new IllegalArgumentException("nulls cannot be null");
+            }
+            this.name = name;
+            this.path = path;
+            this.direction = direction;
+            this.nulls = nulls;
+        }
+    }
+}
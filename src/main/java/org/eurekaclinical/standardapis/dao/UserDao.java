@@ -21,6 +21,8 @@ package org.eurekaclinical.standardapis.dao;
  */
 
 import java.security.Principal;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import javax.servlet.http.HttpServletRequest;
 import org.eurekaclinical.standardapis.entity.RoleEntity;
 import org.eurekaclinical.standardapis.entity.UserEntity;
@@ -39,4 +41,117 @@ public interface UserDao<U extends UserEntity<? extends RoleEntity>> extends Dao
     
     U getByPrincipal(Principal principal);
 
+    /**
+     * Grants a role to many users. Users who already have the role and
+     * usernames that match no user are skipped. The default implementation
+     * looks up and {@link #update(java.lang.Object) updates} each user in
+     * turn, reading from the primary. Implementations may override it to avoid loading users' role
+     * collections.
+     *
+     * @param role the role to grant. Cannot be <code>null</code>.
+     * @param usernames the users' usernames. Cannot be <code>null</code>.
+     * @return the number of users who were granted the role.
+     */
+    default int grantRoleToUsers(RoleEntity role,
+            Collection<String> usernames) {
+        if (role == null) {
+            throw new IllegalArgumentException("role cannot be null");
+        }
+        if (usernames == null) {
+            throw new IllegalArgumentException("usernames cannot be null");
+        }
+        return ReadYourWrites.onPrimary(() -> {
+            int result = 0;
+            for (String username : new LinkedHashSet<>(usernames)) {
+                U user = username != null ? getByName(username) : null;
+                if (user != null && user.getRoles().stream()
+                        .noneMatch(r -> r.getId().equals(role.getId()))) {
+                    @SuppressWarnings("unchecked")
+                    UserEntity<RoleEntity> roleHolder
+                            = (UserEntity<RoleEntity>) user;
+                    roleHolder.addRole(role);
+                    update(user);
+                    result++;
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Revokes a role from many users. The default implementation looks up
+     * and {@link #update(java.lang.Object) updates} each user in turn,
+     * reading from the primary. Implementations may override it to avoid loading users' role
+     * collections.
+     *
+     * @param role the role to revoke. Cannot be <code>null</code>.
+     * @param usernames the users' usernames. Cannot be <code>null</code>.
+     * @return the number of users from whom the role was revoked.
+     */
+    default int revokeRoleFromUsers(RoleEntity role,
+            Collection<String> usernames) {
+        if (role == null) {
+            throw new IllegalArgumentException("role cannot be null");
+        }
+        if (usernames == null) {
+            throw new IllegalArgumentException("usernames cannot be null");
+        }
+        return ReadYourWrites.onPrimary(() -> {
+            int result = 0;
+            for (String username : new LinkedHashSet<>(usernames)) {
+                U user = username != null ? getByName(username) : null;
+                if (user != null && revokeRole(user, role)) {
+                    result++;
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Revokes a role from every user who has it. The default implementation
+     * {@link #update(java.lang.Object) updates} each user who has the role
+     * in turn, reading from the primary. Implementations may override it to avoid loading every user.
+     *
+     * @param role the role to revoke. Cannot be <code>null</code>.
+     * @return the number of users from whom the role was revoked.
+     */
+    default int revokeRoleFromAll(RoleEntity role) {
+        if (role == null) {
+            throw new IllegalArgumentException("role cannot be null");
+        }
+        return ReadYourWrites.onPrimary(() -> {
+            int result = 0;
+            for (U user : getAll()) {
+                if (revokeRole(user, role)) {
+                    result++;
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Removes a role from a user and {@link #update(java.lang.Object) updates}
+     * the user if the user has the role. It is called by the default
+     * implementations of the bulk revoke methods.
+     *
+     * @param user the user. Cannot be <code>null</code>.
+     * @param role the role. Cannot be <code>null</code>.
+     * @return whether the user had the role.
+     */
+    default boolean revokeRole(U user, RoleEntity role) {
+        for (RoleEntity r : user.getRoles()) {
+            if (r.getId().equals(role.getId())) {
+                @SuppressWarnings("unchecked")
+                UserEntity<RoleEntity> roleHolder
+                        = (UserEntity<RoleEntity>) user;
+                roleHolder.removeRole(r);
+                update(user);
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
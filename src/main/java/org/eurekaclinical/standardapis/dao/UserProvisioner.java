@@ -0,0 +1,416 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import org.eurekaclinical.standardapis.entity.CanonicalUsernameEntity;
+import org.eurekaclinical.standardapis.entity.RoleEntity;
+import org.eurekaclinical.standardapis.entity.UserEntity;
+import org.eurekaclinical.standardapis.entity.UserTemplateEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates users in bulk from a stream of usernames, for example, a cohort
+ * exported from an institutional directory. Every new user gets the roles of
+ * a user template, which is resolved once per run.
+ *
+ * Usernames are processed in batches. Each batch runs in its own
+ * resource-local transaction on one entity manager, which is cleared after
+ * each batch so that memory use does not grow with the size of the stream.
+ * Existing users are found with one query per batch and are left alone. The
+ * inserts of a batch are flushed together, so they are sent as JDBC batches
+ * if the persistence provider is configured for it, for example, with
+ * <code>hibernate.jdbc.batch_size</code> and a non-identity id generator. If
+ * a batch fails, it is rolled back and its usernames are retried one per
+ * transaction, so that one bad username fails alone.
+ *
+ * By default, usernames are matched exactly. Call
+ * {@link #setUsernameMatching(org.eurekaclinical.standardapis.dao.AbstractJpaUserDao) }
+ * to match them the way a user data access object does, in which case
+ * usernames that differ only in ways the match ignores are provisioned once.
+ *
+ * New users are not published to a {@link RoleInvalidationBus}, since no
+ * roles can have been cached for them yet. If a {@link ChangeEventPublisher}
+ * is set, their creation is published to it after each transaction commits.
+ *
+ * @author Andrew Post
+ * @param <U> the user entity class.
+ */
+public class UserProvisioner<U extends UserEntity<?>> {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(UserProvisioner.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<U> userClass;
+    private final Function<String, U> userFactory;
+    private final int batchSize;
+    private volatile AbstractJpaUserDao.UsernameLookup usernameLookup
+            = AbstractJpaUserDao.UsernameLookup.EXACT;
+    private volatile String canonicalUsernameAttribute
+            = AbstractJpaUserDao.DEFAULT_CANONICAL_USERNAME_ATTRIBUTE;
+    private volatile Function<String, String> canonicalizer
+            = Function.identity();
+    private volatile ChangeEventPublisher changeEventPublisher;
+
+    /**
+     * Creates a provisioner.
+     *
+     * @param inEntityManagerFactory creates the entity manager for each run.
+     * It must be configured for resource-local transactions. Cannot be
+     * <code>null</code>.
+     * @param inUserClass the user entity class. Cannot be <code>null</code>.
+     * @param inUserFactory creates a new, unsaved user with the given
+     * username and any other required fields set. Cannot be
+     * <code>null</code>.
+     * @param inBatchSize the number of usernames per batch. Must be positive.
+     */
+    public UserProvisioner(EntityManagerFactory inEntityManagerFactory,
+            Class<U> inUserClass, Function<String, U> inUserFactory,
+            int inBatchSize) {
+        if (inEntityManagerFactory == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerFactory cannot be null");
+        }
+        if (inUserClass == null) {
+            throw new IllegalArgumentException("inUserClass cannot be null");
+        }
+        if (inUserFactory == null) {
+            throw new IllegalArgumentException("inUserFactory cannot be null");
+        }
+        if (inBatchSize < 1) {
+            throw new IllegalArgumentException("inBatchSize must be positive");
+        }
+        this.entityManagerFactory = inEntityManagerFactory;
+        this.userClass = inUserClass;
+        this.userFactory = inUserFactory;
+        this.batchSize = inBatchSize;
+    }
+
+    /**
+     * Matches usernames with existing users the way the given user data
+     * access object does, with the same
+     * {@link AbstractJpaUserDao#getUsernameLookup() lookup mode},
+     * {@link AbstractJpaUserDao#getCanonicalUsernameAttribute() canonical username attribute}
+     * and
+     * {@link AbstractJpaUserDao#canonicalizeUsername(java.lang.String) canonicalization},
+     * and sets the canonical username of new users that store it.
+     *
+     * @param userDao the user data access object. Cannot be
+     * <code>null</code>.
+     */
+    public void setUsernameMatching(AbstractJpaUserDao<?> userDao) {
+        if (userDao == null) {
+            throw new IllegalArgumentException("userDao cannot be null");
+        }
+        this.usernameLookup = userDao.getUsernameLookup();
+        this.canonicalUsernameAttribute
+                = userDao.getCanonicalUsernameAttribute();
+        this.canonicalizer = userDao::canonicalizeUsername;
+    }
+
+    /**
+     * Sets a publisher of change events, to which the creation of each new
+     * user is published after its transaction commits. The default is
+     * <code>null</code>.
+     *
+     * @param changeEventPublisher the publisher, or <code>null</code>.
+     */
+    public void setChangeEventPublisher(
+            ChangeEventPublisher changeEventPublisher) {
+        this.changeEventPublisher = changeEventPublisher;
+    }
+
+    /**
+     * Creates users for the given usernames with the roles of the
+     * auto-authorization template.
+     *
+     * @param templateDao resolves the
+     * {@link UserTemplateDao#getAutoAuthorizationTemplate() auto-authorization template}
+     * once. Cannot be <code>null</code>.
+     * @param usernames the usernames. Cannot be <code>null</code>.
+     * @param results receives the result for each username, in order, as each
+     * batch completes. Cannot be <code>null</code>.
+     * @return counts of the results.
+     */
+    public ProvisioningSummary provision(UserTemplateDao<?> templateDao,
+            Stream<String> usernames,
+            Consumer<? super ProvisioningResult> results) {
+        if (templateDao == null) {
+            throw new IllegalArgumentException("templateDao cannot be null");
+        }
+        return provision(templateDao.getAutoAuthorizationTemplate(),
+                usernames, results);
+    }
+
+    /**
+     * Creates users for the given usernames with the given template's roles.
+     *
+     * @param template the template, or <code>null</code> to create users
+     * without roles.
+     * @param usernames the usernames. Cannot be <code>null</code>.
+     * @param results receives the result for each username, in order, as each
+     * batch completes. Cannot be <code>null</code>.
+     * @return counts of the results.
+     */
+    public ProvisioningSummary provision(UserTemplateEntity<?> template,
+            Stream<String> usernames,
+            Consumer<? super ProvisioningResult> results) {
+        if (usernames == null) {
+            throw new IllegalArgumentException("usernames cannot be null");
+        }
+        if (results == null) {
+            throw new IllegalArgumentException("results cannot be null");
+        }
+        List<RoleEntity> roles = template != null
+                ? new ArrayList<>(template.getRoles())
+                : new ArrayList<>();
+        int[] counts = new int[ProvisioningResult.Status.values().length];
+        Consumer<ProvisioningResult> counting = result -> {
+            counts[result.getStatus().ordinal()]++;
+            results.accept(result);
+        };
+        EntityManager entityManager
+                = this.entityManagerFactory.createEntityManager();
+        try {
+            Iterator<String> itr = usernames.iterator();
+            Set<String> batch = new LinkedHashSet<>();
+            while (itr.hasNext()) {
+                String username = itr.next();
+                if (username == null || username.trim().isEmpty()) {
+                    counting.accept(new ProvisioningResult(username,
+                            ProvisioningResult.Status.FAILED, null,
+                            new IllegalArgumentException(
+                                    "username cannot be empty")));
+                    continue;
+                }
+                batch.add(username);
+                if (batch.size() == this.batchSize) {
+                    provisionBatch(entityManager, batch, roles, counting);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                provisionBatch(entityManager, batch, roles, counting);
+            }
+        } finally {
+            entityManager.close();
+        }
+        return new ProvisioningSummary(
+                counts[ProvisioningResult.Status.CREATED.ordinal()],
+                counts[ProvisioningResult.Status.EXISTS.ordinal()],
+                counts[ProvisioningResult.Status.FAILED.ordinal()]);
+    }
+
+    private void provisionBatch(EntityManager entityManager,
+            Set<String> batch, List<RoleEntity> roles,
+            Consumer<ProvisioningResult> results) {
+        Map<String, ProvisioningResult> batchResults = new LinkedHashMap<>();
+        EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+            Set<String> keys = new HashSet<>();
+            for (String username : batch) {
+                keys.add(usernameKey(username));
+            }
+            Set<String> seen = existingUsernames(entityManager, keys);
+            List<RoleEntity> managedRoles = manage(entityManager, roles);
+            List<U> newUsers = new ArrayList<>();
+            for (String username : batch) {
+                if (!seen.add(usernameKey(username))) {
+                    batchResults.put(username, new ProvisioningResult(
+                            username, ProvisioningResult.Status.EXISTS, null,
+                            null));
+                } else {
+                    newUsers.add(newUser(entityManager, username,
+                            managedRoles));
+                }
+            }
+            entityManager.flush();
+            transaction.commit();
+            for (U user : newUsers) {
+                batchResults.put(user.getUsername(), new ProvisioningResult(
+                        user.getUsername(), ProvisioningResult.Status.CREATED,
+                        user.getId(), null));
+                publishCreated(user.getId());
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Batch of {} users failed, retrying one at a time",
+                    batch.size(), ex);
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            entityManager.clear();
+            batchResults.clear();
+            for (String username : batch) {
+                batchResults.put(username,
+                        provisionOne(entityManager, username, roles));
+            }
+        } finally {
+            entityManager.clear();
+        }
+        for (String username : batch) {
+            results.accept(batchResults.get(username));
+        }
+    }
+
+    private ProvisioningResult provisionOne(EntityManager entityManager,
+            String username, List<RoleEntity> roles) {
+        EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+            ProvisioningResult result;
+            if (existingUsernames(entityManager,
+                    Collections.singleton(usernameKey(username))).isEmpty()) {
+                U user = newUser(entityManager, username,
+                        manage(entityManager, roles));
+                entityManager.flush();
+                result = new ProvisioningResult(username,
+                        ProvisioningResult.Status.CREATED, user.getId(), null);
+            } else {
+                result = new ProvisioningResult(username,
+                        ProvisioningResult.Status.EXISTS, null, null);
+            }
+            transaction.commit();
+            if (result.getStatus() == ProvisioningResult.Status.CREATED) {
+                publishCreated(result.getUserId());
+            }
+            return result;
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Could not provision user {}", username, ex);
+            return new ProvisioningResult(username,
+                    ProvisioningResult.Status.FAILED, null, ex);
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            entityManager.clear();
+        }
+    }
+
+    private void publishCreated(Long userId) {
+        ChangeEventPublisher publisher = this.changeEventPublisher;
+        if (publisher != null) {
+            publisher.publish(new ChangeEvent(this.userClass, userId,
+                    null, ChangeEvent.Operation.CREATED,
+                    System.currentTimeMillis()));
+        }
+    }
+
+    private U newUser(EntityManager entityManager, String username,
+            List<RoleEntity> roles) {
+        U user = this.userFactory.apply(username);
+        if (this.usernameLookup
+                == AbstractJpaUserDao.UsernameLookup.CANONICAL_ATTRIBUTE
+                && user instanceof CanonicalUsernameEntity) {
+            ((CanonicalUsernameEntity) user).setCanonicalUsername(
+                    this.canonicalizer.apply(username));
+        }
+        @SuppressWarnings("unchecked")
+        UserEntity<RoleEntity> roleHolder = (UserEntity<RoleEntity>) user;
+        for (RoleEntity role : roles) {
+            roleHolder.addRole(role);
+        }
+        entityManager.persist(user);
+        return user;
+    }
+
+    /**
+     * Gets the form of a username that is compared with existing users: the
+     * username itself if usernames are matched exactly, else its canonical
+     * form.
+     */
+    private String usernameKey(String username) {
+        return this.usernameLookup == AbstractJpaUserDao.UsernameLookup.EXACT
+                ? username : this.canonicalizer.apply(username);
+    }
+
+    /**
+     * Gets which of the given username keys belong to existing users.
+     */
+    private Set<String> existingUsernames(EntityManager entityManager,
+            Set<String> keys) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<String> criteriaQuery = builder.createQuery(String.class);
+        Root<U> root = criteriaQuery.from(this.userClass);
+        Expression<String> key;
+        switch (this.usernameLookup) {
+            case CANONICAL_ATTRIBUTE:
+                key = root.get(this.canonicalUsernameAttribute);
+                break;
+            case LOWER_FUNCTION:
+                key = builder.lower(root.<String>get("username"));
+                break;
+            default:
+                key = root.get("username");
+        }
+        criteriaQuery.select(key).where(key.in(keys));
+        return new HashSet<>(
+                entityManager.createQuery(criteriaQuery).getResultList());
+    }
+
+    /**
+     * Loads the template's roles into the entity manager, so that new users
+     * reference managed roles without overwriting them.
+     */
+    private static List<RoleEntity> manage(EntityManager entityManager,
+            List<RoleEntity> roles) {
+        List<RoleEntity> result = new ArrayList<>(roles.size());
+        for (RoleEntity role : roles) {
+            result.add(entityManager.find(entityClassOf(entityManager, role),
+                    role.getId()));
+        }
+        return result;
+    }
+
+    private static Class<? extends RoleEntity> entityClassOf(
+            EntityManager entityManager, RoleEntity role) {
+        for (EntityType<?> type
+                : entityManager.getMetamodel().getEntities()) {
+            Class<?> javaType = type.getJavaType();
+            if (javaType.isInstance(role)
+                    && RoleEntity.class.isAssignableFrom(javaType)) {
+                return javaType.asSubclass(RoleEntity.class);
+            }
+        }
+        throw new IllegalArgumentException(
+                "Not a mapped role entity: " + role.getClass().getName());
+    }
+}
@@ -0,0 +1,216 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Describes the tables and columns that map users to roles, so that
+ * {@link AbstractJpaUserDao} can grant and revoke a role for many users with
+ * set-based SQL instead of loading each user's role collection. The names are
+ * inserted into SQL as is, so they must not come from user input.
+ *
+ * @author Andrew Post
+ */
+public final class UserRoleJoinTable {
+
+    private final String userTable;
+    private final String userIdColumn;
+    private final String usernameColumn;
+    private final String joinTable;
+    private final String joinUserIdColumn;
+    private final String joinRoleIdColumn;
+    private final String canonicalUsernameColumn;
+
+    /**
+     * Creates a description of a user-role join table whose user table has
+     * no canonical username column.
+     *
+     * @param inUserTable the name of the user table.
+     * @param inUserIdColumn the user table's primary key column.
+     * @param inUsernameColumn the user table's username column.
+     * @param inJoinTable the name of the join table.
+     * @param inJoinUserIdColumn the join table's column that references the
+     * user table.
+     * @param inJoinRoleIdColumn the join table's column that references the
+     * role table.
+     */
+    public UserRoleJoinTable(String inUserTable, String inUserIdColumn,
+            String inUsernameColumn, String inJoinTable,
+            String inJoinUserIdColumn, String inJoinRoleIdColumn) {
+        this(inUserTable, inUserIdColumn, inUsernameColumn, inJoinTable,
+                inJoinUserIdColumn, inJoinRoleIdColumn, null);
+    }
+
+    /**
+     * Creates a description of a user-role join table.
+     *
+     * @param inUserTable the name of the user table.
+     * @param inUserIdColumn the user table's primary key column.
+     * @param inUsernameColumn the user table's username column.
+     * @param inJoinTable the name of the join table.
+     * @param inJoinUserIdColumn the join table's column that references the
+     * user table.
+     * @param inJoinRoleIdColumn the join table's column that references the
+     * role table.
+     * @param inCanonicalUsernameColumn the user table's canonical username
+     * column, which is required when usernames are looked up by
+     * {@link AbstractJpaUserDao.UsernameLookup#CANONICAL_ATTRIBUTE canonical attribute},
+     * or <code>null</code>.
+     */
+    public UserRoleJoinTable(String inUserTable, String inUserIdColumn,
+            String inUsernameColumn, String inJoinTable,
+            String inJoinUserIdColumn, String inJoinRoleIdColumn,
+            String inCanonicalUsernameColumn) {
+        if (inUserTable == null) {
+            throw new IllegalArgumentException("inUserTable cannot be null");
+        }
+        if (inUserIdColumn == null) {
+            throw new IllegalArgumentException("inUserIdColumn cannot be null");
+        }
+        if (inUsernameColumn == null) {
+            throw new IllegalArgumentException(
+                    "inUsernameColumn cannot be null");
+        }
+        if (inJoinTable == null) {
+            throw new IllegalArgumentException("inJoinTable cannot be null");
+        }
+        if (inJoinUserIdColumn == null) {
+            throw new IllegalArgumentException(
+                    "inJoinUserIdColumn cannot be null");
+        }
+        if (inJoinRoleIdColumn == null) {
+            throw new IllegalArgumentException(
+                    "inJoinRoleIdColumn cannot be null");
+        }
+        this.userTable = inUserTable;
+        this.userIdColumn = inUserIdColumn;
+        this.usernameColumn = inUsernameColumn;
+        this.joinTable = inJoinTable;
+        this.joinUserIdColumn = inJoinUserIdColumn;
+        this.joinRoleIdColumn = inJoinRoleIdColumn;
+        this.canonicalUsernameColumn = inCanonicalUsernameColumn;
+    }
+
+    public String getUserTable() {
+        return this.userTable;
+    }
+
+    public String getUserIdColumn() {
+        return this.userIdColumn;
+    }
+
+    public String getUsernameColumn() {
+        return this.usernameColumn;
+    }
+
+    public String getJoinTable() {
+        return this.joinTable;
+    }
+
+    public String getJoinUserIdColumn() {
+        return this.joinUserIdColumn;
+    }
+
+    public String getJoinRoleIdColumn() {
+        return this.joinRoleIdColumn;
+    }
+
+    public String getCanonicalUsernameColumn() {
+        return this.canonicalUsernameColumn;
+    }
+
+    /**
+     * Creates an insert statement that grants a role to the users with the
+     * given number of usernames who do not already have it. Its parameters are
+     * the role id, the usernames, and the role id again. The usernames must be
+     * canonical unless they are matched exactly.
+     *
+     * @param usernameCount the number of usernames.
+     * @param lookup how usernames are matched.
+     * @return the SQL.
+     */
+    String grantSql(int usernameCount,
+            AbstractJpaUserDao.UsernameLookup lookup) {
+        return "INSERT INTO " + this.joinTable + " (" + this.joinUserIdColumn
+                + ", " + this.joinRoleIdColumn + ") SELECT u."
+                + this.userIdColumn + ", ? FROM " + this.userTable
+                + " u WHERE " + usernameMatch(lookup) + " IN ("
+                + placeholders(usernameCount) + ") AND NOT EXISTS (SELECT 1 FROM "
+                + this.joinTable + " j WHERE j." + this.joinUserIdColumn
+                + " = u." + this.userIdColumn + " AND j."
+                + this.joinRoleIdColumn + " = ?)";
+    }
+
+    /**
+     * Creates a delete statement that revokes a role from the users with the
+     * given number of usernames. Its parameters are the role id and the
+     * usernames. The usernames must be canonical unless they are matched
+     * exactly.
+     *
+     * @param usernameCount the number of usernames.
+     * @param lookup how usernames are matched.
+     * @return the SQL.
+     */
+    String revokeSql(int usernameCount,
+            AbstractJpaUserDao.UsernameLookup lookup) {
+        return "DELETE FROM " + this.joinTable + " WHERE "
+                + this.joinRoleIdColumn + " = ? AND " + this.joinUserIdColumn
+                + " IN (SELECT u." + this.userIdColumn + " FROM "
+                + this.userTable + " u WHERE " + usernameMatch(lookup)
+                + " IN (" + placeholders(usernameCount) + "))";
+    }
+
+    /**
+     * Creates a delete statement that revokes a role from every user. Its
+     * parameter is the role id.
+     *
+     * @return the SQL.
+     */
+    String revokeAllSql() {
+        return "DELETE FROM " + this.joinTable + " WHERE "
+                + this.joinRoleIdColumn + " = ?";
+    }
+
+    private String usernameMatch(AbstractJpaUserDao.UsernameLookup lookup) {
+        switch (lookup) {
+            case CANONICAL_ATTRIBUTE:
+                if (this.canonicalUsernameColumn == null) {
+                    throw new IllegalStateException(
+                            "canonicalUsernameColumn is required to match canonical usernames");
+                }
+                return "u." + this.canonicalUsernameColumn;
+            case LOWER_FUNCTION:
+                return "LOWER(u." + this.usernameColumn + ")";
+            default:
+                return "u." + this.usernameColumn;
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder buf = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append('?');
+        }
+        return buf.toString();
+    }
+}
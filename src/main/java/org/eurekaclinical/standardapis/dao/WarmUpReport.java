@@ -0,0 +1,92 @@
+package org.eurekaclinical.standardapis.dao;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How long each task of a {@link DaoWarmUp} took, and which tasks failed or
+ * did not finish in time.
+ *
+ * @author Andrew Post
+ */
+public final class WarmUpReport {
+
+    private final long elapsedMillis;
+    private final Map<String, Long> taskMillis;
+    private final Map<String, Throwable> failures;
+    private final boolean timedOut;
+
+    WarmUpReport(long elapsedMillis, Map<String, Long> taskMillis,
+            Map<String, Throwable> failures, boolean timedOut) {
+        this.elapsedMillis = elapsedMillis;
+        this.taskMillis = Collections.unmodifiableMap(
+                new LinkedHashMap<>(taskMillis));
+        this.failures = Collections.unmodifiableMap(
+                new LinkedHashMap<>(failures));
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Gets how long the whole warm-up took.
+     *
+     * @return the wall-clock time in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * Gets how long each completed task took.
+     *
+     * @return task names mapped to milliseconds, in the order the tasks were
+     * added.
+     */
+    public Map<String, Long> getTaskMillis() {
+        return this.taskMillis;
+    }
+
+    /**
+     * Gets the tasks that threw an exception.
+     *
+     * @return task names mapped to what they threw.
+     */
+    public Map<String, Throwable> getFailures() {
+        return this.failures;
+    }
+
+    /**
+     * Gets whether some tasks were still running when the timeout elapsed.
+     *
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isTimedOut() {
+        return this.timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{" + "elapsedMillis=" + this.elapsedMillis
+                + ", taskMillis=" + this.taskMillis + ", failures="
+                + this.failures.keySet() + ", timedOut=" + this.timedOut + '}';
+    }
+}
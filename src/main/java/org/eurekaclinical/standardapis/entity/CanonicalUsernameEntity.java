@@ -0,0 +1,45 @@
+package org.eurekaclinical.standardapis.entity;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * Implemented by user entities that store a canonical form of their username
+ * in its own indexed column for case-insensitive lookups. User data access
+ * objects that look up users by canonical username set it when they create
+ * or update a user.
+ *
+ * @author Andrew Post
+ */
+public interface CanonicalUsernameEntity {
+
+    /**
+     * Gets the canonical username.
+     *
+     * @return the canonical username.
+     */
+    String getCanonicalUsername();
+
+    /**
+     * Sets the canonical username.
+     *
+     * @param canonicalUsername the canonical username.
+     */
+    void setCanonicalUsername(String canonicalUsername);
+}
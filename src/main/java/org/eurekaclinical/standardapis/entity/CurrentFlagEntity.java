@@ -0,0 +1,57 @@
+package org.eurekaclinical.standardapis.entity;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * Implemented by historical entities that store whether each instance is the
+ * current one in its own indexed column, as a denormalized copy of
+ * <code>expiredAt IS NULL OR expiredAt &gt;= now</code>. Historical data
+ * access objects maintain the flag when they create and update entities, and
+ * look up current instances by equality on it, which can use a simple or
+ * partial index and partition pruning where the time comparison cannot.
+ *
+ * The flag is only correct if instances are expired through the data access
+ * object. Instances that are given a future expiration datetime remain
+ * current by the flag until they are updated.
+ *
+ * @author Andrew Post
+ * @param <PK> the primary key type.
+ */
+public interface CurrentFlagEntity<PK> extends HistoricalEntity<PK> {
+
+    /**
+     * The name of the persistent attribute that holds the flag.
+     */
+    String CURRENT_ATTRIBUTE = "current";
+
+    /**
+     * Returns whether this entity instance is the current one.
+     *
+     * @return <code>true</code> if it is current.
+     */
+    boolean isCurrent();
+
+    /**
+     * Sets whether this entity instance is the current one.
+     *
+     * @param current <code>true</code> if it is current.
+     */
+    void setCurrent(boolean current);
+}
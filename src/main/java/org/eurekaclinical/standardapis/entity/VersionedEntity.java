@@ -0,0 +1,51 @@
+package org.eurekaclinical.standardapis.entity;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+/**
+ * Implemented by entities that have a version attribute for optimistic
+ * locking. The attribute should be mapped with
+ * {@link javax.persistence.Version}, so that the persistence provider
+ * increments it on every update and throws
+ * {@link javax.persistence.OptimisticLockException} when an update is based
+ * on a stale version. Data access objects flush updates to these entities
+ * made in a transaction immediately so that conflicts are reported by the
+ * update call. Outside a transaction, they are reported at commit.
+ *
+ * @author Andrew Post
+ * @param <PK> the primary key type.
+ */
+public interface VersionedEntity<PK> extends Entity<PK> {
+
+    /**
+     * Gets the version.
+     *
+     * @return the version, or <code>null</code> if the entity has not been
+     * persisted.
+     */
+    Long getVersion();
+
+    /**
+     * Sets the version. Only the persistence provider should call this.
+     *
+     * @param version the version.
+     */
+    void setVersion(Long version);
+}
@@ -20,31 +20,310 @@ package org.eurekaclinical.standardapis.filter;
  * #L%
  */
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.FilterChain;
+import javax.management.ObjectName;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import org.eurekaclinical.standardapis.dao.ReadYourWrites;
+import org.eurekaclinical.standardapis.dao.RoleInvalidationBus;
+import org.eurekaclinical.standardapis.dao.RoleInvalidationListener;
+import org.eurekaclinical.standardapis.dao.RoleVersions;
+import org.eurekaclinical.standardapis.metrics.JmxSupport;
 
 /**
  * Base class for creating filters that add the user's roles to the request and
  * set a session attribute, <code>roles</code> which will contain an array of
- * role names.
+ * role names. If a {@link RoleRegistry} is set, the roles instead are stored
+ * in compact form as a {@link RoleSet} in the <code>roleSet</code> session
+ * attribute, and the <code>roles</code> attribute is not set.
+ *
+ * By default, requests without a session are passed through without their
+ * roles. In stateless mode, which is turned on by setting a
+ * {@link PrincipalRolesCache}, roles for such requests are resolved and
+ * cached by principal name instead, so token-authenticated services need not
+ * create sessions. If a {@link SignedRolesCodec} also is set, a valid signed
+ * token in the <code>X-Eureka-Clinical-Roles</code> request header is used
+ * instead of resolving roles, and the token for the current request's roles
+ * is made available in the
+ * <code>org.eurekaclinical.standardapis.signedRoles</code> request attribute
+ * for forwarding to downstream services. Both may be configured with filter
+ * init parameters.
+ *
+ * If a {@link RoleInvalidationBus} is set, the session also stores the
+ * {@link RoleVersions role version} that the bus had delivered when the roles
+ * were loaded, and cached roles are reloaded lazily, on the user's next
+ * request, only when an invalidation of the user's roles with a higher
+ * version has been delivered since. The versions come from the bus, so they
+ * remain comparable after a restart and in sessions replicated between JVMs
+ * that share the bus. Checking costs one in-memory map read per request
+ * rather than a query. Roles that are reloaded because they were invalidated
+ * are read with {@link ReadYourWrites#stick() reads pinned to the primary},
+ * so that data access objects that read from a replica do not load the
+ * roles from before the change.
  *
  * @author Andrew Post
  */
 public abstract class AbstractRolesFilter implements RolesFilter {
 
     /**
-     * Does nothing.
+     * Name of the filter init parameter that turns off registration of this
+     * filter's {@link RolesFilterStatistics} with JMX when set to
+     * <code>false</code>.
+     */
+    public static final String JMX_INIT_PARAM = "jmx";
+
+    /**
+     * Name of the session attribute containing an array of role names.
+     */
+    public static final String ROLES_SESSION_ATTRIBUTE = "roles";
+
+    /**
+     * Name of the session attribute containing a {@link RoleSet}, when a
+     * {@link RoleRegistry} is set.
+     */
+    public static final String ROLE_SET_SESSION_ATTRIBUTE = "roleSet";
+
+    /**
+     * Name of the filter init parameter that turns on stateless role
+     * resolution when set to <code>true</code>.
+     */
+    public static final String STATELESS_INIT_PARAM = "stateless";
+
+    /**
+     * Name of the filter init parameter containing how long, in seconds,
+     * roles are cached by principal name in stateless mode. The default is
+     * 300.
+     */
+    public static final String ROLES_CACHE_TTL_INIT_PARAM
+            = "rolesCacheTtlSeconds";
+
+    /**
+     * Name of the filter init parameter containing the maximum number of
+     * principals whose roles are cached in stateless mode. The default is
+     * 10000.
+     */
+    public static final String ROLES_CACHE_MAX_SIZE_INIT_PARAM
+            = "rolesCacheMaxSize";
+
+    /**
+     * Name of the filter init parameter containing the secret key for signing
+     * and verifying role tokens in stateless mode. If absent, role tokens are
+     * not used.
+     */
+    public static final String ROLES_SIGNING_KEY_INIT_PARAM
+            = "rolesSigningKey";
+
+    /**
+     * Name of the request header containing a signed roles token.
+     */
+    public static final String SIGNED_ROLES_HEADER = "X-Eureka-Clinical-Roles";
+
+    /**
+     * Name of the request attribute containing the signed roles token for the
+     * current request's roles in stateless mode. It is not set if the
+     * principal's name or a role name contains a line feed, which a token
+     * cannot encode.
+     */
+    public static final String SIGNED_ROLES_ATTRIBUTE
+            = "org.eurekaclinical.standardapis.signedRoles";
+
+    /**
+     * Name of the session attribute containing the role version of the cached
+     * roles, when a {@link RoleInvalidationBus} is set.
+     */
+    public static final String ROLES_VERSION_SESSION_ATTRIBUTE
+            = "rolesVersion";
+
+    private static final int DEFAULT_ROLES_CACHE_TTL_SECONDS = 300;
+
+    private static final int DEFAULT_ROLES_CACHE_MAX_SIZE = 10000;
+
+    private volatile RoleRegistry roleRegistry;
+
+    private volatile PrincipalRolesCache principalRolesCache;
+
+    private volatile SignedRolesCodec signedRolesCodec;
+
+    private volatile RoleInvalidationBus roleInvalidationBus;
+
+    private final RoleInvalidationListener invalidationListener
+            = new InvalidationListener();
+
+    private volatile RoleVersions roleVersions = new RoleVersions();
+
+    private final RolesFilterStatistics statistics
+            = new RolesFilterStatistics();
+
+    private ObjectName statisticsObjectName;
+
+    /**
+     * Registers this filter's {@link RolesFilterStatistics} with JMX under
+     * the web application's context path and the filter's name, unless the
+     * <code>jmx</code> init parameter is <code>false</code>. If the
+     * <code>stateless</code> init parameter is <code>true</code>, it also
+     * turns on stateless role resolution as configured by the
+     * <code>rolesCacheTtlSeconds</code>, <code>rolesCacheMaxSize</code> and
+     * <code>rolesSigningKey</code> init parameters.
      *
      * @param fc the filter configuration.
      */
     @Override
     public void init(FilterConfig fc) {
+        if (fc == null) {
+            return;
+        }
+        if ("true".equals(fc.getInitParameter(STATELESS_INIT_PARAM))) {
+            int ttlSeconds = intInitParameter(fc, ROLES_CACHE_TTL_INIT_PARAM,
+                    DEFAULT_ROLES_CACHE_TTL_SECONDS);
+            this.principalRolesCache = new PrincipalRolesCache(ttlSeconds,
+                    TimeUnit.SECONDS, intInitParameter(fc,
+                            ROLES_CACHE_MAX_SIZE_INIT_PARAM,
+                            DEFAULT_ROLES_CACHE_MAX_SIZE));
+            String signingKey = fc.getInitParameter(
+                    ROLES_SIGNING_KEY_INIT_PARAM);
+            if (signingKey != null && !signingKey.isEmpty()) {
+                this.signedRolesCodec = new SignedRolesCodec(
+                        signingKey.getBytes(StandardCharsets.UTF_8),
+                        TimeUnit.SECONDS.toMillis(ttlSeconds));
+            }
+        }
+        if (!"false".equals(fc.getInitParameter(JMX_INIT_PARAM))) {
+            String contextPath = fc.getServletContext() != null
+                    ? fc.getServletContext().getContextPath() : "";
+            this.statisticsObjectName = JmxSupport.objectName(
+                    "RolesFilterStatistics",
+                    contextPath + "/" + fc.getFilterName());
+            if (!JmxSupport.register(this.statistics,
+                    this.statisticsObjectName)) {
+                this.statisticsObjectName = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the counters and latency histograms of this filter's role
+     * resolution.
+     *
+     * @return the statistics.
+     */
+    public RolesFilterStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Gets the registry used to store roles in compact form.
+     *
+     * @return the role registry, or <code>null</code> if roles are stored as
+     * an array of names.
+     */
+    public RoleRegistry getRoleRegistry() {
+        return this.roleRegistry;
+    }
+
+    /**
+     * Sets a registry for storing roles in compact form, as a {@link RoleSet}
+     * in the <code>roleSet</code> session attribute, rather than as an array
+     * of names in the <code>roles</code> session attribute. Use
+     * {@link RoleRegistry#load(org.eurekaclinical.standardapis.dao.RoleDao) }
+     * to create a registry from the role catalog. The default is
+     * <code>null</code>.
+     *
+     * @param roleRegistry the role registry, or <code>null</code>.
+     */
+    public void setRoleRegistry(RoleRegistry roleRegistry) {
+        this.roleRegistry = roleRegistry;
+    }
+
+    /**
+     * Gets the cache of roles by principal name that is used for requests
+     * without a session.
+     *
+     * @return the cache, or <code>null</code> if stateless mode is off.
+     */
+    public PrincipalRolesCache getPrincipalRolesCache() {
+        return this.principalRolesCache;
+    }
+
+    /**
+     * Sets a cache of roles by principal name, which turns on stateless mode
+     * for requests without a session. The default is <code>null</code>.
+     *
+     * @param principalRolesCache the cache, or <code>null</code> to turn off
+     * stateless mode.
+     */
+    public void setPrincipalRolesCache(PrincipalRolesCache principalRolesCache) {
+        this.principalRolesCache = principalRolesCache;
+    }
+
+    /**
+     * Gets the codec for signed role tokens in stateless mode.
+     *
+     * @return the codec, or <code>null</code> if signed role tokens are not
+     * used.
+     */
+    public SignedRolesCodec getSignedRolesCodec() {
+        return this.signedRolesCodec;
+    }
+
+    /**
+     * Sets a codec for signed role tokens in stateless mode. The default is
+     * <code>null</code>.
+     *
+     * @param signedRolesCodec the codec, or <code>null</code> to not use
+     * signed role tokens.
+     */
+    public void setSignedRolesCodec(SignedRolesCodec signedRolesCodec) {
+        this.signedRolesCodec = signedRolesCodec;
+    }
+
+    /**
+     * Gets the bus that tells this filter when cached roles are stale.
+     *
+     * @return the bus, or <code>null</code> if none is set.
+     */
+    public RoleInvalidationBus getRoleInvalidationBus() {
+        return this.roleInvalidationBus;
+    }
+
+    /**
+     * Gets the role versions that this filter compares with the versions
+     * stored in sessions. They advance when the
+     * {@link #setRoleInvalidationBus(org.eurekaclinical.standardapis.dao.RoleInvalidationBus) role invalidation bus}
+     * delivers a change, and are replaced when the bus is replaced.
+     *
+     * @return the role versions. Never <code>null</code>.
+     */
+    public RoleVersions getRoleVersions() {
+        return this.roleVersions;
+    }
+
+    /**
+     * Subscribes this filter to a bus that tells it when cached roles are
+     * stale, unsubscribing it from any previously set bus. Sessions whose
+     * roles were cached before a bus was set reload their roles once. The
+     * default is <code>null</code>, in which case roles cached in a session
+     * are kept until the session ends.
+     *
+     * @param roleInvalidationBus the bus, or <code>null</code>.
+     */
+    public synchronized void setRoleInvalidationBus(
+            RoleInvalidationBus roleInvalidationBus) {
+        if (this.roleInvalidationBus != null) {
+            this.roleInvalidationBus.unsubscribe(this.invalidationListener);
+        }
+        this.roleInvalidationBus = roleInvalidationBus;
+        this.roleVersions = new RoleVersions();
+        if (roleInvalidationBus != null) {
+            roleInvalidationBus.subscribe(this.invalidationListener);
+        }
     }
 
     /**
@@ -52,9 +331,11 @@ public abstract class AbstractRolesFilter implements RolesFilter {
      * names for the current user principal. It fetches the roles array from the {@link #getRoles(java.security.Principal, javax.servlet.ServletRequest)
      * }
      * call. If the session attribute is not null, it will not fetch the user's
-     * roles again. If there is no session or if the user principal is not set,
-     * this filter just passes the request and response onto the next filter in
-     * the chain.
+     * roles again. If the user principal is not set, or if there is no
+     * session and stateless mode is off, this filter just passes the request
+     * and response onto the next filter in the chain. In stateless mode,
+     * requests without a session get their roles from a signed roles header or
+     * the per-principal roles cache instead.
      *
      * @param inRequest the servlet request.
      * @param inResponse the servlet response.
@@ -72,23 +353,224 @@ public abstract class AbstractRolesFilter implements RolesFilter {
         Principal principal = servletRequest.getUserPrincipal();
         HttpSession session = servletRequest.getSession(false);
         if (principal != null && session != null) {
-            String[] roleNames;
+            HttpServletRequest wrappedRequest;
+            RoleRegistry registry = this.roleRegistry;
+            long lockStart = System.nanoTime();
             synchronized (session) {
-                roleNames = (String[]) session.getAttribute("roles");
-
-                if (roleNames == null) {
-                    roleNames = getRoles(principal, inRequest);
-                    session.setAttribute("roles", roleNames);
+                long loadStart = System.nanoTime();
+                this.statistics.recordLockWait(loadStart - lockStart);
+                Long version = deliveredRoleVersion();
+                boolean stale = version != null
+                        && isStale(principal, session);
+                if (registry != null) {
+                    RoleSet roleSet = (RoleSet) session.getAttribute(
+                            ROLE_SET_SESSION_ATTRIBUTE);
+                    if (roleSet == null || stale
+                            || !registry.isCompatible(roleSet)) {
+                        String[] roleNames = loadRoles(principal, inRequest,
+                                loadStart, stale);
+                        roleSet = roleNames != null
+                                ? registry.encode(roleNames) : null;
+                        session.setAttribute(ROLE_SET_SESSION_ATTRIBUTE,
+                                roleSet);
+                        session.setAttribute(
+                                ROLES_VERSION_SESSION_ATTRIBUTE, version);
+                    } else {
+                        this.statistics.recordSessionHit();
+                    }
+                    wrappedRequest = new RolesRequestWrapper(servletRequest,
+                            principal, roleSet, registry);
+                } else {
+                    String[] roleNames = (String[]) session.getAttribute(
+                            ROLES_SESSION_ATTRIBUTE);
+                    if (roleNames == null || stale) {
+                        roleNames = loadRoles(principal, inRequest, loadStart,
+                                stale);
+                        session.setAttribute(ROLES_SESSION_ATTRIBUTE,
+                                roleNames);
+                        session.setAttribute(
+                                ROLES_VERSION_SESSION_ATTRIBUTE, version);
+                    } else {
+                        this.statistics.recordSessionHit();
+                    }
+                    wrappedRequest = new RolesRequestWrapper(servletRequest,
+                            principal, roleNames);
                 }
             }
-            HttpServletRequest wrappedRequest = new RolesRequestWrapper(
-                    servletRequest, principal, roleNames);
-            inChain.doFilter(wrappedRequest, inResponse);
+            long chainStart = System.nanoTime();
+            try {
+                inChain.doFilter(wrappedRequest, inResponse);
+            } finally {
+                this.statistics.recordChain(System.nanoTime() - chainStart);
+            }
+        } else if (principal != null && this.principalRolesCache != null) {
+            HttpServletRequest wrappedRequest
+                    = statelessRequest(servletRequest, principal);
+            long chainStart = System.nanoTime();
+            try {
+                inChain.doFilter(wrappedRequest, inResponse);
+            } finally {
+                this.statistics.recordChain(System.nanoTime() - chainStart);
+            }
         } else {
+            this.statistics.recordPassThrough();
             inChain.doFilter(inRequest, inResponse);
         }
     }
 
+    /**
+     * Resolves roles for a request without a session, from a signed roles
+     * header if there is a valid one, else from the per-principal cache, else
+     * from {@link #getRoles(java.security.Principal, javax.servlet.ServletRequest) }.
+     * When a {@link RoleInvalidationBus} is set, tokens and cache entries
+     * with a role version below the principal's current one are not used,
+     * and newly loaded roles are stamped with the version delivered before
+     * the load.
+     *
+     * @param servletRequest the request.
+     * @param principal the request's principal.
+     * @return the wrapped request.
+     * @throws ServletException if the getRoles call fails.
+     */
+    private HttpServletRequest statelessRequest(
+            HttpServletRequest servletRequest, Principal principal)
+            throws ServletException {
+        String principalName = principal.getName();
+        String cacheKey = canonicalizePrincipalName(principalName);
+        SignedRolesCodec codec = this.signedRolesCodec;
+        RoleVersions versions = this.roleVersions;
+        boolean versioned = this.roleInvalidationBus != null;
+        long minVersion = versioned
+                ? versions.getVersion(cacheKey)
+                : SignedRolesCodec.UNVERSIONED;
+        long version = versioned
+                ? versions.getDeliveredVersion()
+                : SignedRolesCodec.UNVERSIONED;
+        String token = null;
+        String[] roleNames = null;
+        boolean invalidated = false;
+        if (codec != null) {
+            token = servletRequest.getHeader(SIGNED_ROLES_HEADER);
+            roleNames = codec.verify(token, principalName, minVersion);
+            if (roleNames != null) {
+                this.statistics.recordSignedRolesHit();
+            } else {
+                invalidated = versioned && token != null
+                        && codec.verify(token, principalName) != null;
+                token = null;
+            }
+        }
+        if (roleNames == null) {
+            PrincipalRolesCache cache = this.principalRolesCache;
+            invalidated |= versioned && cache.isStale(cacheKey, minVersion);
+            roleNames = cache.get(cacheKey, minVersion);
+            if (roleNames != null) {
+                this.statistics.recordCacheHit();
+            } else {
+                roleNames = loadRoles(principal, servletRequest,
+                        System.nanoTime(), invalidated);
+                if (roleNames != null) {
+                    cache.put(cacheKey, roleNames, version);
+                }
+            }
+        }
+        if (codec != null && roleNames != null && (token != null
+                || SignedRolesCodec.isSignable(principalName, roleNames))) {
+            servletRequest.setAttribute(SIGNED_ROLES_ATTRIBUTE,
+                    token != null ? token
+                            : codec.sign(principalName, roleNames, version));
+        }
+        return new RolesRequestWrapper(servletRequest, principal, roleNames);
+    }
+
+    private static int intInitParameter(FilterConfig fc, String name,
+            int defaultValue) {
+        String value = fc.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid integer for filter init parameter "
+                    + name + ": " + value, ex);
+        }
+    }
+
+    /**
+     * Gets the role version to store with roles that are about to be loaded.
+     * It is read before the roles are loaded so that a change made during the
+     * load is not missed.
+     *
+     * @return the version, or <code>null</code> if no
+     * {@link RoleInvalidationBus} is set.
+     */
+    private Long deliveredRoleVersion() {
+        if (this.roleInvalidationBus == null) {
+            return null;
+        }
+        return this.roleVersions.getDeliveredVersion();
+    }
+
+    /**
+     * Gets whether the roles cached in a session have been invalidated since
+     * they were loaded.
+     *
+     * @param principal the session's principal.
+     * @param session the session.
+     * @return <code>true</code> if they must be reloaded.
+     */
+    private boolean isStale(Principal principal, HttpSession session) {
+        Object version = session.getAttribute(ROLES_VERSION_SESSION_ATTRIBUTE);
+        return !this.roleVersions.isCurrent(
+                canonicalizePrincipalName(principal.getName()),
+                version instanceof Long ? (Long) version : null);
+    }
+
+    /**
+     * Gets the form of a principal name under which its role versions and
+     * cached roles are kept. User data access objects publish role
+     * invalidations with canonical usernames, so this must match their
+     * canonicalization. The default trims whitespace and lower-cases the
+     * name, like
+     * {@link org.eurekaclinical.standardapis.dao.AbstractJpaUserDao#canonicalizeUsername(java.lang.String) }.
+     *
+     * @param principalName the principal name. Cannot be <code>null</code>.
+     * @return the canonical principal name.
+     */
+    protected String canonicalizePrincipalName(String principalName) {
+        return principalName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Loads roles with {@link #getRoles(java.security.Principal, javax.servlet.ServletRequest) }.
+     *
+     * @param principal the principal.
+     * @param inRequest the request.
+     * @param loadStart when the load started, for statistics.
+     * @param invalidated whether the roles are loaded because cached roles
+     * were invalidated, in which case reads are pinned to the primary.
+     * @return the role names.
+     * @throws ServletException if the getRoles call fails.
+     */
+    private String[] loadRoles(Principal principal, ServletRequest inRequest,
+            long loadStart, boolean invalidated) throws ServletException {
+        boolean unstick = invalidated && !ReadYourWrites.isSticky();
+        if (unstick) {
+            ReadYourWrites.stick();
+        }
+        String[] roleNames;
+        try {
+            roleNames = getRoles(principal, inRequest);
+        } finally {
+            if (unstick) {
+                ReadYourWrites.unstick();
+            }
+        }
+        this.statistics.recordLoad(System.nanoTime() - loadStart, roleNames);
+        return roleNames;
+    }
+
     /**
      * Gets the user's roles. It is called by 
      * {@link #doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain) }.
@@ -107,9 +589,64 @@ public abstract class AbstractRolesFilter implements RolesFilter {
     protected abstract String[] getRoles(Principal inPrincipal, ServletRequest inRequest) throws ServletException;
 
     /**
-     * Does nothing.
+     * Unsubscribes this filter from its {@link RoleInvalidationBus} and
+     * unregisters its statistics from JMX.
      */
     @Override
     public void destroy() {
+        setRoleInvalidationBus(null);
+        if (this.statisticsObjectName != null) {
+            JmxSupport.unregister(this.statisticsObjectName);
+            this.statisticsObjectName = null;
+        }
+    }
+
+    /**
+     * Advances role versions. Invalidated entries of the per-principal roles
+     * cache are left in place, because lookups with the principal's role
+     * version reject them, and a stateless request that finds one knows to
+     * reload the principal's roles from the primary. The cache is cleared
+     * only when versions are reset.
+     */
+    private final class InvalidationListener
+            implements RoleInvalidationListener {
+
+        @Override
+        public void userInvalidated(String username) {
+            roleVersions.userInvalidated(username);
+        }
+
+        @Override
+        public void allInvalidated() {
+            roleVersions.allInvalidated();
+        }
+
+        @Override
+        public void userInvalidated(String username, long version) {
+            roleVersions.userInvalidated(username, version);
+        }
+
+        @Override
+        public void allInvalidated(long version) {
+            roleVersions.allInvalidated(version);
+        }
+
+        @Override
+        public void versionsDelivered(long version) {
+            roleVersions.versionsDelivered(version);
+        }
+
+        @Override
+        public void versionsReset(long version) {
+            roleVersions.versionsReset(version);
+            evictAll();
+        }
+
+        private void evictAll() {
+            PrincipalRolesCache cache = principalRolesCache;
+            if (cache != null) {
+                cache.invalidateAll();
+            }
+        }
     }
 }
@@ -0,0 +1,95 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.IOException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import org.eurekaclinical.standardapis.dao.ChangeEventPublisher;
+
+/**
+ * Publishes the {@link org.eurekaclinical.standardapis.dao.ChangeEvent change events}
+ * of transactions that are demarcated outside of this library, such as by
+ * the container or a transactional method interceptor, which do not signal
+ * the {@link ChangeEventPublisher} when they commit. Each request runs in a
+ * {@link ChangeEventPublisher#openScope() scope}. If the request completes
+ * without an exception and with a status below 500, its transactions are
+ * taken to have committed and the events staged during the request are
+ * published. Otherwise they are discarded. Either way, nothing staged during
+ * the request is left on the thread for the next request that it serves.
+ *
+ * Events of transactions that commit and are then followed by a failure in
+ * the same request are discarded, and events of a transaction that rolls
+ * back without failing the request are published. Code that knows when its
+ * transactions end should call {@link ChangeEventPublisher#afterCommit() } and
+ * {@link ChangeEventPublisher#afterRollback() } itself, which this filter
+ * does not override.
+ *
+ * @author Andrew Post
+ */
+@Singleton
+public class ChangeEventFilter implements Filter {
+
+    private final ChangeEventPublisher changeEventPublisher;
+
+    /**
+     * Creates a filter.
+     *
+     * @param inChangeEventPublisher the publisher that the application's data
+     * access objects stage their change events on. Cannot be
+     * <code>null</code>.
+     */
+    @Inject
+    public ChangeEventFilter(ChangeEventPublisher inChangeEventPublisher) {
+        if (inChangeEventPublisher == null) {
+            throw new IllegalArgumentException(
+                    "inChangeEventPublisher cannot be null");
+        }
+        this.changeEventPublisher = inChangeEventPublisher;
+    }
+
+    @Override
+    public void init(FilterConfig fc) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest inRequest, ServletResponse inResponse,
+            FilterChain inChain) throws IOException, ServletException {
+        try (ChangeEventPublisher.Scope scope
+                = this.changeEventPublisher.openScope()) {
+            inChain.doFilter(inRequest, inResponse);
+            if (!(inResponse instanceof HttpServletResponse)
+                    || ((HttpServletResponse) inResponse).getStatus() < 500) {
+                scope.commit();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,193 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches role names by principal name for a limited time, for resolving roles
+ * without an HTTP session. When the cache is full, expired entries are
+ * removed, and if that is not enough, arbitrary entries are removed until it
+ * is three quarters full.
+ *
+ * Entries may be stored with the
+ * {@link org.eurekaclinical.standardapis.dao.RoleVersions role version} as of
+ * which the roles were loaded, so that roles loaded concurrently with an
+ * invalidation are not served after it.
+ *
+ * @author Andrew Post
+ */
+public final class PrincipalRolesCache {
+
+    private final ConcurrentMap<String, Entry> entries;
+    private final long ttlNanos;
+    private final int maxSize;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param ttl how long entries are kept. Must be positive.
+     * @param unit the unit of the time-to-live. Cannot be <code>null</code>.
+     * @param maxSize the maximum number of entries. Must be positive.
+     */
+    public PrincipalRolesCache(long ttl, TimeUnit unit, int maxSize) {
+        if (ttl < 1) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.entries = new ConcurrentHashMap<>();
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cached role names of a principal, regardless of their role
+     * version.
+     *
+     * @param principalName the principal's name.
+     * @return the role names, or <code>null</code> if they are not cached or
+     * have expired.
+     */
+    public String[] get(String principalName) {
+        return get(principalName, SignedRolesCodec.UNVERSIONED);
+    }
+
+    /**
+     * Gets the cached role names of a principal.
+     *
+     * @param principalName the principal's name.
+     * @param minVersion the principal's current role version. Entries with a
+     * lower role version are removed.
+     * @return the role names, or <code>null</code> if they are not cached,
+     * have expired, or have a role version below the minimum.
+     */
+    public String[] get(String principalName, long minVersion) {
+        Entry entry = this.entries.get(principalName);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0
+                || entry.version < minVersion) {
+            this.entries.remove(principalName, entry);
+            return null;
+        }
+        return entry.roleNames;
+    }
+
+    /**
+     * Gets whether the role names of a principal are cached with a role
+     * version below the given one, that is, whether they were cached and then
+     * invalidated.
+     *
+     * @param principalName the principal's name.
+     * @param minVersion the principal's current role version.
+     * @return <code>true</code> if an unexpired entry with a lower role
+     * version is cached.
+     */
+    public boolean isStale(String principalName, long minVersion) {
+        Entry entry = this.entries.get(principalName);
+        return entry != null && entry.version < minVersion
+                && entry.expiresAt - System.nanoTime() >= 0;
+    }
+
+    /**
+     * Caches the role names of a principal without a role version.
+     *
+     * @param principalName the principal's name. Cannot be <code>null</code>.
+     * @param roleNames the role names. Cannot be <code>null</code>.
+     */
+    public void put(String principalName, String[] roleNames) {
+        put(principalName, roleNames, SignedRolesCodec.UNVERSIONED);
+    }
+
+    /**
+     * Caches the role names of a principal.
+     *
+     * @param principalName the principal's name. Cannot be <code>null</code>.
+     * @param roleNames the role names. Cannot be <code>null</code>.
+     * @param version the role version as of which the role names were loaded.
+     */
+    public void put(String principalName, String[] roleNames, long version) {
+        if (this.entries.size() >= this.maxSize) {
+            evict();
+        }
+        this.entries.put(principalName, new Entry(roleNames,
+                System.nanoTime() + this.ttlNanos, version));
+    }
+
+    /**
+     * Removes the cached role names of a principal.
+     *
+     * @param principalName the principal's name.
+     */
+    public void invalidate(String principalName) {
+        this.entries.remove(principalName);
+    }
+
+    /**
+     * Removes all cached role names.
+     */
+    public void invalidateAll() {
+        this.entries.clear();
+    }
+
+    /**
+     * Gets the number of cached principals, including any expired entries
+     * that have not been removed yet.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        this.entries.values().removeIf(e -> e.expiresAt - now < 0);
+        int target = this.maxSize - this.maxSize / 4;
+        Iterator<String> itr = this.entries.keySet().iterator();
+        while (this.entries.size() > target && itr.hasNext()) {
+            itr.next();
+            itr.remove();
+        }
+    }
+
+    private static final class Entry {
+
+        final String[] roleNames;
+        final long expiresAt;
+        final long version;
+
+        Entry(String[] roleNames, long expiresAt, long version) {
+            this.roleNames = roleNames;
+            this.expiresAt = expiresAt;
+            this.version = version;
+        }
+    }
+}
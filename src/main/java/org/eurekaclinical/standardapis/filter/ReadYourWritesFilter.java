@@ -0,0 +1,128 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import org.eurekaclinical.standardapis.dao.ReadYourWrites;
+
+/**
+ * Scopes {@link ReadYourWrites} to a request for data access objects that
+ * read from a replica database. Once a request writes, its later reads go to
+ * the primary. The time of the write is stored in the client's session, if it
+ * has one, and the client's requests keep reading from the primary for a
+ * configurable time afterwards, which should exceed the usual replication
+ * lag. This filter should be mapped before any filter that reads through
+ * such data access objects.
+ *
+ * @author Andrew Post
+ */
+@Singleton
+public class ReadYourWritesFilter implements Filter {
+
+    /**
+     * Name of the filter init parameter containing how long, in seconds,
+     * a client keeps reading from the primary after a write. The default is
+     * 5.
+     */
+    public static final String STICKY_SECONDS_INIT_PARAM = "stickySeconds";
+
+    /**
+     * Name of the session attribute containing the time of the client's last
+     * write, in milliseconds since the epoch.
+     */
+    public static final String LAST_WRITE_SESSION_ATTRIBUTE = "lastWriteAt";
+
+    private static final int DEFAULT_STICKY_SECONDS = 5;
+
+    private volatile long stickyMillis
+            = TimeUnit.SECONDS.toMillis(DEFAULT_STICKY_SECONDS);
+
+    /**
+     * Reads the <code>stickySeconds</code> init parameter.
+     *
+     * @param fc the filter configuration.
+     */
+    @Override
+    public void init(FilterConfig fc) {
+        if (fc == null) {
+            return;
+        }
+        String value = fc.getInitParameter(STICKY_SECONDS_INIT_PARAM);
+        if (value != null) {
+            try {
+                this.stickyMillis = TimeUnit.SECONDS.toMillis(
+                        Integer.parseInt(value.trim()));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid integer for filter init parameter "
+                        + STICKY_SECONDS_INIT_PARAM + ": " + value, ex);
+            }
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest inRequest, ServletResponse inResponse,
+            FilterChain inChain) throws IOException, ServletException {
+        ReadYourWrites.clear();
+        HttpSession session = inRequest instanceof HttpServletRequest
+                ? ((HttpServletRequest) inRequest).getSession(false) : null;
+        if (session != null) {
+            Object lastWriteAt = session.getAttribute(
+                    LAST_WRITE_SESSION_ATTRIBUTE);
+            if (lastWriteAt instanceof Long
+                    && System.currentTimeMillis() - (Long) lastWriteAt
+                    < this.stickyMillis) {
+                ReadYourWrites.stick();
+            }
+        }
+        try {
+            inChain.doFilter(inRequest, inResponse);
+        } finally {
+            try {
+                if (ReadYourWrites.isWritten()
+                        && inRequest instanceof HttpServletRequest) {
+                    session = ((HttpServletRequest) inRequest)
+                            .getSession(false);
+                    if (session != null) {
+                        session.setAttribute(LAST_WRITE_SESSION_ATTRIBUTE,
+                                System.currentTimeMillis());
+                    }
+                }
+            } catch (IllegalStateException ex) {
+                // The session was invalidated during the request.
+            } finally {
+                ReadYourWrites.clear();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
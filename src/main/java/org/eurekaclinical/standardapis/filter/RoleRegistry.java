@@ -0,0 +1,238 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eurekaclinical.standardapis.dao.RoleDao;
+import org.eurekaclinical.standardapis.entity.RoleEntity;
+
+/**
+ * Assigns each role name in the role catalog a dense ordinal, so that a user's
+ * roles can be stored as a {@link RoleSet} bitmask and role checks become a
+ * hash lookup plus a bit test. Load the catalog from the database with
+ * {@link #load(RoleDao) }. Ordinals are assigned in order of role id, so every
+ * node of a cluster that loads the same catalog assigns the same ordinals.
+ *
+ * Role names that are not in the catalog are added when they are first
+ * encoded. Adding a role changes the catalog's fingerprint, so role sets
+ * encoded before the change are no longer compatible with the registry (see
+ * {@link #isCompatible(RoleSet) }) and should be re-encoded.
+ *
+ * Lookups read an immutable snapshot and do not lock.
+ *
+ * @author Andrew Post
+ */
+public final class RoleRegistry {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private volatile Catalog catalog;
+
+    /**
+     * Creates an empty registry.
+     */
+    public RoleRegistry() {
+        this.catalog = new Catalog(Collections.<String>emptyList());
+    }
+
+    /**
+     * Creates a registry containing the given role names, assigning ordinals
+     * in iteration order.
+     *
+     * @param roleNames the role names. Cannot be <code>null</code>.
+     */
+    public RoleRegistry(Iterable<String> roleNames) {
+        if (roleNames == null) {
+            throw new IllegalArgumentException("roleNames cannot be null");
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String roleName : roleNames) {
+            names.add(roleName);
+        }
+        this.catalog = new Catalog(new ArrayList<>(names));
+    }
+
+    /**
+     * Creates a registry containing every role that the given data access
+     * object returns, ordered by role id.
+     *
+     * @param roleDao the role data access object. Cannot be <code>null</code>.
+     * @return a new registry.
+     */
+    public static RoleRegistry load(RoleDao<? extends RoleEntity> roleDao) {
+        if (roleDao == null) {
+            throw new IllegalArgumentException("roleDao cannot be null");
+        }
+        List<RoleEntity> roles = new ArrayList<>(roleDao.getAll());
+        Collections.sort(roles, Comparator.comparing(RoleEntity::getId,
+                Comparator.nullsLast(Comparator.<Long>naturalOrder())));
+        List<String> names = new ArrayList<>(roles.size());
+        for (RoleEntity role : roles) {
+            names.add(role.getName());
+        }
+        return new RoleRegistry(names);
+    }
+
+    /**
+     * Gets the ordinal of a role name.
+     *
+     * @param roleName a role name.
+     * @return the ordinal, or -1 if the role name is not in the catalog.
+     */
+    public int ordinalOf(String roleName) {
+        Integer ordinal = this.catalog.ordinals.get(roleName);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Gets the number of roles in the catalog.
+     *
+     * @return the number of roles.
+     */
+    public int size() {
+        return this.catalog.names.length;
+    }
+
+    /**
+     * Gets the fingerprint of the current catalog.
+     *
+     * @return the fingerprint.
+     */
+    public long getFingerprint() {
+        return this.catalog.fingerprint;
+    }
+
+    /**
+     * Gets whether a role set was encoded against the current catalog.
+     *
+     * @param roleSet a role set. Cannot be <code>null</code>.
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean isCompatible(RoleSet roleSet) {
+        return roleSet.getCatalogFingerprint() == this.catalog.fingerprint;
+    }
+
+    /**
+     * Encodes role names as a role set, adding any role names that are not in
+     * the catalog.
+     *
+     * @param roleNames the role names. Cannot be <code>null</code>.
+     * @return the role set.
+     */
+    public RoleSet encode(String[] roleNames) {
+        if (roleNames == null) {
+            throw new IllegalArgumentException("roleNames cannot be null");
+        }
+        Catalog c = this.catalog;
+        for (String roleName : roleNames) {
+            if (!c.ordinals.containsKey(roleName)) {
+                c = add(roleNames);
+                break;
+            }
+        }
+        long[] words = new long[Math.max(1, (c.names.length + 63) >>> 6)];
+        for (String roleName : roleNames) {
+            int ordinal = c.ordinals.get(roleName);
+            words[ordinal >>> 6] |= 1L << ordinal;
+        }
+        return new RoleSet(c.fingerprint, words);
+    }
+
+    /**
+     * Decodes a role set into role names.
+     *
+     * @param roleSet a role set that is compatible with this registry. Cannot
+     * be <code>null</code>.
+     * @return the role names.
+     */
+    public String[] decode(RoleSet roleSet) {
+        if (roleSet == null) {
+            throw new IllegalArgumentException("roleSet cannot be null");
+        }
+        String[] names = this.catalog.names;
+        List<String> result = new ArrayList<>(roleSet.size());
+        for (int i = 0; i < names.length; i++) {
+            if (roleSet.contains(i)) {
+                result.add(names[i]);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private synchronized Catalog add(String[] roleNames) {
+        Catalog c = this.catalog;
+        List<String> names = null;
+        for (String roleName : roleNames) {
+            if (!c.ordinals.containsKey(roleName)) {
+                if (names == null) {
+                    names = new ArrayList<>(c.names.length + 1);
+                    Collections.addAll(names, c.names);
+                }
+                if (!names.contains(roleName)) {
+                    names.add(roleName);
+                }
+            }
+        }
+        if (names != null) {
+            c = new Catalog(names);
+            this.catalog = c;
+        }
+        return c;
+    }
+
+    /**
+     * An immutable snapshot of the role catalog.
+     */
+    private static final class Catalog {
+
+        final String[] names;
+        final Map<String, Integer> ordinals;
+        final long fingerprint;
+
+        Catalog(List<String> inNames) {
+            this.names = inNames.toArray(new String[inNames.size()]);
+            this.ordinals = new HashMap<>();
+            long hash = FNV_OFFSET_BASIS;
+            for (int i = 0; i < this.names.length; i++) {
+                String name = this.names[i];
+                if (name == null) {
+                    throw new IllegalArgumentException(
+                            "role names cannot be null");
+                }
+                this.ordinals.put(name.intern(), i);
+                for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                    hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                }
+                hash = hash * FNV_PRIME;
+            }
+            this.fingerprint = hash;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A compact, immutable set of roles, stored as a bitmask of the ordinals that
+ * a {@link RoleRegistry} assigned to the role names. It is much smaller than
+ * an array of role names, which matters when it is stored in sessions that
+ * are replicated across a cluster. A role set records the fingerprint of the
+ * registry's catalog at the time it was created, so that a role set encoded
+ * against a different catalog, for example, on a node that loaded the roles
+ * before a role was added, can be detected and re-encoded.
+ *
+ * @author Andrew Post
+ */
+public final class RoleSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long catalogFingerprint;
+    private final long[] words;
+
+    RoleSet(long catalogFingerprint, long[] words) {
+        this.catalogFingerprint = catalogFingerprint;
+        this.words = words;
+    }
+
+    /**
+     * Gets the fingerprint of the role catalog that this role set was encoded
+     * against.
+     *
+     * @return the fingerprint.
+     */
+    public long getCatalogFingerprint() {
+        return this.catalogFingerprint;
+    }
+
+    /**
+     * Gets whether the role with the given ordinal is in this set.
+     *
+     * @param ordinal a role ordinal.
+     * @return <code>true</code> or <code>false</code>.
+     */
+    public boolean contains(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        }
+        int word = ordinal >>> 6;
+        return word < this.words.length
+                && (this.words[word] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Gets the number of roles in this set.
+     *
+     * @return the number of roles.
+     */
+    public int size() {
+        int result = 0;
+        for (long word : this.words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 67 * hash + (int) (this.catalogFingerprint
+                ^ (this.catalogFingerprint >>> 32));
+        hash = 67 * hash + Arrays.hashCode(this.words);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final RoleSet other = (RoleSet) obj;
+        return this.catalogFingerprint == other.catalogFingerprint
+                && Arrays.equals(this.words, other.words);
+    }
+
+    @Override
+    public String toString() {
+        return "RoleSet{" + "catalogFingerprint=" + catalogFingerprint
+                + ", size=" + size() + '}';
+    }
+}
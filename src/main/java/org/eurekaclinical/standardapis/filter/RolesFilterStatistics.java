@@ -0,0 +1,194 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+import org.eurekaclinical.standardapis.metrics.LatencyHistogram;
+
+/**
+ * Counters and latency histograms for role resolution in
+ * {@link AbstractRolesFilter}: how often roles are found in the session or
+ * loaded, how often a load finds no roles, and how long requests spend
+ * loading roles, waiting for the session lock and in the rest of the filter
+ * chain. In stateless mode, it also counts how often roles are found in the
+ * per-principal cache or in a signed roles header. Recording does not
+ * allocate.
+ *
+ * @author Andrew Post
+ */
+public final class RolesFilterStatistics implements RolesFilterStatisticsMXBean {
+
+    private final LongAdder sessionHits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder emptyRoleResults = new LongAdder();
+    private final LongAdder passThroughs = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder signedRolesHits = new LongAdder();
+    private final LatencyHistogram loadLatencies = new LatencyHistogram();
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+    private final LatencyHistogram chainLatencies = new LatencyHistogram();
+
+    void recordSessionHit() {
+        this.sessionHits.increment();
+    }
+
+    void recordLoad(long elapsedNanos, String[] roleNames) {
+        this.loads.increment();
+        this.loadLatencies.record(elapsedNanos);
+        if (roleNames == null || roleNames.length == 0) {
+            this.emptyRoleResults.increment();
+        }
+    }
+
+    void recordCacheHit() {
+        this.cacheHits.increment();
+    }
+
+    void recordSignedRolesHit() {
+        this.signedRolesHits.increment();
+    }
+
+    void recordPassThrough() {
+        this.passThroughs.increment();
+    }
+
+    void recordLockWait(long elapsedNanos) {
+        this.lockWaits.record(elapsedNanos);
+    }
+
+    void recordChain(long elapsedNanos) {
+        this.chainLatencies.record(elapsedNanos);
+    }
+
+    @Override
+    public long getSessionHits() {
+        return this.sessionHits.sum();
+    }
+
+    @Override
+    public long getLoads() {
+        return this.loads.sum();
+    }
+
+    @Override
+    public long getEmptyRoleResults() {
+        return this.emptyRoleResults.sum();
+    }
+
+    @Override
+    public long getPassThroughs() {
+        return this.passThroughs.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return this.cacheHits.sum();
+    }
+
+    @Override
+    public long getSignedRolesHits() {
+        return this.signedRolesHits.sum();
+    }
+
+    /**
+     * Gets the histogram of how long {@link AbstractRolesFilter#getRoles} took.
+     *
+     * @return the histogram.
+     */
+    public LatencyHistogram getLoadLatencies() {
+        return this.loadLatencies;
+    }
+
+    /**
+     * Gets the histogram of how long requests waited for the session lock.
+     *
+     * @return the histogram.
+     */
+    public LatencyHistogram getLockWaits() {
+        return this.lockWaits;
+    }
+
+    /**
+     * Gets the histogram of how long the rest of the filter chain took.
+     *
+     * @return the histogram.
+     */
+    public LatencyHistogram getChainLatencies() {
+        return this.chainLatencies;
+    }
+
+    @Override
+    public double getLoadMeanMillis() {
+        return toMillis(this.loadLatencies.getMean());
+    }
+
+    @Override
+    public double getLoadP99Millis() {
+        return toMillis(this.loadLatencies.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public double getLoadMaxMillis() {
+        return toMillis(this.loadLatencies.getMax());
+    }
+
+    @Override
+    public double getLockWaitMeanMillis() {
+        return toMillis(this.lockWaits.getMean());
+    }
+
+    @Override
+    public double getLockWaitP99Millis() {
+        return toMillis(this.lockWaits.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public double getLockWaitMaxMillis() {
+        return toMillis(this.lockWaits.getMax());
+    }
+
+    @Override
+    public double getChainMeanMillis() {
+        return toMillis(this.chainLatencies.getMean());
+    }
+
+    @Override
+    public double getChainP99Millis() {
+        return toMillis(this.chainLatencies.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public void reset() {
+        this.sessionHits.reset();
+        this.loads.reset();
+        this.emptyRoleResults.reset();
+        this.passThroughs.reset();
+        this.cacheHits.reset();
+        this.signedRolesHits.reset();
+        this.loadLatencies.reset();
+        this.lockWaits.reset();
+        this.chainLatencies.reset();
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,98 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * JMX management interface for {@link RolesFilterStatistics}. Latencies are
+ * in milliseconds.
+ *
+ * @author Andrew Post
+ */
+public interface RolesFilterStatisticsMXBean {
+
+    /**
+     * Gets the number of requests whose roles were found in the session.
+     *
+     * @return the number of session hits.
+     */
+    long getSessionHits();
+
+    /**
+     * Gets the number of requests for which the roles were missing from the
+     * session and had to be loaded.
+     *
+     * @return the number of role loads.
+     */
+    long getLoads();
+
+    /**
+     * Gets the number of role loads that returned no roles.
+     *
+     * @return the number of empty role results.
+     */
+    long getEmptyRoleResults();
+
+    /**
+     * Gets the number of requests that were passed through without role
+     * wrapping because there was no user principal, or because there was no
+     * session and stateless role resolution is off.
+     *
+     * @return the number of pass-through requests.
+     */
+    long getPassThroughs();
+
+    /**
+     * Gets the number of sessionless requests whose roles were found in the
+     * per-principal roles cache.
+     *
+     * @return the number of cache hits.
+     */
+    long getCacheHits();
+
+    /**
+     * Gets the number of sessionless requests whose roles were taken from a
+     * valid signed roles header.
+     *
+     * @return the number of signed roles hits.
+     */
+    long getSignedRolesHits();
+
+    double getLoadMeanMillis();
+
+    double getLoadP99Millis();
+
+    double getLoadMaxMillis();
+
+    double getLockWaitMeanMillis();
+
+    double getLockWaitP99Millis();
+
+    double getLockWaitMaxMillis();
+
+    double getChainMeanMillis();
+
+    double getChainP99Millis();
+
+    /**
+     * Discards all recorded statistics.
+     */
+    void reset();
+}
@@ -20,6 +20,7 @@ package org.eurekaclinical.standardapis.filter;
  * #L%
  */
 import java.security.Principal;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -45,6 +46,17 @@ public class RolesRequestWrapper extends HttpServletRequestWrapper {
      */
     private final Set<String> roles;
 
+    /**
+     * The roles assigned to the principal in compact form, or
+     * <code>null</code> if the roles were passed in as names.
+     */
+    private final RoleSet roleSet;
+
+    /**
+     * Maps role names to the ordinals in {@link #roleSet}.
+     */
+    private final RoleRegistry roleRegistry;
+
     /**
      * The original request.
      */
@@ -71,6 +83,36 @@ public class RolesRequestWrapper extends HttpServletRequestWrapper {
         } else {
             this.roles = null;
         }
+        this.roleSet = null;
+        this.roleRegistry = null;
+    }
+
+    /**
+     * Create a wrapper with the given principal, roles assigned to that
+     * principal in compact form, and the original request. Role checks look
+     * up the role's ordinal in the registry and test the corresponding bit of
+     * the role set.
+     *
+     * @param inRequest The original request. Cannot be null.
+     * @param inPrincipal The request principal. Cannot be null.
+     * @param inRoleSet The roles assigned to the principal. If
+     * <code>null</code>, role checks are delegated to the original request.
+     * @param inRoleRegistry The registry that the role set was encoded
+     * against. Cannot be null.
+     */
+    public RolesRequestWrapper(HttpServletRequest inRequest,
+            Principal inPrincipal, RoleSet inRoleSet,
+            RoleRegistry inRoleRegistry) {
+        super(inRequest);
+        if (inRoleRegistry == null) {
+            throw new IllegalArgumentException(
+                    "inRoleRegistry cannot be null");
+        }
+        this.request = inRequest;
+        this.principal = inPrincipal;
+        this.roles = null;
+        this.roleSet = inRoleSet;
+        this.roleRegistry = inRoleRegistry;
     }
 
     /**
@@ -83,7 +125,9 @@ public class RolesRequestWrapper extends HttpServletRequestWrapper {
      */
     @Override
     public boolean isUserInRole(String inRole) {
-        if (this.roles == null) {
+        if (this.roleSet != null) {
+            return this.roleSet.contains(this.roleRegistry.ordinalOf(inRole));
+        } else if (this.roles == null) {
             return this.request.isUserInRole(inRole);
         } else {
             return this.roles.contains(inRole);
@@ -106,7 +150,18 @@ public class RolesRequestWrapper extends HttpServletRequestWrapper {
         }
     }
 
+    /**
+     * Returns the role names that were passed into the constructor.
+     *
+     * @return the role names, or <code>null</code> if <code>null</code> was
+     * passed in for roles.
+     */
     public Set<String> getRoles() {
+        if (this.roleSet != null) {
+            Set<String> result = new HashSet<>();
+            Collections.addAll(result, this.roleRegistry.decode(this.roleSet));
+            return result;
+        }
         return roles;
     }
 
@@ -0,0 +1,244 @@
+package org.eurekaclinical.standardapis.filter;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs and verifies a principal's role names so that they can be carried
+ * from one service to another in a request header or attribute, letting the
+ * receiving service skip role resolution. A token is the URL-safe base64
+ * encoding of the principal name, an expiry time, a role version and the role
+ * names, followed by a period and an HMAC-SHA256 signature of the encoded
+ * payload. Every service that exchanges tokens must share the same secret key.
+ * The fields of the payload are separated by line feeds, so names that
+ * contain one cannot be signed.
+ *
+ * The role version is the {@link org.eurekaclinical.standardapis.dao.RoleVersions role version}
+ * that was delivered when the roles were loaded. A service that shares the
+ * issuing service's {@link org.eurekaclinical.standardapis.dao.RoleInvalidationBus}
+ * rejects tokens with a version below the principal's current role version,
+ * so a token does not outlive a change to the principal's roles.
+ *
+ * @author Andrew Post
+ */
+public final class SignedRolesCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char SEPARATOR = '\n';
+
+    /**
+     * The role version of tokens that are signed without one. Such tokens are
+     * rejected by any verification that requires a minimum version.
+     */
+    public static final long UNVERSIONED = Long.MIN_VALUE;
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+
+    /**
+     * Creates a codec.
+     *
+     * @param secret the shared secret key. Should be at least 32 bytes.
+     * Cannot be <code>null</code> or empty.
+     * @param ttlMillis how long tokens are valid after they are created. Must
+     * be positive.
+     */
+    public SignedRolesCodec(byte[] secret, long ttlMillis) {
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException(
+                    "secret cannot be null or empty");
+        }
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("ttlMillis must be positive");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Creates a signed token for a principal's role names without a role
+     * version.
+     *
+     * @param principalName the principal's name. Cannot be <code>null</code>
+     * or contain a line feed.
+     * @param roleNames the role names. Cannot be <code>null</code>, and no
+     * role name can be <code>null</code> or contain a line feed.
+     * @return the token.
+     */
+    public String sign(String principalName, String[] roleNames) {
+        return sign(principalName, roleNames, UNVERSIONED);
+    }
+
+    /**
+     * Creates a signed token for a principal's role names.
+     *
+     * @param principalName the principal's name. Cannot be <code>null</code>
+     * or contain a line feed.
+     * @param roleNames the role names. Cannot be <code>null</code>, and no
+     * role name can be <code>null</code> or contain a line feed.
+     * @param version the role version as of which the role names were loaded.
+     * @return the token.
+     */
+    public String sign(String principalName, String[] roleNames,
+            long version) {
+        if (principalName == null) {
+            throw new IllegalArgumentException("principalName cannot be null");
+        }
+        if (roleNames == null) {
+            throw new IllegalArgumentException("roleNames cannot be null");
+        }
+        if (!isSignable(principalName, roleNames)) {
+            throw new IllegalArgumentException(
+                    "principalName and roleNames cannot contain a line feed or a null role name");
+        }
+        StringBuilder payload = new StringBuilder(principalName)
+                .append(SEPARATOR)
+                .append(System.currentTimeMillis() + this.ttlMillis)
+                .append(SEPARATOR)
+                .append(version);
+        for (String roleName : roleNames) {
+            payload.append(SEPARATOR).append(roleName);
+        }
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                payload.toString().getBytes(StandardCharsets.UTF_8));
+        return encoded + '.' + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac(encoded));
+    }
+
+    /**
+     * Verifies a token and extracts its role names, regardless of its role
+     * version.
+     *
+     * @param token the token.
+     * @param principalName the name of the principal making the request.
+     * @return the role names, or <code>null</code> if the token is missing,
+     * malformed, has an invalid signature, has expired, or was issued for a
+     * different principal.
+     */
+    public String[] verify(String token, String principalName) {
+        return verify(token, principalName, UNVERSIONED);
+    }
+
+    /**
+     * Verifies a token and extracts its role names.
+     *
+     * @param token the token.
+     * @param principalName the name of the principal making the request.
+     * @param minVersion the principal's current role version. Tokens with a
+     * lower role version are rejected.
+     * @return the role names, or <code>null</code> if the token is missing,
+     * malformed, has an invalid signature, has expired, was issued for a
+     * different principal, or has a role version below the minimum.
+     */
+    public String[] verify(String token, String principalName,
+            long minVersion) {
+        if (token == null || principalName == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String encoded = token.substring(0, dot);
+        byte[] signature;
+        String payload;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, mac(encoded))) {
+                return null;
+            }
+            payload = new String(Base64.getUrlDecoder().decode(encoded),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        List<String> fields = split(payload);
+        if (fields.size() < 3 || !principalName.equals(fields.get(0))) {
+            return null;
+        }
+        long expiresAt;
+        long version;
+        try {
+            expiresAt = Long.parseLong(fields.get(1));
+            version = Long.parseLong(fields.get(2));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        if (expiresAt < System.currentTimeMillis() || version < minVersion) {
+            return null;
+        }
+        List<String> roleNames = fields.subList(3, fields.size());
+        return roleNames.toArray(new String[roleNames.size()]);
+    }
+
+    /**
+     * Returns whether a principal's name and role names can be encoded in a
+     * token, that is, whether none of them is <code>null</code> or contains
+     * the field separator.
+     *
+     * @param principalName the principal's name.
+     * @param roleNames the role names.
+     * @return <code>true</code> if they can be signed.
+     */
+    static boolean isSignable(String principalName, String[] roleNames) {
+        if (principalName == null || roleNames == null
+                || principalName.indexOf(SEPARATOR) >= 0) {
+            return false;
+        }
+        for (String roleName : roleNames) {
+            if (roleName == null || roleName.indexOf(SEPARATOR) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] mac(String encodedPayload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac.doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException ex) {
+            throw new AssertionError("HmacSHA256 is unavailable: "
+                    + ex.getMessage());
+        }
+    }
+
+    private static List<String> split(String payload) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = payload.indexOf(SEPARATOR, start)) >= 0) {
+            result.add(payload.substring(start, end));
+            start = end + 1;
+        }
+        result.add(payload.substring(start));
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A point-in-time snapshot of the statistics of one data access method for one
+ * entity class. Latencies are in milliseconds.
+ *
+ * @author Andrew Post
+ */
+public final class DaoMethodStatistics {
+
+    private final String entityClass;
+    private final String method;
+    private final long calls;
+    private final long exceptions;
+    private final long cacheHits;
+    private final long rows;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    DaoMethodStatistics(String entityClass, String method, long calls,
+            long exceptions, long cacheHits, long rows,
+            LatencyHistogram latencies) {
+        this.entityClass = entityClass;
+        this.method = method;
+        this.calls = calls;
+        this.exceptions = exceptions;
+        this.cacheHits = cacheHits;
+        this.rows = rows;
+        this.meanMillis = latencies.getMean() / 1_000_000.0;
+        this.p50Millis = toMillis(latencies.getValueAtPercentile(50.0));
+        this.p90Millis = toMillis(latencies.getValueAtPercentile(90.0));
+        this.p99Millis = toMillis(latencies.getValueAtPercentile(99.0));
+        this.maxMillis = toMillis(latencies.getMax());
+    }
+
+    public String getEntityClass() {
+        return entityClass;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the number of calls, including those that threw an exception.
+     *
+     * @return the number of calls.
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Gets the total number of entities returned or affected by calls that
+     * completed normally.
+     *
+     * @return the number of rows.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP90Millis() {
+        return p90Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
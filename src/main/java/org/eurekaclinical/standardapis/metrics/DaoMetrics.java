@@ -0,0 +1,64 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Service provider interface for recording the performance of data access
+ * object calls. Implementations must be thread-safe and should be cheap, since
+ * they are called on every query. {@link NoOpDaoMetrics} is the default, and
+ * {@link InMemoryDaoMetrics} keeps latency histograms and counters that can be
+ * read over JMX.
+ *
+ * @author Andrew Post
+ */
+public interface DaoMetrics {
+
+    /**
+     * Records a call that completed normally.
+     *
+     * @param entityCls the entity class that was queried.
+     * @param method the name of the data access method.
+     * @param elapsedNanos how long the call took.
+     * @param rows the number of entities returned or affected.
+     */
+    void recordCall(Class<?> entityCls, String method, long elapsedNanos,
+            int rows);
+
+    /**
+     * Records a call that was answered from a cache without querying the
+     * database.
+     *
+     * @param entityCls the entity class.
+     * @param method the name of the data access method.
+     */
+    void recordCacheHit(Class<?> entityCls, String method);
+
+    /**
+     * Records a call that threw an exception.
+     *
+     * @param entityCls the entity class that was queried.
+     * @param method the name of the data access method.
+     * @param elapsedNanos how long the call took before failing.
+     * @param throwable the exception.
+     */
+    void recordException(Class<?> entityCls, String method,
+            long elapsedNanos, Throwable throwable);
+}
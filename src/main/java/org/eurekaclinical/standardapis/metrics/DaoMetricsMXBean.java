@@ -0,0 +1,44 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * JMX management interface for {@link InMemoryDaoMetrics}.
+ *
+ * @author Andrew Post
+ */
+public interface DaoMetricsMXBean {
+
+    /**
+     * Gets a snapshot of the statistics of every data access method that has
+     * been called, one per entity class and method.
+     *
+     * @return the statistics. Guaranteed not <code>null</code>.
+     */
+    List<DaoMethodStatistics> getMethodStatistics();
+
+    /**
+     * Discards all recorded statistics.
+     */
+    void reset();
+}
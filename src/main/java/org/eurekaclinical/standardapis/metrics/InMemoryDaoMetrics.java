@@ -0,0 +1,136 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link DaoMetrics} implementation that keeps a latency histogram and
+ * counters in memory for each entity class and data access method. Register
+ * it with {@link JmxSupport} to read the statistics over JMX, for example:
+ *
+ * <pre>
+ * InMemoryDaoMetrics metrics = new InMemoryDaoMetrics();
+ * JmxSupport.register(metrics, JmxSupport.objectName("DaoMetrics", "myapp"));
+ * userDao.setMetrics(metrics);
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class InMemoryDaoMetrics implements DaoMetrics, DaoMetricsMXBean {
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, MethodMetrics>> metrics;
+
+    /**
+     * Creates an empty metrics collector.
+     */
+    public InMemoryDaoMetrics() {
+        this.metrics = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void recordCall(Class<?> entityCls, String method,
+            long elapsedNanos, int rows) {
+        MethodMetrics m = methodMetrics(entityCls, method);
+        m.latencies.record(elapsedNanos);
+        m.rows.add(rows);
+    }
+
+    @Override
+    public void recordCacheHit(Class<?> entityCls, String method) {
+        methodMetrics(entityCls, method).cacheHits.increment();
+    }
+
+    @Override
+    public void recordException(Class<?> entityCls, String method,
+            long elapsedNanos, Throwable throwable) {
+        MethodMetrics m = methodMetrics(entityCls, method);
+        m.latencies.record(elapsedNanos);
+        m.exceptions.increment();
+    }
+
+    /**
+     * Gets the latency histogram of a data access method.
+     *
+     * @param entityCls the entity class.
+     * @param method the name of the data access method.
+     * @return the histogram, or <code>null</code> if the method has not been
+     * called.
+     */
+    public LatencyHistogram getLatencies(Class<?> entityCls, String method) {
+        Map<String, MethodMetrics> byMethod = this.metrics.get(entityCls);
+        if (byMethod == null) {
+            return null;
+        }
+        MethodMetrics m = byMethod.get(method);
+        return m != null ? m.latencies : null;
+    }
+
+    @Override
+    public List<DaoMethodStatistics> getMethodStatistics() {
+        List<DaoMethodStatistics> result = new ArrayList<>();
+        for (Map.Entry<Class<?>, ConcurrentMap<String, MethodMetrics>> byClass
+                : this.metrics.entrySet()) {
+            String entityClassName = byClass.getKey().getName();
+            for (Map.Entry<String, MethodMetrics> byMethod
+                    : byClass.getValue().entrySet()) {
+                MethodMetrics m = byMethod.getValue();
+                result.add(new DaoMethodStatistics(entityClassName,
+                        byMethod.getKey(), m.latencies.getCount(),
+                        m.exceptions.sum(), m.cacheHits.sum(), m.rows.sum(),
+                        m.latencies));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        this.metrics.clear();
+    }
+
+    private MethodMetrics methodMetrics(Class<?> entityCls, String method) {
+        ConcurrentMap<String, MethodMetrics> byMethod
+                = this.metrics.get(entityCls);
+        if (byMethod == null) {
+            byMethod = this.metrics.computeIfAbsent(entityCls,
+                    k -> new ConcurrentHashMap<>());
+        }
+        MethodMetrics m = byMethod.get(method);
+        if (m == null) {
+            m = byMethod.computeIfAbsent(method, k -> new MethodMetrics());
+        }
+        return m;
+    }
+
+    private static final class MethodMetrics {
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+        final LongAdder exceptions = new LongAdder();
+    }
+}
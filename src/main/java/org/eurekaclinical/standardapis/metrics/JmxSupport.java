@@ -0,0 +1,115 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers and unregisters metrics MBeans with the platform MBean server.
+ * Registration failures are logged rather than thrown, since metrics should
+ * never prevent an application from starting.
+ *
+ * @author Andrew Post
+ */
+public final class JmxSupport {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(JmxSupport.class);
+
+    /**
+     * The domain of the object names of this library's MBeans.
+     */
+    public static final String DOMAIN = "org.eurekaclinical.standardapis";
+
+    private JmxSupport() {
+    }
+
+    /**
+     * Creates an object name in this library's domain.
+     *
+     * @param type the MBean type, for example, <code>DaoMetrics</code>.
+     * @param name a name that distinguishes MBeans of the same type.
+     * @return the object name.
+     */
+    public static ObjectName objectName(String type, String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + ObjectName.quote(type)
+                    + ",name=" + ObjectName.quote(name));
+        } catch (JMException ex) {
+            throw new IllegalArgumentException("Invalid MBean name: " + name, ex);
+        }
+    }
+
+    /**
+     * Registers an MBean, replacing any MBean already registered with the same
+     * object name.
+     *
+     * @param mbean the MBean. Cannot be <code>null</code>.
+     * @param objectName the object name. Cannot be <code>null</code>.
+     * @return whether registration succeeded.
+     */
+    public static boolean register(Object mbean, ObjectName objectName) {
+        if (mbean == null) {
+            throw new IllegalArgumentException("mbean cannot be null");
+        }
+        if (objectName == null) {
+            throw new IllegalArgumentException("objectName cannot be null");
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            try {
+                server.registerMBean(mbean, objectName);
+            } catch (InstanceAlreadyExistsException ex) {
+                server.unregisterMBean(objectName);
+                server.registerMBean(mbean, objectName);
+            }
+            return true;
+        } catch (JMException ex) {
+            LOGGER.warn("Could not register MBean {}", objectName, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters an MBean if it is registered.
+     *
+     * @param objectName the object name. Cannot be <code>null</code>.
+     */
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            throw new IllegalArgumentException("objectName cannot be null");
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException ex) {
+            LOGGER.debug("MBean {} was not registered", objectName);
+        } catch (JMException ex) {
+            LOGGER.warn("Could not unregister MBean {}", objectName, ex);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A {@link DaoMetrics} implementation that discards everything. This is the
+ * default for data access objects that have not been given another
+ * implementation.
+ *
+ * @author Andrew Post
+ */
+public final class NoOpDaoMetrics implements DaoMetrics {
+
+    /**
+     * The shared instance.
+     */
+    public static final NoOpDaoMetrics INSTANCE = new NoOpDaoMetrics();
+
+    private NoOpDaoMetrics() {
+    }
+
+    @Override
+    public void recordCall(Class<?> entityCls, String method,
+            long elapsedNanos, int rows) {
+    }
+
+    @Override
+    public void recordCacheHit(Class<?> entityCls, String method) {
+    }
+
+    @Override
+    public void recordException(Class<?> entityCls, String method,
+            long elapsedNanos, Throwable throwable) {
+    }
+}
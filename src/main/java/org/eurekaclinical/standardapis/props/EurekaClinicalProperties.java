@@ -133,6 +133,37 @@ public abstract class EurekaClinicalProperties {
     }
     
     public abstract String getUrl();
+
+    /**
+     * Whether to preload reference data and exercise common queries at
+     * startup with {@link org.eurekaclinical.standardapis.dao.DaoWarmUp}.
+     *
+     * @return <code>true</code> unless
+     * <code>eurekaclinical.warmup.enabled</code> is <code>false</code>.
+     */
+    public boolean isWarmUpEnabled() {
+        return Boolean.parseBoolean(
+                getValue("eurekaclinical.warmup.enabled", "true"));
+    }
+
+    /**
+     * The number of threads that run warm-up tasks in parallel.
+     *
+     * @return the value of <code>eurekaclinical.warmup.threads</code>, or 4.
+     */
+    public int getWarmUpThreads() {
+        return getIntValue("eurekaclinical.warmup.threads", 4);
+    }
+
+    /**
+     * How long startup waits for warm-up to finish before giving up on it.
+     *
+     * @return the value of <code>eurekaclinical.warmup.timeout</code> in
+     * seconds, or 60.
+     */
+    public int getWarmUpTimeoutSeconds() {
+        return getIntValue("eurekaclinical.warmup.timeout", 60);
+    }
     
     /**
      * Returns the String value of the given property name.
@@ -0,0 +1,232 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.eurekaclinical.standardapis.metrics.LoadHarness;
+import org.eurekaclinical.standardapis.metrics.LoadReport;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Seeds an in-memory H2 database with users, roles and historical records
+ * through the data access objects, and then runs logins, role checks and
+ * historical version rollovers on it from concurrent threads. The report,
+ * with each operation's throughput and latency percentiles, is logged.
+ *
+ * The sizes and times are set with system properties:
+ * <code>load.users</code>, <code>load.roles</code>,
+ * <code>load.records</code>, <code>load.threads</code>,
+ * <code>load.warmUpSeconds</code> and <code>load.durationSeconds</code>.
+ * The defaults are small enough for every build. The
+ * <code>load-test</code> profile seeds millions of rows and runs for a
+ * minute:
+ * <pre>
+ * mvn test -Pload-test
+ * </pre>
+ *
+ * @author Andrew Post
+ */
+public class DaoLoadTest {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(DaoLoadTest.class);
+
+    private static final long USERS = Long.getLong("load.users", 10000);
+    private static final long ROLES = Long.getLong("load.roles", 20);
+    private static final long RECORDS = Long.getLong("load.records", 10000);
+    private static final int THREADS = Integer.getInteger("load.threads", 4);
+    private static final long WARM_UP_SECONDS
+            = Long.getLong("load.warmUpSeconds", 1);
+    private static final long DURATION_SECONDS
+            = Long.getLong("load.durationSeconds", 3);
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private static EntityManagerFactory entityManagerFactory;
+    private static ThreadEntityManagers entityManagers;
+    private static SampleRoleDao roleDao;
+    private static SampleUserDao userDao;
+    private static SampleRecordDao recordDao;
+
+    @BeforeClass
+    public static void setUp() {
+        Map<String, String> properties = Collections.singletonMap(
+                "hibernate.connection.pool_size",
+                String.valueOf(THREADS + 1));
+        entityManagerFactory = Persistence.createEntityManagerFactory(
+                "eurekaclinical-load", properties);
+        entityManagers = new ThreadEntityManagers(entityManagerFactory);
+        roleDao = new SampleRoleDao(entityManagers);
+        userDao = new SampleUserDao(entityManagers);
+        recordDao = new SampleRecordDao(entityManagers);
+
+        LoadHarness harness = newHarness();
+        long millis = harness.seed(ROLES, SEED_BATCH_SIZE, (from, to)
+                -> entityManagers.inTransaction(() -> {
+                    for (long i = from; i < to; i++) {
+                        SampleRole role = new SampleRole();
+                        role.setName(roleName(i));
+                        role.setDefaultRole(i == 0);
+                        roleDao.create(role);
+                    }
+                    return null;
+                }));
+        millis += harness.seed(USERS, SEED_BATCH_SIZE, (from, to)
+                -> entityManagers.inTransaction(() -> {
+                    List<SampleRole> roles = roleDao.getAll();
+                    for (long i = from; i < to; i++) {
+                        SampleUser user = new SampleUser();
+                        user.setUsername(username(i));
+                        user.addRole(roles.get((int) (i % roles.size())));
+                        user.addRole(roles.get(
+                                (int) (i / roles.size() % roles.size())));
+                        userDao.create(user);
+                    }
+                    return null;
+                }));
+        millis += harness.seed(RECORDS, SEED_BATCH_SIZE, (from, to)
+                -> entityManagers.inTransaction(() -> {
+                    for (long i = from; i < to; i++) {
+                        SampleRecord record = new SampleRecord();
+                        record.setName(recordName(i));
+                        recordDao.create(record);
+                    }
+                    return null;
+                }));
+        LOGGER.info("Seeded {} roles, {} users and {} records in {} ms",
+                ROLES, USERS, RECORDS, millis);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (entityManagerFactory != null) {
+            entityManagerFactory.close();
+        }
+    }
+
+    @Test
+    public void testLoginsRoleChecksAndRollovers() {
+        LoadReport report = newHarness()
+                .setWarmUp(WARM_UP_SECONDS, TimeUnit.SECONDS)
+                .setDuration(DURATION_SECONDS, TimeUnit.SECONDS)
+                .addOperation("login", 4, DaoLoadTest::login)
+                .addOperation("roleCheck", 10, DaoLoadTest::roleCheck)
+                .addOperation("rollover", 2, DaoLoadTest::rollover)
+                .run();
+        Map<String, LoadReport.OperationStatistics> operations
+                = report.getOperations();
+        for (Map.Entry<String, LoadReport.OperationStatistics> e
+                : operations.entrySet()) {
+            assertTrue(e.getKey() + " never completed",
+                    e.getValue().getCount() > 0);
+        }
+        assertEquals(0, operations.get("login").getErrors());
+        assertEquals(0, operations.get("roleCheck").getErrors());
+        assertEquals("Rollovers left a record without exactly one current "
+                + "version", RECORDS, countCurrentRecords());
+    }
+
+    /**
+     * Looks up a user by name, as authentication does, records the login
+     * time and loads the user's roles.
+     */
+    private static Integer login() {
+        String username = username(random(USERS));
+        return entityManagers.inTransaction(() -> {
+            SampleUser user = userDao.getByName(username);
+            user.setLastLoginAt(new Date());
+            userDao.update(user);
+            return user.getRoles().size();
+        });
+    }
+
+    /**
+     * Looks up a user by name and checks whether the user has a role, as an
+     * authorization check does.
+     */
+    private static Boolean roleCheck() {
+        String username = username(random(USERS));
+        String roleName = roleName(random(ROLES));
+        return entityManagers.inTransaction(()
+                -> userDao.getByName(username).getRoles().stream()
+                        .anyMatch(r -> roleName.equals(r.getName())));
+    }
+
+    /**
+     * Replaces the current version of a record with a new version. Two
+     * threads rolling over the same record at once make one of them fail
+     * with an optimistic locking error.
+     */
+    private static SampleRecord rollover() {
+        String name = recordName(random(RECORDS));
+        return entityManagers.inTransaction(() -> {
+            SampleRecord current = recordDao.getCurrentByName(name);
+            SampleRecord next = new SampleRecord();
+            next.setId(current.getId());
+            next.setName(name);
+            next.setAmount(current.getAmount() + 1);
+            return recordDao.updateCurrent(next);
+        });
+    }
+
+    private static long countCurrentRecords() {
+        long[] count = new long[1];
+        entityManagers.wrap(() -> count[0] = entityManagers.get()
+                .createQuery("SELECT COUNT(r) FROM SampleRecord r "
+                        + "WHERE r.current = true", Long.class)
+                .getSingleResult()).run();
+        return count[0];
+    }
+
+    private static LoadHarness newHarness() {
+        return new LoadHarness()
+                .setThreads(THREADS)
+                .setThreadWrapper(entityManagers::wrap);
+    }
+
+    private static long random(long bound) {
+        return ThreadLocalRandom.current().nextLong(bound);
+    }
+
+    private static String username(long i) {
+        return "user" + i;
+    }
+
+    private static String roleName(long i) {
+        return "role" + i;
+    }
+
+    private static String recordName(long i) {
+        return "record" + i;
+    }
+}
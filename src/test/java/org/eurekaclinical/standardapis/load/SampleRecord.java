@@ -0,0 +1,155 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Version;
+import org.eurekaclinical.standardapis.entity.CurrentFlagEntity;
+import org.eurekaclinical.standardapis.entity.VersionedEntity;
+
+/**
+ * A historical record for load testing. Versions of the same record share a
+ * name, and the current version is found by its current flag. The version
+ * attribute makes concurrent rollovers of the same record fail rather than
+ * leave two current versions.
+ *
+ * @author Andrew Post
+ */
+@Entity
+@Table(name = "records", indexes = {
+    @Index(name = "records_name_current", columnList = "name, current_flag"),
+    @Index(name = "records_name_effective",
+            columnList = "name, effectiveAt, id")})
+public class SampleRecord implements CurrentFlagEntity<Long>,
+        VersionedEntity<Long> {
+
+    @Id
+    @SequenceGenerator(name = "RECORD_SEQ_GENERATOR",
+            sequenceName = "RECORD_SEQ", allocationSize = 1000)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,
+            generator = "RECORD_SEQ_GENERATOR")
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    private long amount;
+
+    @Column(name = "current_flag", nullable = false)
+    private boolean current;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date effectiveAt;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expiredAt;
+
+    @Version
+    private Long version;
+
+    @Override
+    public Long getId() {
+        return this.id;
+    }
+
+    @Override
+    public void setId(Long inId) {
+        this.id = inId;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getAmount() {
+        return this.amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    @Override
+    public boolean isCurrent() {
+        return this.current;
+    }
+
+    @Override
+    public void setCurrent(boolean current) {
+        this.current = current;
+    }
+
+    @Override
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    @Override
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public Date getEffectiveAt() {
+        return this.effectiveAt;
+    }
+
+    @Override
+    public void setEffectiveAt(Date effectiveAt) {
+        this.effectiveAt = effectiveAt;
+    }
+
+    @Override
+    public Date getExpiredAt() {
+        return this.expiredAt;
+    }
+
+    @Override
+    public void setExpiredAt(Date expiredAt) {
+        this.expiredAt = expiredAt;
+    }
+
+    @Override
+    public Long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
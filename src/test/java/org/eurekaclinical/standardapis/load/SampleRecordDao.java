@@ -0,0 +1,44 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import org.eurekaclinical.standardapis.dao.HistoricalDaoWithUniqueName;
+import org.eurekaclinical.standardapis.dao.HistoricalGenericDao;
+
+/**
+ * Data access object for {@link SampleRecord}.
+ *
+ * @author Andrew Post
+ */
+public class SampleRecordDao extends HistoricalGenericDao<SampleRecord, Long>
+        implements HistoricalDaoWithUniqueName<Long, SampleRecord> {
+
+    public SampleRecordDao(Provider<EntityManager> inEMProvider) {
+        super(SampleRecord.class, inEMProvider);
+    }
+
+    @Override
+    public SampleRecord getCurrentByName(String name) {
+        return getDatabaseSupport().getCurrentUniqueByAttribute(
+                SampleRecord.class, SampleRecord_.name, name);
+    }
+}
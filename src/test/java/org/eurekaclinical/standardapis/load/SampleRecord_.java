@@ -0,0 +1,43 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Date;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.StaticMetamodel;
+
+/**
+ * The metamodel of {@link SampleRecord}, populated by the persistence
+ * provider.
+ *
+ * @author Andrew Post
+ */
+@StaticMetamodel(SampleRecord.class)
+public class SampleRecord_ {
+
+    public static volatile SingularAttribute<SampleRecord, Long> id;
+    public static volatile SingularAttribute<SampleRecord, String> name;
+    public static volatile SingularAttribute<SampleRecord, Long> amount;
+    public static volatile SingularAttribute<SampleRecord, Boolean> current;
+    public static volatile SingularAttribute<SampleRecord, Date> createdAt;
+    public static volatile SingularAttribute<SampleRecord, Date> effectiveAt;
+    public static volatile SingularAttribute<SampleRecord, Date> expiredAt;
+    public static volatile SingularAttribute<SampleRecord, Long> version;
+}
@@ -0,0 +1,81 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import org.eurekaclinical.standardapis.entity.RoleEntity;
+
+/**
+ * A role for load testing.
+ *
+ * @author Andrew Post
+ */
+@Entity
+@Table(name = "roles")
+public class SampleRole implements RoleEntity {
+
+    @Id
+    @SequenceGenerator(name = "ROLE_SEQ_GENERATOR", sequenceName = "ROLE_SEQ",
+            allocationSize = 1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,
+            generator = "ROLE_SEQ_GENERATOR")
+    private Long id;
+
+    @Column(unique = true, nullable = false)
+    private String name;
+
+    private boolean defaultRole;
+
+    @Override
+    public Long getId() {
+        return this.id;
+    }
+
+    @Override
+    public void setId(Long inId) {
+        this.id = inId;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public void setName(String inName) {
+        this.name = inName;
+    }
+
+    @Override
+    public boolean isDefaultRole() {
+        return this.defaultRole;
+    }
+
+    @Override
+    public void setDefaultRole(boolean inDefaultRole) {
+        this.defaultRole = inDefaultRole;
+    }
+}
@@ -0,0 +1,125 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import org.eurekaclinical.standardapis.entity.UserEntity;
+
+/**
+ * A user for load testing, with its roles in a join table and the time of
+ * its last login.
+ *
+ * @author Andrew Post
+ */
+@Entity
+@Table(name = "users")
+public class SampleUser implements UserEntity<SampleRole> {
+
+    @Id
+    @SequenceGenerator(name = "USER_SEQ_GENERATOR", sequenceName = "USER_SEQ",
+            allocationSize = 1000)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,
+            generator = "USER_SEQ_GENERATOR")
+    private Long id;
+
+    @Column(unique = true, nullable = false)
+    private String username;
+
+    @ManyToMany
+    @JoinTable(name = "user_role",
+            joinColumns = {@JoinColumn(name = "user_id")},
+            inverseJoinColumns = {@JoinColumn(name = "role_id")})
+    private List<SampleRole> roles;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastLoginAt;
+
+    public SampleUser() {
+        this.roles = new ArrayList<>();
+    }
+
+    @Override
+    public Long getId() {
+        return this.id;
+    }
+
+    @Override
+    public void setId(Long inId) {
+        this.id = inId;
+    }
+
+    @Override
+    public String getUsername() {
+        return this.username;
+    }
+
+    @Override
+    public void setUsername(String inUsername) {
+        this.username = inUsername;
+    }
+
+    @Override
+    public List<SampleRole> getRoles() {
+        return this.roles;
+    }
+
+    @Override
+    public void setRoles(List<SampleRole> inRoles) {
+        if (inRoles == null) {
+            this.roles = new ArrayList<>();
+        } else {
+            this.roles = inRoles;
+        }
+    }
+
+    @Override
+    public void addRole(SampleRole role) {
+        if (!this.roles.contains(role)) {
+            this.roles.add(role);
+        }
+    }
+
+    @Override
+    public void removeRole(SampleRole role) {
+        this.roles.remove(role);
+    }
+
+    public Date getLastLoginAt() {
+        return this.lastLoginAt;
+    }
+
+    public void setLastLoginAt(Date lastLoginAt) {
+        this.lastLoginAt = lastLoginAt;
+    }
+}
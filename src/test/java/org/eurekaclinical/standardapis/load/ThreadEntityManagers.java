@@ -0,0 +1,110 @@
+package org.eurekaclinical.standardapis.load;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.function.Supplier;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+/**
+ * Provides data access objects with the entity manager of the current
+ * thread. {@link #wrap(java.lang.Runnable) } opens one for the duration of a
+ * worker thread's loop, and is meant to be the thread wrapper of a
+ * {@link org.eurekaclinical.standardapis.metrics.LoadHarness}.
+ *
+ * @author Andrew Post
+ */
+final class ThreadEntityManagers implements Provider<EntityManager> {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ThreadLocal<EntityManager> entityManager;
+
+    ThreadEntityManagers(EntityManagerFactory inEntityManagerFactory) {
+        if (inEntityManagerFactory == null) {
+            throw new IllegalArgumentException(
+                    "inEntityManagerFactory cannot be null");
+        }
+        this.entityManagerFactory = inEntityManagerFactory;
+        this.entityManager = new ThreadLocal<>();
+    }
+
+    /**
+     * Gets the current thread's entity manager.
+     *
+     * @return the entity manager.
+     * @throws IllegalStateException if the thread has none.
+     */
+    @Override
+    public EntityManager get() {
+        EntityManager em = this.entityManager.get();
+        if (em == null) {
+            throw new IllegalStateException(
+                    "No entity manager is open on this thread");
+        }
+        return em;
+    }
+
+    /**
+     * Wraps a loop so that it runs with an entity manager that is closed
+     * when the loop is done.
+     *
+     * @param loop the loop.
+     * @return the wrapped loop.
+     */
+    Runnable wrap(Runnable loop) {
+        return () -> {
+            EntityManager em = this.entityManagerFactory.createEntityManager();
+            this.entityManager.set(em);
+            try {
+                loop.run();
+            } finally {
+                this.entityManager.remove();
+                em.close();
+            }
+        };
+    }
+
+    /**
+     * Runs work in a transaction of the current thread's entity manager, and
+     * clears the entity manager afterward so that the persistence context
+     * does not grow across units of work.
+     *
+     * @param <R> the type of the result.
+     * @param work the work.
+     * @return the result of the work.
+     */
+    <R> R inTransaction(Supplier<R> work) {
+        EntityManager em = get();
+        EntityTransaction transaction = em.getTransaction();
+        transaction.begin();
+        try {
+            R result = work.get();
+            transaction.commit();
+            return result;
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            em.clear();
+        }
+    }
+}
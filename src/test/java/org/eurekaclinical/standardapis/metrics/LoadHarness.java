@@ -0,0 +1,342 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a weighted mix of operations from concurrent threads for a fixed time
+ * and reports each operation's throughput and latency percentiles. It is
+ * meant for measuring data access objects against a real database before a
+ * rollout, for example, logins, role checks and historical version
+ * rollovers against an embedded or staging database with millions of rows.
+ * The harness does not depend on any particular database: operations get
+ * their entity manager however the application does, and a thread wrapper
+ * can open and close an entity manager around each worker thread. See
+ * <code>org.eurekaclinical.standardapis.load.DaoLoadTest</code> for logins,
+ * role checks and rollovers against an embedded H2 database.
+ *
+ * Latencies recorded during the warm-up period are discarded, so that
+ * connection pool start-up, statement preparation and just-in-time
+ * compilation do not skew the results.
+ *
+ * @author Andrew Post
+ */
+public class LoadHarness {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(LoadHarness.class);
+
+    private final Map<String, WeightedOperation> operations;
+    private int threads;
+    private long warmUpNanos;
+    private long durationNanos;
+    private UnaryOperator<Runnable> threadWrapper;
+
+    /**
+     * Creates a harness with no operations that runs on 4 threads for 30
+     * seconds after a 5 second warm-up.
+     */
+    public LoadHarness() {
+        this.operations = new LinkedHashMap<>();
+        this.threads = 4;
+        this.warmUpNanos = TimeUnit.SECONDS.toNanos(5);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(30);
+        this.threadWrapper = UnaryOperator.identity();
+    }
+
+    /**
+     * Adds an operation to the mix. Each time a worker thread picks an
+     * operation, it picks this one with probability proportional to its
+     * weight. An operation that throws is counted as an error and the worker
+     * continues.
+     *
+     * @param name the name of the operation in the report. Cannot be
+     * <code>null</code>.
+     * @param weight the relative frequency of the operation. Must be
+     * positive.
+     * @param operation the operation. Cannot be <code>null</code>.
+     * @return this harness.
+     */
+    public LoadHarness addOperation(String name, int weight,
+            Callable<?> operation) {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        if (operation == null) {
+            throw new IllegalArgumentException("operation cannot be null");
+        }
+        this.operations.put(name, new WeightedOperation(weight, operation));
+        return this;
+    }
+
+    /**
+     * Sets the number of worker threads.
+     *
+     * @param threads the number of threads. Must be positive.
+     * @return this harness.
+     */
+    public LoadHarness setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets how long to run before latencies are recorded.
+     *
+     * @param warmUp the warm-up time. Cannot be negative.
+     * @param unit the unit of the warm-up time. Cannot be <code>null</code>.
+     * @return this harness.
+     */
+    public LoadHarness setWarmUp(long warmUp, TimeUnit unit) {
+        if (warmUp < 0) {
+            throw new IllegalArgumentException("warmUp cannot be negative");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.warmUpNanos = unit.toNanos(warmUp);
+        return this;
+    }
+
+    /**
+     * Sets how long to record latencies after the warm-up.
+     *
+     * @param duration the measurement time. Must be positive.
+     * @param unit the unit of the measurement time. Cannot be
+     * <code>null</code>.
+     * @return this harness.
+     */
+    public LoadHarness setDuration(long duration, TimeUnit unit) {
+        if (duration < 1) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit cannot be null");
+        }
+        this.durationNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets a wrapper that is applied once around the whole loop that each
+     * worker thread runs, when seeding as well as when running operations,
+     * for example, to open an entity manager for the thread and close it
+     * when the thread is done. It is not applied around individual seeding
+     * batches or operations, which must begin and end their own
+     * transactions. The default runs the loop as is.
+     *
+     * @param threadWrapper the wrapper. Cannot be <code>null</code>.
+     * @return this harness.
+     */
+    public LoadHarness setThreadWrapper(UnaryOperator<Runnable> threadWrapper) {
+        if (threadWrapper == null) {
+            throw new IllegalArgumentException("threadWrapper cannot be null");
+        }
+        this.threadWrapper = threadWrapper;
+        return this;
+    }
+
+    /**
+     * Seeds the database from the worker threads. The rows are split into
+     * batches of consecutive indexes, and the writer is called once per
+     * batch with the first index, inclusive, and the last index, exclusive,
+     * so that it can insert the batch in one transaction.
+     *
+     * @param rows the number of rows. Cannot be negative.
+     * @param batchSize the number of rows per batch. Must be positive.
+     * @param writer inserts a batch. Cannot be <code>null</code>.
+     * @return how long seeding took, in milliseconds.
+     */
+    public long seed(long rows, int batchSize,
+            BiConsumer<Long, Long> writer) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows cannot be negative");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (writer == null) {
+            throw new IllegalArgumentException("writer cannot be null");
+        }
+        long start = System.nanoTime();
+        AtomicLong next = new AtomicLong();
+        AtomicLong done = new AtomicLong();
+        long logEvery = Math.max(batchSize, rows / 10);
+        runThreads(() -> {
+            long from;
+            while ((from = next.getAndAdd(batchSize)) < rows) {
+                long to = Math.min(rows, from + batchSize);
+                writer.accept(from, to);
+                long total = done.addAndGet(to - from);
+                if (total / logEvery != (total - (to - from)) / logEvery) {
+                    LOGGER.info("Seeded {} of {} rows", total, rows);
+                }
+            }
+        });
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs the operations for the warm-up and measurement times.
+     *
+     * @return the throughput and latencies of each operation during the
+     * measurement time.
+     */
+    public LoadReport run() {
+        if (this.operations.isEmpty()) {
+            throw new IllegalStateException("No operations were added");
+        }
+        final List<String> names = new ArrayList<>(this.operations.keySet());
+        final WeightedOperation[] ops = this.operations.values().toArray(
+                new WeightedOperation[names.size()]);
+        final int[] cumulativeWeights = new int[ops.length];
+        int totalWeight = 0;
+        for (int i = 0; i < ops.length; i++) {
+            totalWeight += ops[i].weight;
+            cumulativeWeights[i] = totalWeight;
+        }
+        final int weightSum = totalWeight;
+        final LatencyHistogram[] histograms = new LatencyHistogram[ops.length];
+        final LongAdder[] errors = new LongAdder[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+        final long start = System.nanoTime();
+        final long measureFrom = start + this.warmUpNanos;
+        final long end = measureFrom + this.durationNanos;
+        LOGGER.info("Running {} operations on {} threads",
+                names, this.threads);
+        runThreads(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                int i = pick(cumulativeWeights,
+                        random.nextInt(weightSum));
+                boolean failed = false;
+                try {
+                    ops[i].operation.call();
+                } catch (Exception ex) {
+                    failed = true;
+                    LOGGER.debug("Operation {} failed", names.get(i), ex);
+                }
+                if (now >= measureFrom) {
+                    if (failed) {
+                        errors[i].increment();
+                    } else {
+                        histograms[i].record(System.nanoTime() - now);
+                    }
+                }
+            }
+        });
+        long measuredNanos = Math.max(1, System.nanoTime() - measureFrom);
+        Map<String, LoadReport.OperationStatistics> stats
+                = new LinkedHashMap<>();
+        for (int i = 0; i < ops.length; i++) {
+            stats.put(names.get(i), new LoadReport.OperationStatistics(
+                    histograms[i], errors[i].sum(), measuredNanos));
+        }
+        LoadReport report = new LoadReport(this.threads,
+                TimeUnit.NANOSECONDS.toMillis(measuredNanos), stats);
+        LOGGER.info("{}", report);
+        return report;
+    }
+
+    private void runThreads(Runnable body) {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Runnable wrapped = this.threadWrapper.apply(body);
+        List<Thread> workers = new ArrayList<>(this.threads);
+        for (int i = 0; i < this.threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    wrapped.run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException | Error ex) {
+                    failure.compareAndSet(null, ex);
+                }
+            }, "eurekaclinical-load-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        startLatch.countDown();
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw new IllegalStateException("Interrupted while running", ex);
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    private static int pick(int[] cumulativeWeights, int r) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    private static final class WeightedOperation {
+
+        private final int weight;
+        private final Callable<?> operation;
+
+        WeightedOperation(int weight, Callable<?> operation) {
+            this.weight = weight;
+            this.operation = operation;
+        }
+    }
+}
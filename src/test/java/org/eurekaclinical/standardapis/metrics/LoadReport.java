@@ -0,0 +1,216 @@
+package org.eurekaclinical.standardapis.metrics;
+
+/*-
+ * #%L
+ * Eureka! Clinical Standard APIs
+ * %%
+ * Copyright (C) 2016 - 2026 Emory University
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput and latency percentiles of each operation of a
+ * {@link LoadHarness} run, measured after the warm-up.
+ *
+ * @author Andrew Post
+ */
+public final class LoadReport {
+
+    private final int threads;
+    private final long elapsedMillis;
+    private final Map<String, OperationStatistics> operations;
+
+    LoadReport(int threads, long elapsedMillis,
+            Map<String, OperationStatistics> operations) {
+        this.threads = threads;
+        this.elapsedMillis = elapsedMillis;
+        this.operations = Collections.unmodifiableMap(
+                new LinkedHashMap<>(operations));
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the number of threads.
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Gets how long latencies were recorded.
+     *
+     * @return the measurement time in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * Gets the statistics of each operation.
+     *
+     * @return operation names mapped to statistics, in the order the
+     * operations were added.
+     */
+    public Map<String, OperationStatistics> getOperations() {
+        return this.operations;
+    }
+
+    /**
+     * Gets the number of successful operations per second, over all
+     * operations.
+     *
+     * @return the throughput.
+     */
+    public double getThroughput() {
+        double result = 0.0;
+        for (OperationStatistics stats : this.operations.values()) {
+            result += stats.getThroughput();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(String.format(Locale.ROOT,
+                "LoadReport: %d threads, %d ms, %.1f ops/s%n", this.threads,
+                this.elapsedMillis, getThroughput()));
+        buf.append(String.format(Locale.ROOT,
+                "%-30s %10s %8s %10s %10s %10s %10s %10s%n", "operation",
+                "count", "errors", "ops/s", "p50 ms", "p95 ms", "p99 ms",
+                "max ms"));
+        for (Map.Entry<String, OperationStatistics> me
+                : this.operations.entrySet()) {
+            OperationStatistics s = me.getValue();
+            buf.append(String.format(Locale.ROOT,
+                    "%-30s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                    me.getKey(), s.getCount(), s.getErrors(),
+                    s.getThroughput(), millis(s.getP50Nanos()),
+                    millis(s.getP95Nanos()), millis(s.getP99Nanos()),
+                    millis(s.getMaxNanos())));
+        }
+        return buf.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * The throughput and latencies of one operation.
+     */
+    public static final class OperationStatistics {
+
+        private final long count;
+        private final long errors;
+        private final double throughput;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p95Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        OperationStatistics(LatencyHistogram histogram, long errors,
+                long elapsedNanos) {
+            this.count = histogram.getCount();
+            this.errors = errors;
+            this.throughput = this.count
+                    / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+            this.meanNanos = histogram.getMean();
+            this.p50Nanos = histogram.getValueAtPercentile(50.0);
+            this.p95Nanos = histogram.getValueAtPercentile(95.0);
+            this.p99Nanos = histogram.getValueAtPercentile(99.0);
+            this.maxNanos = histogram.getMax();
+        }
+
+        /**
+         * Gets the number of successful calls.
+         *
+         * @return the count.
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Gets the number of calls that threw an exception.
+         *
+         * @return the count.
+         */
+        public long getErrors() {
+            return this.errors;
+        }
+
+        /**
+         * Gets the number of successful calls per second.
+         *
+         * @return the throughput.
+         */
+        public double getThroughput() {
+            return this.throughput;
+        }
+
+        /**
+         * Gets the mean latency of successful calls.
+         *
+         * @return the mean in nanoseconds.
+         */
+        public double getMeanNanos() {
+            return this.meanNanos;
+        }
+
+        /**
+         * Gets the median latency of successful calls.
+         *
+         * @return an upper bound on the median in nanoseconds.
+         */
+        public long getP50Nanos() {
+            return this.p50Nanos;
+        }
+
+        /**
+         * Gets the 95th percentile latency of successful calls.
+         *
+         * @return an upper bound on the percentile in nanoseconds.
+         */
+        public long getP95Nanos() {
+            return this.p95Nanos;
+        }
+
+        /**
+         * Gets the 99th percentile latency of successful calls.
+         *
+         * @return an upper bound on the percentile in nanoseconds.
+         */
+        public long getP99Nanos() {
+            return this.p99Nanos;
+        }
+
+        /**
+         * Gets the largest latency of a successful call.
+         *
+         * @return the maximum in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return this.maxNanos;
+        }
+    }
+}